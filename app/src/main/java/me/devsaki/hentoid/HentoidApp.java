@@ -26,8 +26,10 @@ import io.reactivex.plugins.RxJavaPlugins;
 import me.devsaki.hentoid.customssiv.CustomSubsamplingScaleImageView;
 import me.devsaki.hentoid.notification.download.DownloadNotificationChannel;
 import me.devsaki.hentoid.notification.update.UpdateNotificationChannel;
+import me.devsaki.hentoid.services.OrphanCleanupJobService;
 import me.devsaki.hentoid.services.UpdateCheckService;
 import me.devsaki.hentoid.timber.CrashlyticsTree;
+import me.devsaki.hentoid.util.DeferredJsonWriter;
 import me.devsaki.hentoid.util.Preferences;
 import me.devsaki.hentoid.util.ShortcutHelper;
 import timber.log.Timber;
@@ -135,6 +137,12 @@ public class HentoidApp extends Application {
             }
         }
 
+        // Write the JSON file updates left pending by the previous run
+        DeferredJsonWriter.init(this);
+
+        // Schedule the cleanup of unreachable database records
+        OrphanCleanupJobService.schedule(this);
+
         // Build Android shortcuts
         if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N_MR1) {
             ShortcutHelper.buildShortcuts(this);
@@ -184,6 +192,8 @@ public class HentoidApp extends Application {
         @OnLifecycleEvent(Lifecycle.Event.ON_STOP)
         private void onMoveToBackground() {
             Timber.d("Moving to background");
+            // The app might get killed any time from now on
+            DeferredJsonWriter.flush();
             if (enabled && !Preferences.getAppLockPin().isEmpty() && Preferences.isLockOnAppRestore()) {
                 HentoidApp.setUnlocked(false);
                 HentoidApp.setLockInstant(Instant.now().toEpochMilli());
@@ -64,6 +64,7 @@ import me.devsaki.hentoid.notification.delete.DeleteCompleteNotification;
 import me.devsaki.hentoid.notification.delete.DeleteNotificationChannel;
 import me.devsaki.hentoid.notification.delete.DeleteProgressNotification;
 import me.devsaki.hentoid.notification.delete.DeleteStartNotification;
+import me.devsaki.hentoid.services.DatabaseMaintenanceService;
 import me.devsaki.hentoid.util.Debouncer;
 import me.devsaki.hentoid.util.FileHelper;
 import me.devsaki.hentoid.util.PermissionUtil;
@@ -278,6 +279,10 @@ public class LibraryActivity extends BaseActivity {
         sortCommandsAutoHide = new Debouncer<>(this, 2500, this::hideSearchSortBar);
 
         EventBus.getDefault().register(this);
+
+        // Run the remaining database maintenance once the library has been displayed
+        if (null == savedInstanceState)
+            drawerLayout.post(() -> startService(DatabaseMaintenanceService.makeIntent(this)));
     }
 
     @Subscribe(sticky = true, threadMode = ThreadMode.MAIN)
@@ -62,8 +62,9 @@ public class SplashActivity extends BaseActivity {
 
         Timber.d("Splash / Init");
 
-        // Wait until database maintenance is completed
-        maintenanceTasks = DatabaseMaintenance.getCleanupTasks(this);
+        // Wait until the database maintenance required to display the library is completed
+        // NB : The rest of the maintenance runs in the background once the library is displayed
+        maintenanceTasks = DatabaseMaintenance.getPreLaunchCleanupTasks(this);
         doMaintenanceTask(0);
     }
 
@@ -49,12 +49,18 @@ public interface CollectionDAO {
     @Nullable
     Content selectContentBySourceAndUrl(@NonNull Site site, @NonNull String url);
 
+    Map<Site, Set<String>> selectAllContentUrlsBySite();
+
     long insertContent(@NonNull final Content content);
 
     void updateContentStatus(@NonNull final StatusContent updateFrom, @NonNull final StatusContent updateTo);
 
     void deleteContent(@NonNull final Content content);
 
+    void deleteContents(@NonNull final long[] contentIds);
+
+    void updateContentsDeleteFlag(@NonNull final long[] contentIds, boolean flag);
+
     List<ErrorRecord> selectErrorRecordByContentId(long contentId);
 
     void insertErrorRecord(@NonNull final ErrorRecord record);
@@ -70,8 +76,12 @@ public interface CollectionDAO {
 
     List<Content> selectAllInternalBooks(boolean favsOnly);
 
+    long[] selectAllInternalBookIds(boolean favsOnly);
+
     void flagAllInternalBooks();
 
+    void unflagContents(@NonNull final long[] contentIds);
+
     void deleteAllInternalBooks(boolean resetRemainingImagesStatus);
 
     // Queued books
@@ -82,6 +92,8 @@ public interface CollectionDAO {
 
     List<Content> selectAllQueueBooks();
 
+    long[] selectAllQueueBookIds();
+
     void deleteAllQueuedBooks();
 
     // Flagging
@@ -187,6 +199,12 @@ public interface CollectionDAO {
 
     void updateQueue(@NonNull List<QueueRecord> queue);
 
+    void insertQueueAtBottom(@NonNull List<Long> contentIds);
+
+    boolean moveQueue(int oldPosition, int newPosition);
+
+    boolean invertQueue();
+
     void deleteQueue(@NonNull Content content);
 
     void deleteQueue(int index);
@@ -238,6 +256,13 @@ public interface CollectionDAO {
 
     long getDbSizeBytes();
 
+    /**
+     * Run the given DB operations inside a single transaction
+     *
+     * @param operation Operations to run
+     */
+    void runInTransaction(@NonNull final Runnable operation);
+
 
     // ONE-TIME USE QUERIES (MIGRATION & CLEANUP)
 
@@ -0,0 +1,107 @@
+package me.devsaki.hentoid.database;
+
+import android.text.TextUtils;
+
+import androidx.annotation.NonNull;
+
+import com.annimon.stream.Stream;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import me.devsaki.hentoid.database.domains.Attribute;
+import me.devsaki.hentoid.enums.AttributeType;
+import me.devsaki.hentoid.util.AttributeMap;
+
+/**
+ * Read-only summary of the data displayed by the book lists that would otherwise require
+ * resolving the relations of the Content (pictures, attributes)
+ * <p>
+ * Summaries are computed in bulk when a page of results is loaded, i.e. outside of the UI thread
+ */
+public class ContentSummary implements Serializable {
+
+    private String coverUri;
+    private final long nbPages;
+    private final long nbDownloadedPages;
+    private final String artists;
+    private final String series;
+    private final String tags;
+    private final List<String> languages;
+
+
+    ContentSummary(@NonNull final List<Attribute> contentAttributes, @NonNull final String coverUri, long nbPages, long nbDownloadedPages) {
+        this.coverUri = coverUri;
+        this.nbPages = nbPages;
+        this.nbDownloadedPages = nbDownloadedPages;
+
+        AttributeMap attributes = new AttributeMap();
+        attributes.addAll(contentAttributes);
+        List<String> names = new ArrayList<>(getNames(attributes, AttributeType.ARTIST));
+        names.addAll(getNames(attributes, AttributeType.CIRCLE));
+        artists = TextUtils.join(", ", names);
+        series = TextUtils.join(", ", getNames(attributes, AttributeType.SERIE));
+        names = getNames(attributes, AttributeType.TAG);
+        Collections.sort(names);
+        tags = TextUtils.join(", ", names);
+        languages = getNames(attributes, AttributeType.LANGUAGE);
+    }
+
+    private static List<String> getNames(@NonNull final AttributeMap attributes, @NonNull final AttributeType type) {
+        List<Attribute> attrs = attributes.get(type);
+        if (null == attrs) return new ArrayList<>();
+        return Stream.of(attrs).map(Attribute::getName).toList();
+    }
+
+    /**
+     * @return Location of the cover to display; empty string if none
+     */
+    public String getCoverUri() {
+        return coverUri;
+    }
+
+    public void setCoverUri(@NonNull String coverUri) {
+        this.coverUri = coverUri;
+    }
+
+    /**
+     * @return Number of pages of the book, cover excluded
+     */
+    public long getNbPages() {
+        return nbPages;
+    }
+
+    /**
+     * @return Number of downloaded pages of the book, cover excluded
+     */
+    public long getNbDownloadedPages() {
+        return nbDownloadedPages;
+    }
+
+    /**
+     * @return Names of the artists of the book followed by the names of its circles, separated by commas; empty string if none
+     */
+    public String getArtists() {
+        return artists;
+    }
+
+    /**
+     * @return Names of the series of the book, separated by commas; empty string if none
+     */
+    public String getSeries() {
+        return series;
+    }
+
+    /**
+     * @return Names of the tags of the book in alphabetical order, separated by commas; empty string if none
+     */
+    public String getTags() {
+        return tags;
+    }
+
+    public List<String> getLanguages() {
+        return languages;
+    }
+}
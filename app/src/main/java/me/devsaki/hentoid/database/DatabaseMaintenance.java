@@ -13,6 +13,7 @@ import java.util.List;
 import io.reactivex.Observable;
 import io.reactivex.ObservableEmitter;
 import io.reactivex.functions.BiConsumer;
+import io.reactivex.schedulers.Schedulers;
 import me.devsaki.hentoid.database.domains.Attribute;
 import me.devsaki.hentoid.database.domains.Content;
 import me.devsaki.hentoid.database.domains.Group;
@@ -32,17 +33,40 @@ public class DatabaseMaintenance {
 
 
     /**
-     * Clean up and upgrade database
+     * Clean up and upgrade database; tasks that have to be completed before the library is displayed
      * NB : Heavy operations; must be performed in the background to avoid ANR at startup
      */
-    public static List<Observable<Float>> getCleanupTasks(@NonNull final Context context) {
+    public static List<Observable<Float>> getPreLaunchCleanupTasks(@NonNull final Context context) {
         List<Observable<Float>> result = new ArrayList<>();
         result.add(createObservableFrom(context, DatabaseMaintenance::cleanContent));
-        result.add(createObservableFrom(context, DatabaseMaintenance::clearTempContent));
+        result.add(createObservableFrom(context, DatabaseMaintenance::createGroups));
+        addOneShotTask(result, context, "computeGroupsCountAndCover", DatabaseMaintenance::computeGroupsCountAndCover);
+        return result;
+    }
+
+    /**
+     * Clean up and upgrade database; tasks that can be performed once the library is displayed
+     * NB : Heavy operations; must be performed in the background to avoid ANR
+     */
+    public static List<Observable<Float>> getPostLaunchCleanupTasks(@NonNull final Context context) {
+        List<Observable<Float>> result = new ArrayList<>();
+        // Temporary books and downloaded books are distinct sets; both tasks can run at the same time
+        result.add(Observable.merge(
+                createObservableFrom(context, DatabaseMaintenance::clearTempContent).subscribeOn(Schedulers.io()),
+                createObservableFrom(context, DatabaseMaintenance::computeContentSize).subscribeOn(Schedulers.io())
+        ));
         result.add(createObservableFrom(context, DatabaseMaintenance::cleanPropertiesOneShot1));
         result.add(createObservableFrom(context, DatabaseMaintenance::cleanPropertiesOneShot2));
-        result.add(createObservableFrom(context, DatabaseMaintenance::computeContentSize));
-        result.add(createObservableFrom(context, DatabaseMaintenance::createGroups));
+        return result;
+    }
+
+    /**
+     * Remove data that isn't reachable anymore
+     * NB : Heavy operations; must be performed in the background, ideally when the device isn't in use
+     */
+    public static List<Observable<Float>> getOrphanCleanupTasks(@NonNull final Context context) {
+        List<Observable<Float>> result = new ArrayList<>();
+        result.add(createObservableFrom(context, DatabaseMaintenance::deleteOrphanRecords));
         return result;
     }
 
@@ -50,6 +74,31 @@ public class DatabaseMaintenance {
         return Observable.create(emitter -> function.accept(context, emitter));
     }
 
+    /**
+     * Add the given task to the given list, unless it has already been completed during a previous launch
+     * NB : Only suitable for tasks that don't have anything left to process once they have completed
+     * The task must only signal completion when it has succeeded; if it fails, the error is logged and the
+     * task will run again during the next launch
+     *
+     * @param tasks    List to add the task to
+     * @param context  Context to use
+     * @param name     Unique name of the task, used to remember it has been completed
+     * @param function Task to add
+     */
+    private static void addOneShotTask(
+            @NonNull final List<Observable<Float>> tasks,
+            @NonNull final Context context,
+            @NonNull final String name,
+            BiConsumer<Context, ObservableEmitter<Float>> function) {
+        if (Preferences.getCompletedMaintenanceTasks().contains(name)) return;
+        tasks.add(createObservableFrom(context, function)
+                .doOnComplete(() -> Preferences.addCompletedMaintenanceTask(name))
+                .onErrorResumeNext(t -> {
+                    Timber.w(t, "Maintenance task %s failed; will retry during next launch", name);
+                    return Observable.empty();
+                }));
+    }
+
     private static void cleanContent(@NonNull final Context context, ObservableEmitter<Float> emitter) {
         ObjectBoxDB db = ObjectBoxDB.getInstance(context);
         try {
@@ -78,11 +127,10 @@ public class DatabaseMaintenance {
             List<Content> queueContents = db.selectQueueContents();
             contents.removeAll(queueContents);
             if (!contents.isEmpty()) {
-                int queueMaxPos = (int) db.selectMaxQueueOrder();
                 int max = contents.size();
                 float pos = 1;
                 for (Content c : contents) {
-                    db.insertQueue(c.getId(), ++queueMaxPos);
+                    db.insertQueueAtBottom(c.getId());
                     emitter.onNext(pos++ / max);
                 }
             }
@@ -203,7 +251,7 @@ public class DatabaseMaintenance {
                         Group group = new Group(Grouping.ARTIST, a.getName(), order++);
                         group.setSubtype(a.getType().equals(AttributeType.ARTIST) ? Preferences.Constant.ARTIST_GROUP_VISIBILITY_ARTISTS : Preferences.Constant.ARTIST_GROUP_VISIBILITY_GROUPS);
                         if (!a.contents.isEmpty())
-                            group.picture.setTarget(a.contents.get(0).getCover());
+                            group.setCover(a.contents.get(0).getCover());
                         bookInsertCount += a.contents.size();
 
                         toInsert.add(new ImmutableTriple<>(group, a, a.contents));
@@ -255,4 +303,40 @@ public class DatabaseMaintenance {
             emitter.onComplete();
         }
     }
+
+    private static void computeGroupsCountAndCover(@NonNull final Context context, ObservableEmitter<Float> emitter) {
+        ObjectBoxDB db = ObjectBoxDB.getInstance(context);
+        try {
+            // Compute missing denormalized items count and cover of groups (since versionCode 131 / v1.13.2)
+            Timber.i("Computing groups count and cover : start");
+            long[] ids = db.selectGroupsWithNoCoverUriQ().findIds();
+            Timber.i("Computing groups count and cover : %s groups detected", ids.length);
+            int max = ids.length;
+            float pos = 1;
+            for (long id : ids) {
+                db.updateGroupsCountAndCover(new long[]{id});
+                emitter.onNext(pos++ / max);
+            }
+            Timber.i("Computing groups count and cover : done");
+            // Only signal completion on success, so that the task isn't recorded as done if it fails halfway
+            emitter.onComplete();
+        } finally {
+            db.closeThreadResources();
+        }
+    }
+
+    private static void deleteOrphanRecords(@NonNull final Context context, ObservableEmitter<Float> emitter) {
+        ObjectBoxDB db = ObjectBoxDB.getInstance(context);
+        try {
+            // Remove records whose parent has been removed (pictures, error records, queue records, group items, attribute locations)
+            Timber.i("Removing orphan records : start");
+            long nbRemoved = db.deleteOrphanRecords();
+            Timber.i("Removing orphan records : %s records removed", nbRemoved);
+            emitter.onNext(1f);
+            Timber.i("Removing orphan records : done");
+        } finally {
+            db.closeThreadResources();
+            emitter.onComplete();
+        }
+    }
 }
@@ -14,11 +14,15 @@ import androidx.paging.PagedList;
 import com.annimon.stream.Stream;
 
 import org.apache.commons.lang3.tuple.ImmutablePair;
+import org.threeten.bp.Instant;
 
 import java.lang.annotation.Retention;
 import java.lang.annotation.RetentionPolicy;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
@@ -30,7 +34,7 @@ import io.objectbox.BoxStore;
 import io.objectbox.android.ObjectBoxDataSource;
 import io.objectbox.android.ObjectBoxLiveData;
 import io.objectbox.query.Query;
-import io.objectbox.relation.ToOne;
+import io.objectbox.reactive.DataSubscription;
 import io.reactivex.Single;
 import io.reactivex.android.schedulers.AndroidSchedulers;
 import io.reactivex.schedulers.Schedulers;
@@ -55,6 +59,15 @@ public class ObjectBoxDAO implements CollectionDAO {
 
     private final ObjectBoxDB db;
 
+    // Maximum number of library search results kept in cache
+    private static final int SEARCH_CACHE_SIZE = 10;
+
+    // Books count and cover per download date group; invalidated whenever books change
+    private DlDateBuckets dlDateBuckets = null;
+    // Library search results; invalidated whenever books, group items or attributes change
+    private final SearchResultCache searchCache = new SearchResultCache(SEARCH_CACHE_SIZE);
+    private final List<DataSubscription> subscriptions = new ArrayList<>();
+
 
     @IntDef({Mode.SEARCH_CONTENT_MODULAR, Mode.COUNT_CONTENT_MODULAR, Mode.SEARCH_CONTENT_UNIVERSAL, Mode.COUNT_CONTENT_UNIVERSAL})
     @Retention(RetentionPolicy.SOURCE)
@@ -80,14 +93,39 @@ public class ObjectBoxDAO implements CollectionDAO {
 
 
     public void cleanup() {
+        synchronized (this) {
+            for (DataSubscription subscription : subscriptions) subscription.cancel();
+            subscriptions.clear();
+            dlDateBuckets = null;
+        }
+        searchCache.clear();
         db.closeThreadResources();
     }
 
+    /**
+     * Watch the changes that invalidate cached data
+     * NB : Done lazily as most DAO instances never use cached data
+     */
+    private synchronized void subscribeToChanges() {
+        if (!subscriptions.isEmpty()) return;
+
+        subscriptions.add(db.subscribeToChanges(Content.class, () -> {
+            invalidateDlDateBuckets();
+            searchCache.clear();
+        }));
+        subscriptions.add(db.subscribeToChanges(GroupItem.class, searchCache::clear));
+        subscriptions.add(db.subscribeToChanges(Attribute.class, searchCache::clear));
+    }
+
     @Override
     public long getDbSizeBytes() {
         return db.getDbSizeBytes();
     }
 
+    public void runInTransaction(@NonNull final Runnable operation) {
+        db.runInTx(operation);
+    }
+
     @Override
     public Single<List<Long>> getStoredBookIds(boolean nonFavouritesOnly, boolean includeQueued) {
         return Single.fromCallable(() -> Helper.getListFromPrimitiveArray(db.selectStoredContentIds(nonFavouritesOnly, includeQueued)))
@@ -191,13 +229,13 @@ public class ObjectBoxDAO implements CollectionDAO {
             boolean orderDesc,
             boolean favouritesOnly,
             boolean loadAll) {
-        boolean isCustomOrder = (orderField == Preferences.Constant.ORDER_FIELD_CUSTOM);
+        boolean isRandomOrder = (orderField == Preferences.Constant.ORDER_FIELD_RANDOM);
 
         ImmutablePair<Long, DataSource.Factory<Integer, Content>> contentRetrieval;
-        if (isCustomOrder)
-            contentRetrieval = getPagedContentByList(mode, filter, groupId, metadata, orderField, orderDesc, favouritesOnly);
-        else
+        if (isRandomOrder)
             contentRetrieval = getPagedContentByQuery(mode, filter, groupId, metadata, orderField, orderDesc, favouritesOnly);
+        else
+            contentRetrieval = getPagedContentByList(mode, filter, groupId, metadata, orderField, orderDesc, favouritesOnly);
 
         int nbPages = Preferences.getContentPageQuantity();
         int initialLoad = nbPages * 2;
@@ -219,8 +257,6 @@ public class ObjectBoxDAO implements CollectionDAO {
             int orderField,
             boolean orderDesc,
             boolean favouritesOnly) {
-        boolean isRandom = (orderField == Preferences.Constant.ORDER_FIELD_RANDOM);
-
         Query<Content> query;
         if (Mode.SEARCH_CONTENT_MODULAR == mode) {
             query = db.selectContentSearchContentQ(filter, groupId, metadata, favouritesOnly, orderField, orderDesc);
@@ -228,9 +264,7 @@ public class ObjectBoxDAO implements CollectionDAO {
             query = db.selectContentUniversalQ(filter, groupId, favouritesOnly, orderField, orderDesc);
         }
 
-        if (isRandom)
-            return new ImmutablePair<>(query.count(), new ObjectBoxRandomDataSource.RandomDataSourceFactory<>(query));
-        else return new ImmutablePair<>(query.count(), new ObjectBoxDataSource.Factory<>(query));
+        return new ImmutablePair<>(query.count(), new ObjectBoxRandomDataSource.RandomDataSourceFactory<>(query).mapByPage(this::attachSummaries));
     }
 
     private ImmutablePair<Long, DataSource.Factory<Integer, Content>> getPagedContentByList(
@@ -241,15 +275,96 @@ public class ObjectBoxDAO implements CollectionDAO {
             int orderField,
             boolean orderDesc,
             boolean favouritesOnly) {
-        long[] ids;
+        long[] ids = selectCachedContentIds(mode, filter, groupId, metadata, orderField, orderDesc, favouritesOnly);
+
+        // Whenever the cache gets cleared, data sources are invalidated and the new ones get their IDs from a new search
+        return new ImmutablePair<>((long) ids.length, new ObjectBoxPredeterminedDataSource.PredeterminedDataSourceFactory<>(
+                ids -> attachSummaries(db.selectContentById(ids)),
+                () -> selectCachedContentIds(mode, filter, groupId, metadata, orderField, orderDesc, favouritesOnly),
+                searchCache));
+    }
+
+    /**
+     * Attach a summary to each of the given contents, to be able to display them without resolving their relations
+     * NB : Pages and covers of all contents are fetched in a handful of queries
+     * Attributes are read through each content's relation, as ObjectBox can't query which attributes belong to which content in bulk;
+     * the contents themselves are kept as full entities as selection and library actions work on them
+     *
+     * @param contents Contents to attach a summary to
+     * @return Given contents
+     */
+    private List<Content> attachSummaries(@Nullable final List<Content> contents) {
+        if (null == contents || contents.isEmpty()) return contents;
+
+        long[] ids = Helper.getPrimitiveLongArrayFromList(Stream.of(contents).map(Content::getId).toList());
+        Map<Long, String> coverUris = new HashMap<>();
+        for (ImageFile cover : db.selectCoversFromContents(ids))
+            coverUris.put(cover.getContent().getTargetId(), cover.getDisplayUri());
+        Map<Long, Integer> nbPages = countOccurrences(db.selectPagesContentIds(ids, false, false));
+        Map<Long, Integer> nbDownloadedPages = countOccurrences(db.selectPagesContentIds(ids, true, false));
+        Map<Long, Integer> nbReadPages = countOccurrences(db.selectPagesContentIds(ids, false, true));
+
+        for (Content c : contents) {
+            String coverUri = coverUris.get(c.getId());
+            if (null == coverUri || coverUri.isEmpty()) coverUri = c.getCoverImageUrl();
+            c.setSummary(new ContentSummary(c.getAttributes(), coverUri, getCount(nbPages, c.getId()), getCount(nbDownloadedPages, c.getId())));
+
+            // Same rule as Content.getReadPagesCount
+            int readPages = getCount(nbReadPages, c.getId());
+            if (0 == readPages && c.getLastReadPageIndex() > 0)
+                readPages = c.getLastReadPageIndex() + 1; // pre-v1.13 content
+            c.setReadPagesCount(readPages);
+        }
+        return contents;
+    }
+
+    private static Map<Long, Integer> countOccurrences(long[] values) {
+        Map<Long, Integer> result = new HashMap<>();
+        for (long value : values) {
+            Integer count = result.get(value);
+            result.put(value, (null == count) ? 1 : count + 1);
+        }
+        return result;
+    }
+
+    private static int getCount(@NonNull final Map<Long, Integer> counts, long key) {
+        Integer result = counts.get(key);
+        return (null == result) ? 0 : result;
+    }
+
+    /**
+     * Get the IDs of the books matching the given search, from the cache if the search has been done before
+     * NB : Doesn't work with random order
+     */
+    private long[] selectCachedContentIds(
+            @Mode int mode,
+            String filter,
+            long groupId,
+            List<Attribute> metadata,
+            int orderField,
+            boolean orderDesc,
+            boolean favouritesOnly) {
+        subscribeToChanges();
+
+        String key = SearchResultCache.buildKey(mode, filter, groupId, metadata, orderField, orderDesc, favouritesOnly);
+        long[] result = searchCache.get(key);
+        if (result != null) return result;
 
+        long generation = searchCache.getGeneration();
+        boolean isCustomOrder = (orderField == Preferences.Constant.ORDER_FIELD_CUSTOM);
         if (Mode.SEARCH_CONTENT_MODULAR == mode) {
-            ids = db.selectContentSearchContentByGroupItem(filter, groupId, metadata, favouritesOnly, orderField, orderDesc);
+            if (isCustomOrder)
+                result = db.selectContentSearchContentByGroupItem(filter, groupId, metadata, favouritesOnly, orderField, orderDesc);
+            else
+                result = db.selectContentSearchId(filter, groupId, metadata, favouritesOnly, orderField, orderDesc);
         } else { // Mode.SEARCH_CONTENT_UNIVERSAL
-            ids = db.selectContentUniversalByGroupItem(filter, groupId, favouritesOnly, orderField, orderDesc);
+            if (isCustomOrder)
+                result = db.selectContentUniversalByGroupItem(filter, groupId, favouritesOnly, orderField, orderDesc);
+            else
+                result = db.selectContentUniversalId(filter, groupId, favouritesOnly, orderField, orderDesc);
         }
-
-        return new ImmutablePair<>((long) ids.length, new ObjectBoxPredeterminedDataSource.PredeterminedDataSourceFactory<>(db::selectContentById, ids));
+        searchCache.put(key, result, generation);
+        return result;
     }
 
     @Nullable
@@ -266,6 +381,27 @@ public class ObjectBoxDAO implements CollectionDAO {
         return db.selectContentBySourceAndUrl(site, url);
     }
 
+    public Map<Site, Set<String>> selectAllContentUrlsBySite() {
+        ImmutablePair<long[], String[]> sitesAndUrls = db.selectAllContentSitesAndUrls();
+        long[] siteCodes = sitesAndUrls.left;
+        String[] urls = sitesAndUrls.right;
+
+        Map<Site, Set<String>> result = new EnumMap<>(Site.class);
+        for (int i = 0; i < siteCodes.length; i++) {
+            // Books without URL can't be told apart (see selectContentBySourceAndUrl)
+            if (urls[i].isEmpty()) continue;
+            Site site = Site.searchByCode(siteCodes[i]);
+            Set<String> siteUrls = result.get(site);
+            if (null == siteUrls) {
+                siteUrls = new HashSet<>();
+                result.put(site, siteUrls);
+            }
+            // URLs are compared case-insensitively, like selectContentBySourceAndUrl does
+            siteUrls.add(urls[i].toLowerCase());
+        }
+        return result;
+    }
+
     @Nullable
     public Content selectContentByFolderUri(@NonNull final String folderUri, boolean onlyFlagged) {
         return db.selectContentByFolderUri(folderUri, onlyFlagged);
@@ -283,6 +419,14 @@ public class ObjectBoxDAO implements CollectionDAO {
         db.deleteContent(content);
     }
 
+    public void deleteContents(@NonNull final long[] contentIds) {
+        db.deleteContentById(contentIds);
+    }
+
+    public void updateContentsDeleteFlag(@NonNull final long[] contentIds, boolean flag) {
+        db.markContentById(contentIds, flag);
+    }
+
     public List<ErrorRecord> selectErrorRecordByContentId(long contentId) {
         return db.selectErrorRecordByContentId(contentId);
     }
@@ -312,6 +456,10 @@ public class ObjectBoxDAO implements CollectionDAO {
         return db.selectAllInternalBooksQ(favsOnly).find();
     }
 
+    public long[] selectAllInternalBookIds(boolean favsOnly) {
+        return db.selectAllInternalBooksQ(favsOnly).findIds();
+    }
+
     @Override
     public void deleteAllExternalBooks() {
         db.deleteContentById(db.selectAllExternalBooksQ().findIds());
@@ -328,14 +476,11 @@ public class ObjectBoxDAO implements CollectionDAO {
         LiveData<List<Group>> workingData = livedata;
 
         // Download date grouping, groups are empty as they are dynamically generated
-        //   -> Manually add items inside each of them
+        //   -> Manually set the number of books inside each of them
         //   -> Manually set a cover for each of them
         if (grouping == Grouping.DL_DATE.getId()) {
             MediatorLiveData<List<Group>> livedata2 = new MediatorLiveData<>();
-            livedata2.addSource(livedata, v -> {
-                List<Group> enrichedWithItems = Stream.of(v).map(g -> enrichGroupWithItemsByDlDate(g, g.propertyMin, g.propertyMax)).toList();
-                livedata2.setValue(enrichedWithItems);
-            });
+            livedata2.addSource(livedata, v -> livedata2.setValue(enrichGroupsByDlDate(v)));
             workingData = livedata2;
         }
 
@@ -344,19 +489,50 @@ public class ObjectBoxDAO implements CollectionDAO {
             MediatorLiveData<List<Group>> result = new MediatorLiveData<>();
             result.addSource(workingData, v -> {
                 int sortOrder = orderDesc ? -1 : 1;
-                List<Group> orderedByNbChildren = Stream.of(v).sortBy(g -> g.getItems().size() * sortOrder).toList();
+                List<Group> orderedByNbChildren = Stream.of(v).sortBy(g -> g.getItemCount() * sortOrder).toList();
                 result.setValue(orderedByNbChildren);
             });
             return result;
         } else return workingData;
     }
 
-    private Group enrichGroupWithItemsByDlDate(@NonNull final Group g, int minDays, int maxDays) {
-        List<GroupItem> items = selectGroupItemsByDlDate(minDays, maxDays);
-        g.setItems(items);
-        if (!items.isEmpty()) g.picture.setTarget(items.get(0).content.getTarget().getCover());
+    private List<Group> enrichGroupsByDlDate(@NonNull final List<Group> groups) {
+        DlDateBuckets buckets = getDlDateBuckets(groups);
+        for (Group g : groups) {
+            g.itemCount = buckets.getCount(g.id);
+            // Only set the ID of the cover; the picture itself is lazily loaded when the group is displayed
+            g.coverUri = "";
+            g.picture.setTargetId(buckets.getCoverId(g.id));
+        }
+        return groups;
+    }
+
+    /**
+     * Get the books count and latest book of each of the given download date groups
+     * Results are computed in a single pass over all books' download dates, then cached until books change
+     *
+     * @param groups Download date groups to get the buckets for
+     * @return Download date buckets for the given groups
+     */
+    private synchronized DlDateBuckets getDlDateBuckets(@NonNull final List<Group> groups) {
+        subscribeToChanges();
+
+        long now = Instant.now().toEpochMilli();
+        if (dlDateBuckets != null && dlDateBuckets.isValid(groups, now)) return dlDateBuckets;
+
+        ImmutablePair<long[], long[]> idsAndDates = db.selectLibraryContentIdsAndDownloadDates();
+        dlDateBuckets = new DlDateBuckets(groups, idsAndDates.left, idsAndDates.right, now);
+        // Only the cover IDs of the groups are retrieved here; the pictures themselves are lazily loaded
+        for (Group g : groups) {
+            long latestContentId = dlDateBuckets.getLatestContentId(g.id);
+            if (latestContentId > 0)
+                dlDateBuckets.setCoverId(g.id, db.selectCoverIdFromContent(latestContentId));
+        }
+        return dlDateBuckets;
+    }
 
-        return g;
+    private synchronized void invalidateDlDateBuckets() {
+        dlDateBuckets = null;
     }
 
     @Nullable
@@ -421,11 +597,7 @@ public class ObjectBoxDAO implements CollectionDAO {
         if (-1 == item.order)
             item.order = db.getMaxGroupItemOrderFor(item.getGroupId()) + 1;
 
-        // If target group doesn't have a cover, get the corresponding Content's
-        ToOne<ImageFile> groupCover = item.group.getTarget().picture;
-        if (!groupCover.isResolvedAndNotNull())
-            groupCover.setAndPutTarget(item.content.getTarget().getCover());
-
+        // Target group's items count and cover are updated by the DB
         return db.insertGroupItem(item);
     }
 
@@ -442,15 +614,7 @@ public class ObjectBoxDAO implements CollectionDAO {
     }
 
     public void deleteGroupItems(@NonNull final List<Long> groupItemIds) {
-        // Check if one of the GroupItems to delete is linked to the content that contains the group's cover picture
-        List<GroupItem> groupItems = db.selectGroupItems(Helper.getPrimitiveLongArrayFromList(groupItemIds));
-        for (GroupItem gi : groupItems) {
-            ToOne<ImageFile> groupPicture = gi.group.getTarget().picture;
-            // If so, remove the cover picture
-            if (groupPicture.isResolvedAndNotNull() && groupPicture.getTarget().getContent().getTargetId() == gi.content.getTargetId())
-                gi.group.getTarget().picture.setAndPutTarget(null);
-        }
-
+        // Groups whose cover belonged to one of the deleted items get a new cover from the DB
         db.deleteGroupItems(Helper.getPrimitiveLongArrayFromList(groupItemIds));
     }
 
@@ -459,10 +623,18 @@ public class ObjectBoxDAO implements CollectionDAO {
         return db.selectAllQueueBooksQ().find();
     }
 
+    public long[] selectAllQueueBookIds() {
+        return db.selectAllQueueBooksQ().findIds();
+    }
+
     public void flagAllInternalBooks() {
         db.flagContentById(db.selectAllInternalBooksQ(false).findIds(), true);
     }
 
+    public void unflagContents(@NonNull final long[] contentIds) {
+        db.flagContentById(contentIds, false);
+    }
+
     public void deleteAllInternalBooks(boolean resetRemainingImagesStatus) {
         db.deleteContentById(db.selectAllInternalBooksQ(false).findIds());
 
@@ -555,22 +727,19 @@ public class ObjectBoxDAO implements CollectionDAO {
         content.setStatus(StatusContent.DOWNLOADING);
         db.insertContent(content);
 
-        List<QueueRecord> queue = db.selectQueue();
-        int lastIndex = 1;
-        if (!queue.isEmpty())
-            lastIndex = queue.get(queue.size() - 1).getRank() + 1;
-        db.insertQueue(content.getId(), lastIndex);
+        db.insertQueueAtBottom(content.getId());
     }
 
     private List<Long> contentIdSearch(@Mode int mode, String filter, long groupId, List<Attribute> metadata, int orderField, boolean orderDesc, boolean favouritesOnly) {
+        if (Mode.SEARCH_CONTENT_MODULAR != mode && Mode.SEARCH_CONTENT_UNIVERSAL != mode)
+            return Collections.emptyList();
 
-        if (Mode.SEARCH_CONTENT_MODULAR == mode) {
+        if (Preferences.Constant.ORDER_FIELD_RANDOM != orderField)
+            return Helper.getListFromPrimitiveArray(selectCachedContentIds(mode, filter, groupId, metadata, orderField, orderDesc, favouritesOnly));
+        else if (Mode.SEARCH_CONTENT_MODULAR == mode)
             return Helper.getListFromPrimitiveArray(db.selectContentSearchId(filter, groupId, metadata, favouritesOnly, orderField, orderDesc));
-        } else if (Mode.SEARCH_CONTENT_UNIVERSAL == mode) {
+        else
             return Helper.getListFromPrimitiveArray(db.selectContentUniversalId(filter, groupId, favouritesOnly, orderField, orderDesc));
-        } else {
-            return Collections.emptyList();
-        }
     }
 
     private AttributeQueryResult pagedAttributeSearch(
@@ -625,6 +794,18 @@ public class ObjectBoxDAO implements CollectionDAO {
         db.updateQueue(queue);
     }
 
+    public void insertQueueAtBottom(@NonNull List<Long> contentIds) {
+        db.insertQueueAtBottom(contentIds);
+    }
+
+    public boolean moveQueue(int oldPosition, int newPosition) {
+        return db.moveQueue(oldPosition, newPosition);
+    }
+
+    public boolean invertQueue() {
+        return db.invertQueue();
+    }
+
     public void deleteQueue(@NonNull Content content) {
         db.deleteQueue(content);
     }
@@ -687,4 +868,78 @@ public class ObjectBoxDAO implements CollectionDAO {
     public long countOldStoredContent() {
         return db.selectOldStoredContentQ().count();
     }
+
+
+    /**
+     * Books count, latest book and cover of each group of the download date grouping
+     */
+    private static class DlDateBuckets {
+        // Buckets are computed relatively to the current time; they get stale after a while even if no book changes
+        private static final long VALIDITY_MS = 1000L * 60 * 60;
+
+        private final long timestamp;
+        private final Map<Long, Integer> counts = new HashMap<>();
+        private final Map<Long, Long> latestContentIds = new HashMap<>();
+        private final Map<Long, Long> coverIds = new HashMap<>();
+
+        DlDateBuckets(@NonNull final List<Group> groups, long[] contentIds, long[] downloadDates, long now) {
+            timestamp = now;
+            int nbGroups = groups.size();
+            long[] minAges = new long[nbGroups];
+            long[] maxAges = new long[nbGroups];
+            int[] groupCounts = new int[nbGroups];
+            long[] latestDates = new long[nbGroups];
+            long[] latestIds = new long[nbGroups];
+            for (int i = 0; i < nbGroups; i++) {
+                minAges[i] = groups.get(i).propertyMin * ObjectBoxDB.DAY_IN_MILLIS;
+                maxAges[i] = groups.get(i).propertyMax * ObjectBoxDB.DAY_IN_MILLIS;
+                latestDates[i] = Long.MIN_VALUE;
+            }
+
+            // Same bounds as ObjectBoxDB.applyDownloadDateFilter
+            for (int i = 0; i < contentIds.length; i++) {
+                long age = now - downloadDates[i];
+                for (int j = 0; j < nbGroups; j++) {
+                    if (age >= minAges[j] && age <= maxAges[j]) {
+                        groupCounts[j]++;
+                        if (downloadDates[i] > latestDates[j]) {
+                            latestDates[j] = downloadDates[i];
+                            latestIds[j] = contentIds[i];
+                        }
+                    }
+                }
+            }
+
+            for (int i = 0; i < nbGroups; i++) {
+                long groupId = groups.get(i).id;
+                counts.put(groupId, groupCounts[i]);
+                latestContentIds.put(groupId, latestIds[i]);
+            }
+        }
+
+        boolean isValid(@NonNull final List<Group> groups, long now) {
+            if (now - timestamp > VALIDITY_MS) return false;
+            for (Group g : groups) if (!counts.containsKey(g.id)) return false;
+            return true;
+        }
+
+        int getCount(long groupId) {
+            Integer result = counts.get(groupId);
+            return (null == result) ? 0 : result;
+        }
+
+        long getLatestContentId(long groupId) {
+            Long result = latestContentIds.get(groupId);
+            return (null == result) ? 0 : result;
+        }
+
+        long getCoverId(long groupId) {
+            Long result = coverIds.get(groupId);
+            return (null == result) ? 0 : result;
+        }
+
+        void setCoverId(long groupId, long coverId) {
+            coverIds.put(groupId, coverId);
+        }
+    }
 }
@@ -7,16 +7,20 @@ import androidx.annotation.NonNull;
 
 import com.annimon.stream.Collectors;
 import com.annimon.stream.Stream;
+import com.annimon.stream.function.Function;
 
 import org.apache.commons.lang3.tuple.ImmutablePair;
 import org.threeten.bp.Instant;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.EnumMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Random;
+import java.util.Set;
 
 import javax.annotation.Nullable;
 
@@ -27,9 +31,11 @@ import io.objectbox.android.AndroidObjectBrowser;
 import io.objectbox.query.LazyList;
 import io.objectbox.query.Query;
 import io.objectbox.query.QueryBuilder;
+import io.objectbox.reactive.DataSubscription;
 import me.devsaki.hentoid.BuildConfig;
 import me.devsaki.hentoid.database.domains.Attribute;
 import me.devsaki.hentoid.database.domains.AttributeLocation;
+import me.devsaki.hentoid.database.domains.AttributeLocation_;
 import me.devsaki.hentoid.database.domains.Attribute_;
 import me.devsaki.hentoid.database.domains.Content;
 import me.devsaki.hentoid.database.domains.Content_;
@@ -68,7 +74,13 @@ public class ObjectBoxDB {
     // Status displayed in the library view (all books of the library; both internal and external)
     private static final int[] libraryStatus = ContentHelper.getLibraryStatuses();
 
-    private static final long DAY_IN_MILLIS = 1000L * 60 * 60 * 24;
+    static final long DAY_IN_MILLIS = 1000L * 60 * 60 * 24;
+
+    // Gap between the ranks of consecutive queue records, to be able to move a record without renumbering the others
+    private static final int QUEUE_RANK_GAP = 1024;
+
+    // Number of contents removed in a single transaction
+    private static final int DELETE_BATCH_SIZE = 50;
 
     private static ObjectBoxDB instance;
 
@@ -102,8 +114,8 @@ public class ObjectBoxDB {
 
     // Use this to get db instance for testing (store generated by the test framework)
     public static synchronized ObjectBoxDB getInstance(BoxStore store) {
-        // Use application context only
-        if (instance == null) {
+        // Each test class uses its own store
+        if (instance == null || instance.store != store) {
             instance = new ObjectBoxDB(store);
         }
 
@@ -119,13 +131,41 @@ public class ObjectBoxDB {
         return store.sizeOnDisk();
     }
 
+    /**
+     * Run the given operation inside a single write transaction
+     * NB : Transactions started by the operation itself are merged into that transaction
+     *
+     * @param operation Operation to run
+     */
+    void runInTx(@NonNull final Runnable operation) {
+        store.runInTx(operation);
+    }
+
+    /**
+     * Subscribe to any change affecting the given entity
+     * NB : The given callback is called from an ObjectBox thread
+     *
+     * @param entityClass Class of the entity to watch
+     * @param onChange    Callback to run whenever the box of the given entity changes
+     * @return Subscription to cancel when changes aren't needed anymore
+     */
+    <T> DataSubscription subscribeToChanges(@NonNull final Class<T> entityClass, @NonNull final Runnable onChange) {
+        return store.subscribe(entityClass).onlyChanges().observer(data -> onChange.run());
+    }
+
 
     long insertContent(Content content) {
         List<Attribute> attributes = content.getAttributes();
         Box<Attribute> attrBox = store.boxFor(Attribute.class);
         Query<Attribute> attrByUniqueKey = attrBox.query().equal(Attribute_.type, 0).equal(Attribute_.name, "").build();
 
-        return store.callInTxNoException(() -> {
+        long[] groupIdsToUpdate = null;
+        if (content.groupItems != null && content.groupItems.hasPendingDbChanges())
+            groupIdsToUpdate = Helper.getPrimitiveLongArrayFromList(Stream.of(content.groupItems).map(GroupItem::getGroupId).toList());
+        // The cover of the Content might have been replaced through its images
+        boolean isCoverUpdated = content.getImageFiles() != null && content.getImageFiles().hasPendingDbChanges();
+
+        long result = store.callInTxNoException(() -> {
             // Master data management managed manually
             // Ensure all known attributes are replaced by their ID before being inserted
             // Watch https://github.com/objectbox/objectbox-java/issues/509 for a lighter solution based on @Unique annotation
@@ -149,6 +189,11 @@ public class ObjectBoxDB {
 
             return store.boxFor(Content.class).put(content);
         });
+
+        // Group items might have been created through the Content (e.g. when importing a book from its JSON)
+        if (groupIdsToUpdate != null) updateGroupsCountAndCover(groupIdsToUpdate);
+        if (isCoverUpdated) updateGroupCoversOf(new long[]{result});
+        return result;
     }
 
     public void updateContentStatus(@NonNull final StatusContent updateFrom, @NonNull final StatusContent updateTo) {
@@ -204,22 +249,22 @@ public class ObjectBoxDB {
 
     void flagContentById(long[] contentId, boolean flag) {
         Box<Content> contentBox = store.boxFor(Content.class);
-        for (long id : contentId) {
-            Content c = contentBox.get(id);
-            if (c != null) {
-                c.setFlaggedForDeletion(flag);
-                contentBox.put(c);
+        store.runInTx(() -> {
+            for (long id : contentId) {
+                Content c = contentBox.get(id);
+                if (c != null) {
+                    c.setFlaggedForDeletion(flag);
+                    contentBox.put(c);
+                }
             }
-        }
+        });
     }
 
     void markContentById(long[] contentId, boolean flag) {
         Box<Content> contentBox = store.boxFor(Content.class);
         List<Content> contents = contentBox.get(contentId);
-        for (Content c : contents) {
-            c.setIsBeingDeleted(flag);
-            contentBox.put(c);
-        }
+        for (Content c : contents) c.setIsBeingDeleted(flag);
+        contentBox.put(contents);
     }
 
     void deleteContent(Content content) {
@@ -245,10 +290,18 @@ public class ObjectBoxDB {
         Box<GroupItem> groupItemBox = store.boxFor(GroupItem.class);
         Box<Group> groupBox = store.boxFor(Group.class);
 
-        for (long id : contentId) {
-            Content c = contentBox.get(id);
-            if (c != null) {
-                store.runInTx(() -> {
+        Query<GroupItem> groupItemsByGroup = groupItemBox.query().equal(GroupItem_.groupId, 0).build();
+        Set<Long> groupIdsToUpdate = new HashSet<>();
+
+        // One transaction per batch of contents : less overhead than one transaction per content,
+        // without locking the DB for the whole duration of large deletions
+        for (int batchStart = 0; batchStart < contentId.length; batchStart += DELETE_BATCH_SIZE) {
+            long[] batchIds = Arrays.copyOfRange(contentId, batchStart, Math.min(batchStart + DELETE_BATCH_SIZE, contentId.length));
+            store.runInTx(() -> {
+                for (long id : batchIds) {
+                    Content c = contentBox.get(id);
+                    if (null == c) continue;
+
                     if (c.getImageFiles() != null) {
                         for (ImageFile i : c.getImageFiles())
                             imageFileBox.remove(i);   // Delete imageFiles
@@ -276,16 +329,21 @@ public class ObjectBoxDB {
                     for (GroupItem groupItem : groupItems) {
                         // If we're not in the Custom grouping and it's the only item of its group, delete the group
                         Group g = groupItem.group.getTarget();
-                        if (g != null && !g.grouping.equals(Grouping.CUSTOM) && g.items.size() < 2)
+                        if (g != null && !g.grouping.equals(Grouping.CUSTOM) && groupItemsByGroup.setParameter(GroupItem_.groupId, g.id).count() < 2) {
                             groupBox.remove(g);
+                            groupIdsToUpdate.remove(g.id);
+                        } else if (g != null) groupIdsToUpdate.add(g.id);
                         // Delete the item
                         groupItemBox.remove(groupItem);
                     }
 
                     contentBox.remove(c);                                           // Remove the content itself
-                });
-            }
+                }
+            });
         }
+
+        if (!groupIdsToUpdate.isEmpty())
+            updateGroupsCountAndCover(Helper.getPrimitiveLongArrayFromList(new ArrayList<>(groupIdsToUpdate)));
     }
 
     List<QueueRecord> selectQueue() {
@@ -304,13 +362,142 @@ public class ObjectBoxDB {
     }
 
     long selectMaxQueueOrder() {
-        return store.boxFor(QueueRecord.class).query().build().property(QueueRecord_.rank).max();
+        Query<QueueRecord> query = store.boxFor(QueueRecord.class).query().build();
+        if (0 == query.count()) return 0;
+        return query.property(QueueRecord_.rank).max();
     }
 
     void insertQueue(long id, int order) {
         store.boxFor(QueueRecord.class).put(new QueueRecord(id, order));
     }
 
+    /**
+     * Add the given content at the bottom of the queue
+     *
+     * @param contentId ID of the content to add to the queue
+     */
+    void insertQueueAtBottom(long contentId) {
+        insertQueueAtBottom(Collections.singletonList(contentId));
+    }
+
+    /**
+     * Add the given contents at the bottom of the queue, in the given order
+     *
+     * @param contentIds IDs of the contents to add to the queue
+     */
+    void insertQueueAtBottom(@NonNull final List<Long> contentIds) {
+        if (contentIds.isEmpty()) return;
+        store.runInTx(() -> {
+            long maxRank = selectMaxQueueOrder();
+            if (maxRank > Integer.MAX_VALUE - (long) QUEUE_RANK_GAP * contentIds.size())
+                maxRank = rebalanceQueue();
+            List<QueueRecord> records = new ArrayList<>();
+            for (long contentId : contentIds) {
+                maxRank += QUEUE_RANK_GAP;
+                records.add(new QueueRecord(contentId, (int) maxRank));
+            }
+            updateQueue(records);
+        });
+    }
+
+    /**
+     * Move the queue record at the given position to the given new position
+     * NB : Only the moved record is updated, unless there's no free rank left between its new neighbours,
+     * in which case the whole queue is renumbered first
+     *
+     * @param oldPosition Current position of the record to move
+     * @param newPosition Position to move the record to
+     * @return True if the record has been moved; false if there's no record at the given position
+     */
+    boolean moveQueue(int oldPosition, int newPosition) {
+        if (newPosition < 0) return false;
+        return store.callInTxNoException(() -> {
+            Query<QueueRecord> queue = selectQueueContentsQ();
+            QueueRecord record = selectQueueRecordAt(queue, oldPosition);
+            if (null == record) return false;
+
+            Integer rank = computeQueueRank(queue, record, oldPosition, newPosition);
+            if (null == rank) {
+                rebalanceQueue();
+                record = selectQueueRecordAt(queue, oldPosition);
+                if (null == record) return false;
+                rank = computeQueueRank(queue, record, oldPosition, newPosition);
+                if (null == rank) return false;
+            }
+            record.setRank(rank);
+            store.boxFor(QueueRecord.class).put(record);
+            return true;
+        });
+    }
+
+    /**
+     * Invert the order of the queue
+     *
+     * @return True if the queue has been inverted; false if it has less than 2 records
+     */
+    boolean invertQueue() {
+        return store.callInTxNoException(() -> {
+            List<QueueRecord> queue = selectQueue();
+            if (queue.size() < 2) return false;
+
+            int rank = queue.size() * QUEUE_RANK_GAP;
+            for (QueueRecord qr : queue) {
+                qr.setRank(rank);
+                rank -= QUEUE_RANK_GAP;
+            }
+            updateQueue(queue);
+            return true;
+        });
+    }
+
+    @Nullable
+    private QueueRecord selectQueueRecordAt(@NonNull final Query<QueueRecord> queue, int position) {
+        if (position < 0) return null;
+        List<QueueRecord> result = queue.find(position, 1);
+        return result.isEmpty() ? null : result.get(0);
+    }
+
+    /**
+     * Compute the rank the given record should have to be moved to the given position
+     *
+     * @return Rank to give to the moved record; null if there's no free rank left at the new position
+     */
+    @Nullable
+    private Integer computeQueueRank(@NonNull final Query<QueueRecord> queue, @NonNull final QueueRecord record, int oldPosition, int newPosition) {
+        // Neighbours of the new position, once the record has been taken out of the queue
+        QueueRecord previous = selectQueueRecordAt(queue, (newPosition - 1 < oldPosition) ? newPosition - 1 : newPosition);
+        QueueRecord next = selectQueueRecordAt(queue, (newPosition < oldPosition) ? newPosition : newPosition + 1);
+
+        long rank;
+        if (null == previous && null == next) return record.getRank();
+        else if (null == previous) rank = (long) next.getRank() - QUEUE_RANK_GAP;
+        else if (null == next) rank = (long) previous.getRank() + QUEUE_RANK_GAP;
+        else {
+            long gap = (long) next.getRank() - previous.getRank();
+            if (gap < 2) return null;
+            rank = previous.getRank() + gap / 2;
+        }
+
+        if (rank < Integer.MIN_VALUE || rank > Integer.MAX_VALUE) return null;
+        return (int) rank;
+    }
+
+    /**
+     * Renumber the whole queue, leaving QUEUE_RANK_GAP free ranks between consecutive records
+     *
+     * @return Rank of the last record of the queue
+     */
+    private int rebalanceQueue() {
+        List<QueueRecord> queue = selectQueue();
+        int rank = 0;
+        for (QueueRecord qr : queue) {
+            rank += QUEUE_RANK_GAP;
+            qr.setRank(rank);
+        }
+        updateQueue(queue);
+        return rank;
+    }
+
     void updateQueue(@NonNull final List<QueueRecord> queue) {
         Box<QueueRecord> queueRecordBox = store.boxFor(QueueRecord.class);
         queueRecordBox.put(queue);
@@ -864,6 +1051,7 @@ public class ObjectBoxDB {
             img.setFileUri(image.getFileUri());
             img.setSize(image.getSize());
             imgBox.put(img);
+            if (img.isCover()) updateGroupCoversOf(new long[]{img.getContent().getTargetId()});
         }
     }
 
@@ -879,6 +1067,7 @@ public class ObjectBoxDB {
 
         for (int i = 0; i < imgs.size(); i++) imgs.get(i).setStatus(updateTo);
         store.boxFor(ImageFile.class).put(imgs);
+        if (Stream.of(imgs).anyMatch(ImageFile::isCover)) updateGroupCoversOf(new long[]{contentId});
     }
 
     void updateImageFileUrl(@NonNull final ImageFile image) {
@@ -956,7 +1145,10 @@ public class ObjectBoxDB {
     }
 
     void insertImageFile(@NonNull ImageFile img) {
-        if (img.getId() > 0) store.boxFor(ImageFile.class).put(img);
+        if (img.getId() > 0) {
+            store.boxFor(ImageFile.class).put(img);
+            if (img.isCover()) updateGroupCoversOf(new long[]{img.getContent().getTargetId()});
+        }
     }
 
     void deleteImageFiles(long contentId) {
@@ -969,6 +1161,9 @@ public class ObjectBoxDB {
 
     void insertImageFiles(@NonNull List<ImageFile> imgs) {
         store.boxFor(ImageFile.class).put(imgs);
+        List<Long> coverContentIds = Stream.of(imgs).filter(ImageFile::isCover).map(img -> img.getContent().getTargetId()).distinct().toList();
+        if (!coverContentIds.isEmpty())
+            updateGroupCoversOf(Helper.getPrimitiveLongArrayFromList(coverContentIds));
     }
 
     @Nullable
@@ -1024,11 +1219,86 @@ public class ObjectBoxDB {
     }
 
     long insertGroup(Group group) {
+        // The given Group might have been loaded before its items changed
+        // => Denormalized data has to be refreshed before being persisted
+        if (group.id > 0) {
+            group.itemCount = (int) store.boxFor(GroupItem.class).query().equal(GroupItem_.groupId, group.id).build().count();
+            group.setCover(group.picture.getTarget());
+        }
         return store.boxFor(Group.class).put(group);
     }
 
     long insertGroupItem(GroupItem item) {
-        return store.boxFor(GroupItem.class).put(item);
+        long result = store.boxFor(GroupItem.class).put(item);
+        updateGroupsCountAndCover(new long[]{item.getGroupId()});
+        return result;
+    }
+
+    /**
+     * Refresh the denormalized items count and cover of the given groups
+     * If the current cover of a group doesn't belong to one of its books anymore, the cover of its first book is used instead
+     *
+     * @param groupIds IDs of the groups to refresh
+     */
+    void updateGroupsCountAndCover(long[] groupIds) {
+        updateGroupsCountAndCover(groupIds, 0);
+    }
+
+    /**
+     * Refresh the cover of the groups containing the given contents
+     * To be called whenever the cover of these contents has been replaced or updated, so that the cover location stored
+     * by their groups doesn't get stale
+     *
+     * @param contentIds IDs of the contents whose cover has changed
+     */
+    void updateGroupCoversOf(long[] contentIds) {
+        Query<GroupItem> itemsQuery = store.boxFor(GroupItem.class).query().equal(GroupItem_.contentId, 0).build();
+        for (long contentId : contentIds) {
+            if (contentId < 1) continue;
+            long[] groupIds = itemsQuery.setParameter(GroupItem_.contentId, contentId).property(GroupItem_.groupId).distinct().findLongs();
+            if (groupIds.length > 0) updateGroupsCountAndCover(groupIds, contentId);
+        }
+    }
+
+    /**
+     * Refresh the denormalized items count and cover of the given groups
+     * If the current cover of a group doesn't belong to one of its books anymore, the cover of the given
+     * preferred book is used instead (as it has most probably replaced it), or the cover of its first book if none is given
+     *
+     * @param groupIds           IDs of the groups to refresh
+     * @param preferredContentId ID of the book whose cover to use when the current cover isn't valid anymore; 0 if none
+     */
+    private void updateGroupsCountAndCover(long[] groupIds, long preferredContentId) {
+        Box<Group> groupBox = store.boxFor(Group.class);
+        Box<GroupItem> groupItemBox = store.boxFor(GroupItem.class);
+        Box<ImageFile> imageFileBox = store.boxFor(ImageFile.class);
+        Query<GroupItem> itemsQuery = groupItemBox.query().equal(GroupItem_.groupId, 0).order(GroupItem_.order).build();
+        Query<GroupItem> itemByContentQuery = groupItemBox.query().equal(GroupItem_.groupId, 0).equal(GroupItem_.contentId, 0).build();
+
+        store.runInTx(() -> {
+            for (long groupId : groupIds) {
+                Group g = groupBox.get(groupId);
+                if (null == g) continue;
+
+                itemsQuery.setParameter(GroupItem_.groupId, groupId);
+                g.itemCount = (int) itemsQuery.count();
+
+                ImageFile cover = g.picture.getTarget();
+                boolean isCoverValid = cover != null && cover.isCover()
+                        && itemByContentQuery.setParameter(GroupItem_.groupId, groupId).setParameter(GroupItem_.contentId, cover.getContent().getTargetId()).count() > 0;
+                if (!isCoverValid) {
+                    cover = null;
+                    long coverId = (preferredContentId > 0) ? selectCoverIdFromContent(preferredContentId) : 0;
+                    if (0 == coverId) {
+                        GroupItem firstItem = itemsQuery.findFirst();
+                        if (firstItem != null) coverId = selectCoverIdFromContent(firstItem.getContentId());
+                    }
+                    if (coverId > 0) cover = imageFileBox.get(coverId);
+                }
+                g.setCover(cover);
+                groupBox.put(g);
+            }
+        });
     }
 
     List<GroupItem> selectGroupItems(long[] groupItemIds) {
@@ -1047,6 +1317,143 @@ public class ObjectBoxDB {
         return qb.build().find();
     }
 
+    /**
+     * Select the IDs and download dates of all the books of the library in a single pass
+     *
+     * @return Pair of arrays of the same size : IDs (left) and download dates (right)
+     */
+    ImmutablePair<long[], long[]> selectLibraryContentIdsAndDownloadDates() {
+        Query<Content> query = store.boxFor(Content.class).query().in(Content_.status, libraryStatus).build();
+        return findAlignedProperties(query,
+                q -> q.property(Content_.id).findLongs(),
+                q -> q.property(Content_.downloadDate).nullValue(0L).findLongs()
+        );
+    }
+
+    /**
+     * Select the sources and URLs of all the books in a single pass
+     *
+     * @return Pair of arrays of the same size : site codes (left) and URLs (right)
+     */
+    ImmutablePair<long[], String[]> selectAllContentSitesAndUrls() {
+        Query<Content> query = store.boxFor(Content.class).query().build();
+        return findAlignedProperties(query,
+                q -> q.property(Content_.site).nullValue(0L).findLongs(),
+                q -> q.property(Content_.url).nullValue("").findStrings()
+        );
+    }
+
+    /**
+     * Run two property queries on the given query, e.g. to read two properties of many objects without loading them
+     * NB : Property queries run on the same query return values in the same order, hence the i-th values of both
+     * results belong to the same object. This doesn't hold when using distinct or unique on any of them.
+     *
+     * @param query Query to run the property queries on
+     * @param left  Property query giving the left result
+     * @param right Property query giving the right result
+     * @param <T>   Type of the queried objects
+     * @param <L>   Type of the left result (array of property values)
+     * @param <R>   Type of the right result (array of property values)
+     * @return Pair of arrays of the same size containing the values of both properties, in the same order
+     */
+    private static <T, L, R> ImmutablePair<L, R> findAlignedProperties(
+            @NonNull final Query<T> query,
+            @NonNull final Function<Query<T>, L> left,
+            @NonNull final Function<Query<T>, R> right) {
+        return new ImmutablePair<>(left.apply(query), right.apply(query));
+    }
+
+    long selectCoverIdFromContent(long contentId) {
+        long[] ids = store.boxFor(ImageFile.class).query().equal(ImageFile_.contentId, contentId).equal(ImageFile_.isCover, true).build().findIds();
+        return (ids.length > 0) ? ids[0] : 0;
+    }
+
+    List<ImageFile> selectCoversFromContents(long[] contentIds) {
+        return store.boxFor(ImageFile.class).query().in(ImageFile_.contentId, contentIds).equal(ImageFile_.isCover, true).build().find();
+    }
+
+    /**
+     * Get the content ID of each page (i.e. picture that isn't a cover) of the given contents
+     * NB : Each content ID is returned once per matching page, which allows counting pages of many contents in a single query
+     *
+     * @param contentIds     IDs of the contents whose pages to select
+     * @param downloadedOnly True to only select downloaded pages
+     * @param readOnly       True to only select read pages
+     * @return Content ID of each matching page
+     */
+    long[] selectPagesContentIds(long[] contentIds, boolean downloadedOnly, boolean readOnly) {
+        QueryBuilder<ImageFile> qb = store.boxFor(ImageFile.class).query().in(ImageFile_.contentId, contentIds).equal(ImageFile_.isCover, false);
+        if (downloadedOnly)
+            qb.in(ImageFile_.status, new int[]{StatusContent.DOWNLOADED.getCode(), StatusContent.EXTERNAL.getCode()});
+        if (readOnly) qb.equal(ImageFile_.read, true);
+        return qb.build().property(ImageFile_.contentId).findLongs();
+    }
+
+    /**
+     * Remove records that refer to contents, groups or attributes that don't exist anymore
+     * (pictures, error records, queue records, group items, attribute locations)
+     * NB : Pictures used by groups are kept, whether they belong to a book or not
+     * NB : Done in a single transaction to avoid removing records of objects created in the meantime
+     *
+     * @return Number of removed records
+     */
+    long deleteOrphanRecords() {
+        return store.callInTxNoException(() -> {
+            Set<Long> contentIds = toSet(store.boxFor(Content.class).query().build().findIds());
+            Set<Long> groupIds = toSet(store.boxFor(Group.class).query().build().findIds());
+            Set<Long> attributeIds = toSet(store.boxFor(Attribute.class).query().build().findIds());
+
+            // Group pictures don't necessarily belong to a book (e.g. default cover of a book without pictures)
+            Set<Long> groupPictureIds = toSet(store.boxFor(Group.class).query().build().property(Group_.pictureId).findLongs());
+            List<Long> orphanImageIds = new ArrayList<>();
+            for (long id : selectOrphanIds(ImageFile.class, ImageFile_.id, ImageFile_.contentId, contentIds))
+                if (!groupPictureIds.contains(id)) orphanImageIds.add(id);
+            if (!orphanImageIds.isEmpty()) store.boxFor(ImageFile.class).removeByIds(orphanImageIds);
+
+            long result = orphanImageIds.size();
+            result += deleteOrphans(ErrorRecord.class, ErrorRecord_.id, ErrorRecord_.contentId, contentIds).length;
+            result += deleteOrphans(QueueRecord.class, QueueRecord_.id, QueueRecord_.contentId, contentIds).length;
+            result += deleteOrphans(AttributeLocation.class, AttributeLocation_.id, AttributeLocation_.attributeId, attributeIds).length;
+            result += deleteOrphans(GroupItem.class, GroupItem_.id, GroupItem_.groupId, groupIds).length;
+
+            // Groups that lose items have to be refreshed
+            long[] orphanItemIds = selectOrphanIds(GroupItem.class, GroupItem_.id, GroupItem_.contentId, contentIds);
+            if (orphanItemIds.length > 0) {
+                Query<GroupItem> orphanItems = store.boxFor(GroupItem.class).query().in(GroupItem_.id, orphanItemIds).build();
+                long[] groupsToUpdate = orphanItems.property(GroupItem_.groupId).distinct().findLongs();
+                result += orphanItems.remove();
+                updateGroupsCountAndCover(groupsToUpdate);
+            }
+
+            return result;
+        });
+    }
+
+    private <T> long[] deleteOrphans(@NonNull final Class<T> entityClass, @NonNull final Property<T> idProperty, @NonNull final Property<T> parentIdProperty, @NonNull final Set<Long> parentIds) {
+        long[] result = selectOrphanIds(entityClass, idProperty, parentIdProperty, parentIds);
+        if (result.length > 0) store.boxFor(entityClass).remove(result);
+        return result;
+    }
+
+    private <T> long[] selectOrphanIds(@NonNull final Class<T> entityClass, @NonNull final Property<T> idProperty, @NonNull final Property<T> parentIdProperty, @NonNull final Set<Long> parentIds) {
+        ImmutablePair<long[], long[]> idsAndParents = findAlignedProperties(store.boxFor(entityClass).query().build(),
+                q -> q.property(idProperty).findLongs(),
+                q -> q.property(parentIdProperty).nullValue(0L).findLongs()
+        );
+        long[] ids = idsAndParents.left;
+        long[] parents = idsAndParents.right;
+        List<Long> result = new ArrayList<>();
+        for (int i = 0; i < ids.length; i++)
+            if (!parentIds.contains(parents[i])) result.add(ids[i]);
+        return Helper.getPrimitiveLongArrayFromList(result);
+    }
+
+    private static Set<Long> toSet(long[] values) {
+        Set<Long> result = new HashSet<>();
+        for (long value : values) result.add(value);
+        return result;
+    }
+
     private void applyDownloadDateFilter(@NonNull final QueryBuilder<Content> qb, int minDays, int maxDays) {
         long today = Instant.now().toEpochMilli();
         long minDownloadDate = today - (maxDays * DAY_IN_MILLIS);
@@ -1055,11 +1462,14 @@ public class ObjectBoxDB {
     }
 
     void deleteGroupItem(long groupItemId) {
-        store.boxFor(GroupItem.class).remove(groupItemId);
+        deleteGroupItems(new long[]{groupItemId});
     }
 
     void deleteGroupItems(long[] groupItemIds) {
-        store.boxFor(GroupItem.class).remove(groupItemIds);
+        Box<GroupItem> groupItemBox = store.boxFor(GroupItem.class);
+        List<Long> groupIds = Stream.of(groupItemBox.get(groupItemIds)).withoutNulls().map(GroupItem::getGroupId).distinct().toList();
+        groupItemBox.remove(groupItemIds);
+        updateGroupsCountAndCover(Helper.getPrimitiveLongArrayFromList(groupIds));
     }
 
     long countGroupsFor(@NonNull final Grouping grouping) {
@@ -1142,6 +1552,10 @@ public class ObjectBoxDB {
      * ONE-SHOT USE QUERIES (MIGRATION & MAINTENANCE)
      */
 
+    Query<Group> selectGroupsWithNoCoverUriQ() {
+        return store.boxFor(Group.class).query().isNull(Group_.coverUri).build();
+    }
+
     List<Content> selectContentWithOldPururinHost() {
         return store.boxFor(Content.class).query().contains(Content_.coverImageUrl, "://api.pururin.io/images/").build().find();
     }
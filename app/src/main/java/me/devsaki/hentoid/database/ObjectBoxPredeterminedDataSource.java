@@ -5,11 +5,14 @@ import androidx.paging.DataSource;
 import androidx.paging.PositionalDataSource;
 
 import com.annimon.stream.function.Function;
+import com.annimon.stream.function.Supplier;
 
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 
+import javax.annotation.Nullable;
+
 import io.objectbox.reactive.DataObserver;
 import me.devsaki.hentoid.util.Helper;
 
@@ -52,16 +55,21 @@ class ObjectBoxPredeterminedDataSource<T> extends PositionalDataSource<T> {
 
     public static class PredeterminedDataSourceFactory<I> extends Factory<Integer, I> {
         private final Function<List<Long>, List<I>> fetcher;
-        private final long[] ids;
+        private final Supplier<long[]> idsSupplier;
+        private final SearchResultCache cache;
 
-        PredeterminedDataSourceFactory(Function<List<Long>, List<I>> fetcher, long[] ids) {
+        // IDs are supplied each time a data source is created, i.e. each time the previous one has been invalidated
+        PredeterminedDataSourceFactory(Function<List<Long>, List<I>> fetcher, Supplier<long[]> idsSupplier, @Nullable SearchResultCache cache) {
             this.fetcher = fetcher;
-            this.ids = ids;
+            this.idsSupplier = idsSupplier;
+            this.cache = cache;
         }
 
         @NonNull
         public DataSource<Integer, I> create() {
-            return new ObjectBoxPredeterminedDataSource<>(fetcher, ids);
+            DataSource<Integer, I> result = new ObjectBoxPredeterminedDataSource<>(fetcher, idsSupplier.get());
+            if (cache != null) cache.registerForInvalidation(result);
+            return result;
         }
     }
 
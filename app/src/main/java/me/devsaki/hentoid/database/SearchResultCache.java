@@ -0,0 +1,94 @@
+package me.devsaki.hentoid.database;
+
+import androidx.annotation.NonNull;
+import androidx.paging.DataSource;
+
+import com.annimon.stream.Stream;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+
+import javax.annotation.Nullable;
+
+import me.devsaki.hentoid.database.domains.Attribute;
+
+/**
+ * Bounded LRU cache of library search results (IDs of the matching books, in display order)
+ * <p>
+ * The cache has to be cleared whenever the data used by searches changes; data sources built on
+ * cached results can be registered to be invalidated right after that.
+ */
+class SearchResultCache {
+
+    private final Map<String, long[]> results;
+    // Data sources built on cached results; weak references to let them go when their PagedList isn't used anymore
+    private final Set<DataSource<?, ?>> dataSources = Collections.newSetFromMap(new WeakHashMap<>());
+    // Incremented each time the cache is cleared, to avoid caching results computed before the last change
+    private long generation = 0;
+
+
+    SearchResultCache(int maxEntries) {
+        results = new LinkedHashMap<String, long[]>(maxEntries, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, long[]> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    static String buildKey(
+            int mode,
+            @Nullable String filter,
+            long groupId,
+            @Nullable List<Attribute> metadata,
+            int orderField,
+            boolean orderDesc,
+            boolean favouritesOnly) {
+        List<String> attributes = (null == metadata) ? Collections.emptyList() :
+                Stream.of(metadata).map(a -> a.getType().getCode() + ":" + a.getId() + ":" + a.getName()).sorted().toList();
+        return mode + "|" + ((null == filter) ? "" : filter) + "|" + groupId + "|" + attributes + "|" + orderField + "|" + orderDesc + "|" + favouritesOnly;
+    }
+
+    synchronized long getGeneration() {
+        return generation;
+    }
+
+    @Nullable
+    synchronized long[] get(@NonNull final String key) {
+        return results.get(key);
+    }
+
+    /**
+     * Cache the given results, unless the cache has been cleared since they have been computed
+     *
+     * @param key        Key of the search
+     * @param ids        IDs of the books found by the search
+     * @param generation Generation of the cache when the search started
+     */
+    synchronized void put(@NonNull final String key, @NonNull final long[] ids, long generation) {
+        if (generation == this.generation) results.put(key, ids);
+    }
+
+    synchronized void registerForInvalidation(@NonNull final DataSource<?, ?> dataSource) {
+        dataSources.add(dataSource);
+    }
+
+    /**
+     * Clear all cached results, then invalidate all registered data sources
+     */
+    void clear() {
+        List<DataSource<?, ?>> toInvalidate;
+        synchronized (this) {
+            generation++;
+            results.clear();
+            toInvalidate = new ArrayList<>(dataSources);
+            dataSources.clear();
+        }
+        for (DataSource<?, ?> ds : toInvalidate) ds.invalidate();
+    }
+}
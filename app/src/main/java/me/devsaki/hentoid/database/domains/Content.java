@@ -19,6 +19,7 @@ import io.objectbox.annotation.Backlink;
 import io.objectbox.annotation.Convert;
 import io.objectbox.annotation.Entity;
 import io.objectbox.annotation.Id;
+import io.objectbox.annotation.Index;
 import io.objectbox.annotation.Transient;
 import io.objectbox.converter.PropertyConverter;
 import io.objectbox.relation.ToMany;
@@ -42,6 +43,7 @@ import me.devsaki.hentoid.activities.sources.NhentaiActivity;
 import me.devsaki.hentoid.activities.sources.PorncomixActivity;
 import me.devsaki.hentoid.activities.sources.PururinActivity;
 import me.devsaki.hentoid.activities.sources.TsuminoActivity;
+import me.devsaki.hentoid.database.ContentSummary;
 import me.devsaki.hentoid.enums.AttributeType;
 import me.devsaki.hentoid.enums.Grouping;
 import me.devsaki.hentoid.enums.Site;
@@ -85,6 +87,7 @@ public class Content implements Serializable {
      */
     @Deprecated
     private String storageFolder; // Used as pivot for API29 migration; no use after that (replaced by storageUri)
+    @Index
     private String storageUri; // Not exposed because it will vary according to book location -> valued at import
     private boolean favourite;
     private long reads = 0;
@@ -106,6 +109,9 @@ public class Content implements Serializable {
     private String jsonUri;
     // Useful only during cleanup operations; no need to get it into the JSON
     private boolean isFlaggedForDeletion = false;
+    // Needs to be in the DB to skip unchanged book folders during import
+    // No need to save that into the JSON file itself, obviously
+    private String folderFingerprint;
 
     // Runtime attributes; no need to expose them for JSON persistence nor to persist them to DB
     @Transient
@@ -120,6 +126,8 @@ public class Content implements Serializable {
     private int numberDownloadRetries = 0;  // Current number of download retries current content has gone through
     @Transient
     private int readPagesCount = -1;  // Read pages count fed by payload; only useful to update list display
+    @Transient
+    private ContentSummary summary;   // Data displayed by the book lists, computed in bulk when loading them
 
     public Content() {
     }
@@ -727,6 +735,15 @@ public class Content implements Serializable {
         return isFlaggedForDeletion;
     }
 
+    @Nullable
+    public String getFolderFingerprint() {
+        return folderFingerprint;
+    }
+
+    public void setFolderFingerprint(@Nullable String folderFingerprint) {
+        this.folderFingerprint = folderFingerprint;
+    }
+
     public void setFlaggedForDeletion(boolean flaggedForDeletion) {
         isFlaggedForDeletion = flaggedForDeletion;
     }
@@ -765,6 +782,15 @@ public class Content implements Serializable {
         readPagesCount = count;
     }
 
+    @Nullable
+    public ContentSummary getSummary() {
+        return summary;
+    }
+
+    public void setSummary(@Nullable ContentSummary summary) {
+        this.summary = summary;
+    }
+
 
     public static class StringMapConverter implements PropertyConverter<Map<String, String>, String> {
         @Override
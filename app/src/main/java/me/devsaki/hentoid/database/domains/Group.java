@@ -1,6 +1,7 @@
 package me.devsaki.hentoid.database.domains;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 
 import com.annimon.stream.Stream;
 
@@ -32,6 +33,9 @@ public class Group {
     public boolean hasCustomBookOrder = false;
     public int propertyMin;
     public int propertyMax;
+    // Denormalized data maintained by the DB layer, to sort and display groups without resolving their relations
+    public int itemCount = 0;
+    public String coverUri = "";
 
     // Needs to be in the DB to keep the information when deletion takes a long time
     // and user navigates away; no need to save that into JSON
@@ -70,6 +74,15 @@ public class Group {
         return this;
     }
 
+    public int getItemCount() {
+        return itemCount;
+    }
+
+    public void setCover(@Nullable final ImageFile cover) {
+        picture.setTarget(cover);
+        coverUri = (null == cover) ? "" : cover.getDisplayUri();
+    }
+
     public int getSubtype() {
         return subtype;
     }
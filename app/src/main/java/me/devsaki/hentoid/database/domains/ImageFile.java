@@ -146,6 +146,19 @@ public class ImageFile {
         return this;
     }
 
+    /**
+     * Get the location to use to display the picture : its local file when it has been downloaded, its online URL otherwise
+     *
+     * @return Location to use to display the picture; empty string if none
+     */
+    public String getDisplayUri() {
+        String result = "";
+        if (status != null && (status.equals(StatusContent.DOWNLOADED) || status.equals(StatusContent.MIGRATED) || status.equals(StatusContent.EXTERNAL)))
+            result = getFileUri();
+        if (result.isEmpty()) result = getUrl();
+        return (null == result) ? "" : result;
+    }
+
     public int getDisplayOrder() {
         return displayOrder;
     }
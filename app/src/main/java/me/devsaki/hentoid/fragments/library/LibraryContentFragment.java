@@ -211,7 +211,9 @@ public class LibraryContentFragment extends Fragment implements ErrorsDialogFrag
                 diffBundleBuilder.setReadPagesCount(newItem.getReadPagesCount());
             }
             if (!oldItem.getCoverImageUrl().equals(newItem.getCoverImageUrl())) {
-                diffBundleBuilder.setCoverUri(newItem.getCover().getFileUri());
+                if (newItem.getSummary() != null)
+                    diffBundleBuilder.setCoverUri(newItem.getSummary().getCoverUri());
+                else diffBundleBuilder.setCoverUri(newItem.getCover().getFileUri());
             }
 
             if (diffBundleBuilder.isEmpty()) return null;
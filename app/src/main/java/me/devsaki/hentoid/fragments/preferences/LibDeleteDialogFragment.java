@@ -14,7 +14,7 @@ import androidx.fragment.app.FragmentManager;
 
 import java.util.List;
 
-import io.reactivex.Observable;
+import io.reactivex.Single;
 import io.reactivex.android.schedulers.AndroidSchedulers;
 import io.reactivex.disposables.Disposable;
 import io.reactivex.disposables.Disposables;
@@ -25,7 +25,6 @@ import me.devsaki.hentoid.database.ObjectBoxDAO;
 import me.devsaki.hentoid.database.domains.Content;
 import me.devsaki.hentoid.util.ContentHelper;
 import me.devsaki.hentoid.util.Helper;
-import me.devsaki.hentoid.util.exception.ContentNotRemovedException;
 import timber.log.Timber;
 
 /**
@@ -87,10 +86,9 @@ public class LibDeleteDialogFragment extends DialogFragment {
         progressBar.setMax(booksList.length);
 
         dao = new ObjectBoxDAO(getActivity());
-        searchDisposable = Observable.fromIterable(Helper.getListFromPrimitiveArray(booksList))
-                .observeOn(Schedulers.io())
-                .map(id -> dao.selectContent(id))
-                .map(this::deleteItem)
+        searchDisposable = Single.fromCallable(() -> dao.selectContent(booksList))
+                .subscribeOn(Schedulers.io())
+                .flatMapObservable(contents -> ContentHelper.removeContents(requireActivity().getApplicationContext(), dao, contents))
                 .observeOn(AndroidSchedulers.mainThread())
                 .subscribe(
                         this::next,
@@ -99,12 +97,7 @@ public class LibDeleteDialogFragment extends DialogFragment {
                 );
     }
 
-    private boolean deleteItem(@NonNull Content c) throws ContentNotRemovedException {
-        ContentHelper.removeContent(requireActivity(), dao, c);
-        return true;
-    }
-
-    private void next(boolean b) {
+    private void next(Content c) {
         int currentProgress = progressBar.getProgress() + 1;
         progressTxt.setText(getString(R.string.book_progress, currentProgress, progressBar.getMax()));
         progressBar.setProgress(currentProgress);
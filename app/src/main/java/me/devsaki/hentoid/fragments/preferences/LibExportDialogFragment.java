@@ -1,6 +1,8 @@
 package me.devsaki.hentoid.fragments.preferences;
 
+import android.content.Context;
 import android.graphics.PorterDuff;
+import android.net.Uri;
 import android.os.Build;
 import android.os.Bundle;
 import android.os.Handler;
@@ -19,15 +21,13 @@ import androidx.fragment.app.FragmentManager;
 import com.google.android.material.snackbar.Snackbar;
 import com.google.android.material.switchmaterial.SwitchMaterial;
 
-import org.apache.commons.io.IOUtils;
-
 import java.io.IOException;
-import java.io.InputStream;
 import java.io.OutputStream;
-import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
 import java.util.Random;
 
-import io.reactivex.Single;
+import io.reactivex.Observable;
+import io.reactivex.ObservableEmitter;
 import io.reactivex.android.schedulers.AndroidSchedulers;
 import io.reactivex.disposables.Disposable;
 import io.reactivex.disposables.Disposables;
@@ -35,8 +35,9 @@ import io.reactivex.schedulers.Schedulers;
 import me.devsaki.hentoid.R;
 import me.devsaki.hentoid.database.CollectionDAO;
 import me.devsaki.hentoid.database.ObjectBoxDAO;
+import me.devsaki.hentoid.database.domains.Content;
 import me.devsaki.hentoid.enums.Grouping;
-import me.devsaki.hentoid.json.JsonContentCollection;
+import me.devsaki.hentoid.json.JsonContentCollectionWriter;
 import me.devsaki.hentoid.util.FileHelper;
 import me.devsaki.hentoid.util.JsonHelper;
 import me.devsaki.hentoid.util.ThemeHelper;
@@ -51,6 +52,9 @@ import static com.google.android.material.snackbar.BaseTransientBottomBar.LENGTH
  */
 public class LibExportDialogFragment extends DialogFragment {
 
+    // Number of books loaded from the DB at once during the export
+    private static final int EXPORT_BATCH_SIZE = 50;
+
     // UI
     private ViewGroup rootView;
     private CheckBox libraryChk;
@@ -78,6 +82,13 @@ public class LibExportDialogFragment extends DialogFragment {
         return inflater.inflate(R.layout.dialog_prefs_export, container, false);
     }
 
+    @Override
+    public void onDestroyView() {
+        // Cancels the export if it is still running
+        exportDisposable.dispose();
+        super.onDestroyView();
+    }
+
     @Override
     public void onViewCreated(@NonNull View rootView, @Nullable Bundle savedInstanceState) {
         super.onViewCreated(rootView, savedInstanceState);
@@ -150,65 +161,109 @@ public class LibExportDialogFragment extends DialogFragment {
             progressBar.getIndeterminateDrawable().setColorFilter(ThemeHelper.getColor(requireContext(), R.color.secondary_light), PorterDuff.Mode.SRC_IN);
         progressBar.setVisibility(View.VISIBLE);
 
-        exportDisposable = Single.fromCallable(() -> getExportedCollection(exportLibrary, exportFavsOnly, exportCustomGroups, exportQueue, exportBookmarks))
+        // Use a random number to avoid erasing older exports by mistake
+        String targetFileName = new Random().nextInt(9999) + ".json";
+        if (exportBookmarks) targetFileName = "bkmks-" + targetFileName;
+        if (exportQueue) targetFileName = "queue-" + targetFileName;
+        if (exportLibrary && !exportFavsOnly) targetFileName = "library-" + targetFileName;
+        else if (exportLibrary) targetFileName = "favs-" + targetFileName;
+        targetFileName = "export-" + targetFileName;
+
+        final Context context = requireContext();
+        final String fileName = targetFileName;
+        exportDisposable = Observable.<Float>create(emitter -> exportCollection(context, fileName, exportLibrary, exportFavsOnly, exportCustomGroups, exportQueue, exportBookmarks, emitter))
                 .subscribeOn(Schedulers.io())
-                .observeOn(Schedulers.io())
-                .map(c -> JsonHelper.serializeToJson(c, JsonContentCollection.class))
                 .observeOn(AndroidSchedulers.mainThread())
                 .subscribe(
-                        s -> onJsonSerialized(s, exportLibrary, exportFavsOnly, exportQueue, exportBookmarks),
-                        Timber::w
+                        progress -> {
+                            progressBar.setIndeterminate(false);
+                            progressBar.setMax(100);
+                            progressBar.setProgress(Math.round(progress * 100));
+                        },
+                        this::onExportFailed,
+                        this::onExportSuccess
                 );
     }
 
-    private JsonContentCollection getExportedCollection(
+    /**
+     * Write the selected items to a new file in the downloads folder
+     * Books are read from the DB and written by batches, so that the whole collection never has to be held in memory
+     * The file is removed if the export fails or is cancelled
+     */
+    private void exportCollection(
+            @NonNull final Context context,
+            @NonNull final String targetFileName,
             boolean exportLibrary,
             boolean exportFavsOnly,
-            boolean exportCustomgroups,
+            boolean exportCustomGroups,
             boolean exportQueue,
-            boolean exportBookmarks) {
-        JsonContentCollection jsonContentCollection = new JsonContentCollection();
-
-        if (exportLibrary)
-            jsonContentCollection.setLibrary(dao.selectAllInternalBooks(exportFavsOnly));
-        if (exportQueue) jsonContentCollection.setQueue(dao.selectAllQueueBooks());
-        if (exportCustomgroups)
-            jsonContentCollection.setCustomGroups(dao.selectGroups(Grouping.CUSTOM.getId()));
-        if (exportBookmarks) jsonContentCollection.setBookmarks(dao.selectAllBookmarks());
+            boolean exportBookmarks,
+            @NonNull final ObservableEmitter<Float> emitter) throws IOException {
+        long[] libraryIds = exportLibrary ? dao.selectAllInternalBookIds(exportFavsOnly) : new long[0];
+        long[] queueIds = exportQueue ? dao.selectAllQueueBookIds() : new long[0];
+        int nbBooks = libraryIds.length + queueIds.length;
+
+        Uri targetUri = FileHelper.createNewDownloadFile(context, targetFileName, JsonHelper.JSON_MIME_TYPE);
+        boolean isComplete = false;
+        try (OutputStream newDownload = FileHelper.openDownloadOutputStream(context, targetUri);
+             JsonContentCollectionWriter writer = new JsonContentCollectionWriter(newDownload)) {
+            if (exportLibrary) {
+                writer.beginLibrary();
+                if (!exportBooks(writer, libraryIds, 0, nbBooks, emitter)) return;
+                writer.endList();
+            }
+            if (exportQueue) {
+                writer.beginQueue();
+                if (!exportBooks(writer, queueIds, libraryIds.length, nbBooks, emitter)) return;
+                writer.endList();
+            }
+            if (exportCustomGroups)
+                writer.writeCustomGroups(dao.selectGroups(Grouping.CUSTOM.getId()));
+            if (exportBookmarks) writer.writeBookmarks(dao.selectAllBookmarks());
+            writer.finish();
+            isComplete = true;
+        } finally {
+            if (!isComplete) FileHelper.removeDownloadFile(context, targetUri);
+        }
+        emitter.onComplete();
+    }
 
-        return jsonContentCollection;
+    /**
+     * Write the books with the given IDs
+     *
+     * @return True if all books have been written; false if the export has been cancelled
+     */
+    private boolean exportBooks(
+            @NonNull final JsonContentCollectionWriter writer,
+            @NonNull final long[] contentIds,
+            int nbExportedBooks,
+            int nbBooks,
+            @NonNull final ObservableEmitter<Float> emitter) throws IOException {
+        for (int i = 0; i < contentIds.length; i += EXPORT_BATCH_SIZE) {
+            if (emitter.isDisposed()) return false;
+            long[] batchIds = Arrays.copyOfRange(contentIds, i, Math.min(i + EXPORT_BATCH_SIZE, contentIds.length));
+            for (Content c : dao.selectContent(batchIds)) writer.writeContent(c);
+            emitter.onNext((nbExportedBooks + i + batchIds.length) * 1f / nbBooks);
+        }
+        return true;
     }
 
-    private void onJsonSerialized(
-            @NonNull String json,
-            boolean exportLibrary,
-            boolean exportFavsOnly,
-            boolean exportQueue,
-            boolean exportBookmarks) {
+    private void onExportSuccess() {
         exportDisposable.dispose();
+        Snackbar.make(rootView, R.string.viewer_copy_success, LENGTH_LONG)
+                .setAction("OPEN FOLDER", v -> FileHelper.openFile(requireContext(), FileHelper.getDownloadsFolder()))
+                .show();
+        finish();
+    }
 
-        // Use a random number to avoid erasing older exports by mistake
-        String targetFileName = new Random().nextInt(9999) + ".json";
-        if (exportBookmarks) targetFileName = "bkmks-" + targetFileName;
-        if (exportQueue) targetFileName = "queue-" + targetFileName;
-        if (exportLibrary && !exportFavsOnly) targetFileName = "library-" + targetFileName;
-        else if (exportLibrary) targetFileName = "favs-" + targetFileName;
-        targetFileName = "export-" + targetFileName;
-
-        try {
-            try (OutputStream newDownload = FileHelper.openNewDownloadOutputStream(requireContext(), targetFileName, JsonHelper.JSON_MIME_TYPE)) {
-                try (InputStream input = IOUtils.toInputStream(json, StandardCharsets.UTF_8)) {
-                    FileHelper.copy(input, newDownload);
-                }
-            }
-
-            Snackbar.make(rootView, R.string.viewer_copy_success, LENGTH_LONG)
-                    .setAction("OPEN FOLDER", v -> FileHelper.openFile(requireContext(), FileHelper.getDownloadsFolder()))
-                    .show();
-        } catch (IOException | IllegalArgumentException e) {
-            Snackbar.make(rootView, R.string.viewer_copy_fail, LENGTH_LONG).show();
-        }
+    private void onExportFailed(Throwable t) {
+        Timber.w(t);
+        exportDisposable.dispose();
+        Snackbar.make(rootView, R.string.viewer_copy_fail, LENGTH_LONG).show();
+        finish();
+    }
 
+    private void finish() {
         if (dao != null) dao.cleanup();
         // Dismiss after 3s, for the user to be able to see and use the snackbar
         new Handler(Looper.getMainLooper()).postDelayed(this::dismiss, 3000);
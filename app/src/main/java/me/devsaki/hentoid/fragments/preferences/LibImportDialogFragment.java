@@ -1,6 +1,7 @@
 package me.devsaki.hentoid.fragments.preferences;
 
 import android.app.Activity;
+import android.content.Context;
 import android.content.Intent;
 import android.net.Uri;
 import android.os.Bundle;
@@ -22,9 +23,9 @@ import androidx.fragment.app.DialogFragment;
 import androidx.fragment.app.FragmentManager;
 
 import com.annimon.stream.Optional;
-import com.annimon.stream.Stream;
 import com.google.android.material.snackbar.BaseTransientBottomBar;
 import com.google.android.material.snackbar.Snackbar;
+import com.squareup.moshi.JsonDataException;
 
 import org.threeten.bp.Instant;
 
@@ -33,11 +34,14 @@ import java.lang.annotation.Retention;
 import java.lang.annotation.RetentionPolicy;
 import java.util.ArrayList;
 import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
 import io.reactivex.Observable;
+import io.reactivex.ObservableEmitter;
 import io.reactivex.Single;
 import io.reactivex.android.schedulers.AndroidSchedulers;
 import io.reactivex.disposables.Disposable;
@@ -50,19 +54,18 @@ import me.devsaki.hentoid.database.ObjectBoxDAO;
 import me.devsaki.hentoid.database.domains.Content;
 import me.devsaki.hentoid.database.domains.ErrorRecord;
 import me.devsaki.hentoid.database.domains.Group;
-import me.devsaki.hentoid.database.domains.QueueRecord;
 import me.devsaki.hentoid.database.domains.SiteBookmark;
 import me.devsaki.hentoid.enums.ErrorType;
 import me.devsaki.hentoid.enums.Grouping;
 import me.devsaki.hentoid.enums.Site;
 import me.devsaki.hentoid.enums.StatusContent;
 import me.devsaki.hentoid.json.JsonContentCollection;
+import me.devsaki.hentoid.json.JsonContentCollectionReader;
 import me.devsaki.hentoid.util.Consts;
 import me.devsaki.hentoid.util.ContentHelper;
 import me.devsaki.hentoid.util.FileHelper;
 import me.devsaki.hentoid.util.GroupHelper;
 import me.devsaki.hentoid.util.Helper;
-import me.devsaki.hentoid.util.JsonHelper;
 import me.devsaki.hentoid.util.Preferences;
 import timber.log.Timber;
 
@@ -76,6 +79,8 @@ import static com.google.android.material.snackbar.BaseTransientBottomBar.LENGTH
 public class LibImportDialogFragment extends DialogFragment {
 
     private static final int RQST_PICK_IMPORT_FILE = 4;
+    // Number of books written to the DB in a single transaction
+    private static final int IMPORT_BATCH_SIZE = 50;
 
     @IntDef({Result.OK, Result.CANCELED, Result.INVALID_FOLDER, Result.OTHER})
     @Retention(RetentionPolicy.SOURCE)
@@ -104,11 +109,10 @@ public class LibImportDialogFragment extends DialogFragment {
     private CollectionDAO dao;
     private int totalItems;
     private int currentProgress;
-    private int nbSuccess;
-    private int queueSize;
+    private int nbProcessedBooks;
     private int nbBookmarksSuccess = 0;
     private Map<Site, DocumentFile> siteFoldersCache = null;
-    private final Map<Site, List<DocumentFile>> bookFoldersCache = new EnumMap<>(Site.class);
+    private final Map<Site, Map<String, DocumentFile>> bookFoldersCache = new EnumMap<>(Site.class);
 
     // Disposable for RxJava
     private Disposable importDisposable = Disposables.empty();
@@ -198,52 +202,49 @@ public class LibImportDialogFragment extends DialogFragment {
 
     private void checkFile(@NonNull DocumentFile jsonFile) {
         // TODO display an indefinite progress bar just in case ?
-        importDisposable = Single.fromCallable(() -> deserialiseJson(jsonFile))
+        final Context context = requireContext();
+        importDisposable = Single.fromCallable(() -> countItems(context, jsonFile))
                 .subscribeOn(Schedulers.io())
                 .observeOn(AndroidSchedulers.mainThread())
                 .subscribe(
-                        c -> onFileDeserialized(c, jsonFile),
+                        c -> onFileChecked(c, jsonFile),
                         Timber::w
                 );
     }
 
-    private void onFileDeserialized(Optional<JsonContentCollection> collectionOptional, DocumentFile jsonFile) {
+    private void onFileChecked(Optional<CollectionSummary> summaryOptional, DocumentFile jsonFile) {
         importDisposable.dispose();
 
         TextView errorTxt = requireViewById(rootView, R.id.import_file_invalid_text);
-        if (collectionOptional.isEmpty()) {
+        if (summaryOptional.isEmpty()) {
             errorTxt.setText(getResources().getString(R.string.import_file_invalid, jsonFile.getName()));
             errorTxt.setVisibility(View.VISIBLE);
         } else {
             selectFileBtn.setVisibility(View.GONE);
             errorTxt.setVisibility(View.GONE);
 
-            JsonContentCollection collection = collectionOptional.get();
+            CollectionSummary summary = summaryOptional.get();
             libraryChk = requireViewById(rootView, R.id.import_file_library_chk);
-            int librarySize = collection.getLibrary(null).size(); // Don't link the groups, just count the books
-            if (librarySize > 0) {
-                libraryChk.setText(getResources().getQuantityString(R.plurals.import_file_library, librarySize, librarySize));
+            if (summary.nbLibraryBooks > 0) {
+                libraryChk.setText(getResources().getQuantityString(R.plurals.import_file_library, summary.nbLibraryBooks, summary.nbLibraryBooks));
                 libraryChk.setOnCheckedChangeListener((buttonView, isChecked) -> refreshDisplay());
                 libraryChk.setVisibility(View.VISIBLE);
             }
             queueChk = requireViewById(rootView, R.id.import_file_queue_chk);
-            int mQueueSize = collection.getQueue().size();
-            if (mQueueSize > 0) {
-                queueChk.setText(getResources().getQuantityString(R.plurals.import_file_queue, mQueueSize, mQueueSize));
+            if (summary.nbQueueBooks > 0) {
+                queueChk.setText(getResources().getQuantityString(R.plurals.import_file_queue, summary.nbQueueBooks, summary.nbQueueBooks));
                 queueChk.setOnCheckedChangeListener((buttonView, isChecked) -> refreshDisplay());
                 queueChk.setVisibility(View.VISIBLE);
             }
             groupsChk = requireViewById(rootView, R.id.import_file_groups_chk);
-            int mGroupsSize = collection.getCustomGroups().size();
-            if (mGroupsSize > 0) {
-                groupsChk.setText(getResources().getQuantityString(R.plurals.import_file_groups, mGroupsSize, mGroupsSize));
+            if (summary.nbGroups > 0) {
+                groupsChk.setText(getResources().getQuantityString(R.plurals.import_file_groups, summary.nbGroups, summary.nbGroups));
                 groupsChk.setOnCheckedChangeListener((buttonView, isChecked) -> refreshDisplay());
                 groupsChk.setVisibility(View.VISIBLE);
             }
             bookmarksChk = requireViewById(rootView, R.id.import_file_bookmarks_chk);
-            int bookmarksSize = collection.getBookmarks().size();
-            if (bookmarksSize > 0) {
-                bookmarksChk.setText(getResources().getQuantityString(R.plurals.import_file_bookmarks, bookmarksSize, bookmarksSize));
+            if (summary.nbBookmarks > 0) {
+                bookmarksChk.setText(getResources().getQuantityString(R.plurals.import_file_bookmarks, summary.nbBookmarks, summary.nbBookmarks));
                 bookmarksChk.setOnCheckedChangeListener((buttonView, isChecked) -> refreshDisplay());
                 bookmarksChk.setVisibility(View.VISIBLE);
             }
@@ -254,7 +255,7 @@ public class LibImportDialogFragment extends DialogFragment {
             runBtn.setEnabled(false);
 
             RadioButton addChk = requireViewById(rootView, R.id.import_mode_add);
-            runBtn.setOnClickListener(v -> runImport(collection, addChk.isChecked(), libraryChk.isChecked(), queueChk.isChecked(), groupsChk.isChecked(), bookmarksChk.isChecked()));
+            runBtn.setOnClickListener(v -> runImport(jsonFile, summary, addChk.isChecked(), libraryChk.isChecked(), queueChk.isChecked(), groupsChk.isChecked(), bookmarksChk.isChecked()));
         }
     }
 
@@ -264,11 +265,26 @@ public class LibImportDialogFragment extends DialogFragment {
         runBtn.setEnabled(queueChk.isChecked() || libraryChk.isChecked() || bookmarksChk.isChecked());
     }
 
-    private Optional<JsonContentCollection> deserialiseJson(@NonNull DocumentFile jsonFile) {
-        JsonContentCollection result;
-        try {
-            result = JsonHelper.jsonToObject(requireContext(), jsonFile, JsonContentCollection.class);
-        } catch (IOException e) {
+    /**
+     * Count the items of the collection contained in the given file, without loading them all in memory
+     */
+    private static Optional<CollectionSummary> countItems(@NonNull final Context context, @NonNull DocumentFile jsonFile) {
+        CollectionSummary result = new CollectionSummary();
+        try (JsonContentCollectionReader reader = new JsonContentCollectionReader(context, jsonFile)) {
+            String list;
+            while ((list = reader.nextList()) != null) {
+                while (reader.hasNext()) {
+                    if (JsonContentCollection.GROUPINGS.equals(list)) {
+                        result.nbGroups += reader.nextCustomGroups().size();
+                        continue;
+                    }
+                    reader.skip();
+                    if (JsonContentCollection.LIBRARY.equals(list)) result.nbLibraryBooks++;
+                    else if (JsonContentCollection.QUEUE.equals(list)) result.nbQueueBooks++;
+                    else if (JsonContentCollection.BOOKMARKS.equals(list)) result.nbBookmarks++;
+                }
+            }
+        } catch (IOException | JsonDataException e) {
             Timber.w(e);
             return Optional.empty();
         }
@@ -276,7 +292,8 @@ public class LibImportDialogFragment extends DialogFragment {
     }
 
     private void runImport(
-            @NonNull final JsonContentCollection collection,
+            @NonNull final DocumentFile jsonFile,
+            @NonNull final CollectionSummary summary,
             boolean add,
             boolean importLibrary,
             boolean importQueue,
@@ -290,113 +307,149 @@ public class LibImportDialogFragment extends DialogFragment {
         runBtn.setVisibility(View.GONE);
         setCancelable(false);
 
+        totalItems = (importLibrary ? summary.nbLibraryBooks : 0) + (importQueue ? summary.nbQueueBooks : 0);
+        currentProgress = 0;
+        nbProcessedBooks = 0;
+        progressBar.setMax(totalItems);
+
         dao = new ObjectBoxDAO(requireContext());
+        final Context context = requireContext();
+        importDisposable = Observable.<Integer>create(emitter -> importCollection(context, jsonFile, add, importLibrary, importQueue, importCustomGroups, importBookmarks, emitter))
+                .subscribeOn(Schedulers.io())
+                .observeOn(AndroidSchedulers.mainThread())
+                .subscribe(
+                        this::updateProgress,
+                        e -> {
+                            Timber.w(e);
+                            finish();
+                        },
+                        this::finish
+                );
+    }
+
+    /**
+     * Import the selected items of the collection contained in the given file
+     * Items are read from the file and written to the DB by batches, so that the whole collection never has to be held in memory
+     */
+    private void importCollection(
+            @NonNull final Context context,
+            @NonNull final DocumentFile jsonFile,
+            boolean add,
+            boolean importLibrary,
+            boolean importQueue,
+            boolean importCustomGroups,
+            boolean importBookmarks,
+            @NonNull final ObservableEmitter<Integer> emitter) throws IOException {
         if (!add) {
             if (importLibrary) dao.deleteAllInternalBooks(false);
             if (importQueue) dao.deleteAllQueuedBooks();
             if (importCustomGroups) dao.deleteAllGroups(Grouping.CUSTOM);
             if (importBookmarks) dao.deleteAllBookmarks();
         }
-
-        if (importBookmarks) {
-            // Don't import bookmarks that have the same URL as existing ones
-            Set<String> existingBookmarkUrls = dao.selectAllBookmarkUrls();
-            List<SiteBookmark> bookmarksToImport = Stream.of(collection.getBookmarks()).filterNot(b -> existingBookmarkUrls.contains(b.getUrl())).toList();
-            dao.insertBookmarks(bookmarksToImport);
-            nbBookmarksSuccess = bookmarksToImport.size();
+        // Books already in the DB, loaded once to detect duplicates without querying the DB for each book
+        Map<Site, Set<String>> existingUrls = (importLibrary || importQueue) ? dao.selectAllContentUrlsBySite() : new EnumMap<>(Site.class);
+
+        List<Content> batch = new ArrayList<>();
+        try (JsonContentCollectionReader reader = new JsonContentCollectionReader(context, jsonFile)) {
+            String list;
+            while ((list = reader.nextList()) != null) {
+                boolean isLibrary = JsonContentCollection.LIBRARY.equals(list);
+                if ((isLibrary && importLibrary) || (JsonContentCollection.QUEUE.equals(list) && importQueue)) {
+                    while (reader.hasNext()) {
+                        if (emitter.isDisposed()) return;
+                        // Queued books aren't linked to any group
+                        Content c = reader.nextContent(isLibrary ? dao : null);
+                        if (c != null) prepareContent(context, c, existingUrls, batch);
+                        if (batch.size() >= IMPORT_BATCH_SIZE) commitContent(context, batch, emitter);
+                    }
+                    commitContent(context, batch, emitter);
+                } else if (JsonContentCollection.GROUPINGS.equals(list) && importCustomGroups) {
+                    while (reader.hasNext()) importGroups(reader.nextCustomGroups());
+                    GroupHelper.updateGroupsJson(context);
+                } else if (JsonContentCollection.BOOKMARKS.equals(list) && importBookmarks) {
+                    // Don't import bookmarks that have the same URL as existing ones
+                    Set<String> existingBookmarkUrls = dao.selectAllBookmarkUrls();
+                    List<SiteBookmark> bookmarksToImport = new ArrayList<>();
+                    while (reader.hasNext()) {
+                        SiteBookmark b = reader.nextBookmark();
+                        if (b != null && existingBookmarkUrls.add(b.getUrl())) bookmarksToImport.add(b);
+                    }
+                    dao.insertBookmarks(bookmarksToImport);
+                    nbBookmarksSuccess = bookmarksToImport.size();
+                }
+            }
+        } catch (JsonDataException e) {
+            throw new IOException(e);
         }
-
-        List<Content> contentToImport = new ArrayList<>();
-        if (importLibrary) contentToImport.addAll(collection.getLibrary(dao));
-        if (importQueue) contentToImport.addAll(collection.getQueue());
-        queueSize = (int) dao.countAllQueueBooks();
-
-        if (importCustomGroups)
-            // Chain group import followed by content import
-            runImportItems(
-                    collection.getCustomGroups(),
-                    dao,
-                    true,
-                    () -> runImportItems(contentToImport, dao, false, this::finish)
-            );
-        else // Run content import alone
-            runImportItems(contentToImport, dao, false, this::finish);
+        emitter.onComplete();
     }
 
-    private void runImportItems(@NonNull final List<?> items,
-                                @NonNull final CollectionDAO dao,
-                                boolean isGroup,
-                                @NonNull final Runnable onFinish) {
-        totalItems = items.size();
-        currentProgress = 0;
-        nbSuccess = 0;
-        progressBar.setMax(totalItems);
-
-        importDisposable = Observable.fromIterable(items)
-                .observeOn(Schedulers.io())
-                .map(c -> importItem(c, dao))
-                .doOnComplete(() -> {
-                    if (isGroup) GroupHelper.updateGroupsJson(requireContext(), dao);
-                })
-                .observeOn(AndroidSchedulers.mainThread())
-                .subscribe(
-                        b -> nextOK(isGroup),
-                        e -> nextKO(e, isGroup),
-                        onFinish::run
-                );
-    }
-
-    private boolean importItem(@NonNull final Object o, @NonNull final CollectionDAO dao) {
-        if (o instanceof Content) importContent((Content) o, dao);
-        else if (o instanceof Group) importGroup((Group) o, dao);
-        return true;
-    }
+    private void prepareContent(
+            @NonNull final Context context,
+            @NonNull final Content c,
+            @NonNull final Map<Site, Set<String>> existingUrls,
+            @NonNull final List<Content> batch) {
+        nbProcessedBooks++;
+
+        // Books without URL can't be told apart (see CollectionDAO.selectContentBySourceAndUrl)
+        String url = c.getUrl();
+        if (url != null && !url.isEmpty()) {
+            Set<String> siteUrls = existingUrls.get(c.getSite());
+            if (null == siteUrls) {
+                siteUrls = new HashSet<>();
+                existingUrls.put(c.getSite(), siteUrls);
+            }
+            // URLs are compared case-insensitively (see CollectionDAO.selectAllContentUrlsBySite)
+            if (!siteUrls.add(url.toLowerCase())) return; // Duplicate
+        }
 
-    private void importContent(@NonNull final Content c, @NonNull final CollectionDAO dao) {
         // Try to map the imported content to an existing book in the downloads folder
         // Folder names can be formatted in many ways _but_ they always contain the book unique ID !
-        if (null == siteFoldersCache) siteFoldersCache = getSiteFolders();
+        if (null == siteFoldersCache) siteFoldersCache = getSiteFolders(context);
         DocumentFile siteFolder = siteFoldersCache.get(c.getSite());
-        if (siteFolder != null) mapToContent(c, siteFolder);
-        Content duplicate = dao.selectContentBySourceAndUrl(c.getSite(), c.getUrl());
-        if (null == duplicate) {
-            long newContentId = ContentHelper.addContent(requireContext(), dao, c);
-            // Insert queued content into the queue
-            if (c.getStatus().equals(StatusContent.DOWNLOADING) || c.getStatus().equals(StatusContent.PAUSED)) {
-                List<QueueRecord> lst = new ArrayList<>();
-                lst.add(new QueueRecord(newContentId, queueSize++));
-                dao.updateQueue(lst);
-            }
-        }
+        if (siteFolder != null) mapToContent(context, c, siteFolder);
+        batch.add(c);
     }
 
-    private void mapToContent(@NonNull final Content c, @NonNull final DocumentFile siteFolder) {
-        List<DocumentFile> bookfolders;
-        if (bookFoldersCache.containsKey(c.getSite()))
-            bookfolders = bookFoldersCache.get(c.getSite());
-        else {
-            bookfolders = FileHelper.listFolders(requireContext(), siteFolder);
-            bookFoldersCache.put(c.getSite(), bookfolders);
-        }
-        boolean filesFound = false;
-        if (bookfolders != null) {
-            // Look for the book ID
-            c.populateUniqueSiteId();
-            for (DocumentFile f : bookfolders)
-                if (f.getName() != null && f.getName().contains(ContentHelper.formatBookId(c))) {
-                    // Cache folder Uri
-                    c.setStorageUri(f.getUri().toString());
-                    // Cache JSON Uri
-                    DocumentFile json = FileHelper.findFile(requireContext(), f, Consts.JSON_FILE_NAME_V2);
-                    if (json != null) c.setJsonUri(json.getUri().toString());
-                    // Create the images from detected files
-                    c.setImageFiles(ContentHelper.createImageListFromFolder(requireContext(), f));
-                    filesFound = true;
-                    break;
+    private void commitContent(
+            @NonNull final Context context,
+            @NonNull final List<Content> batch,
+            @NonNull final ObservableEmitter<Integer> emitter) {
+        if (!batch.isEmpty()) {
+            List<Long> queuedContentIds = new ArrayList<>();
+            dao.runInTransaction(() -> {
+                for (Content c : batch) {
+                    long newContentId = ContentHelper.addContent(context, dao, c);
+                    // Insert queued content into the queue
+                    if (c.getStatus().equals(StatusContent.DOWNLOADING) || c.getStatus().equals(StatusContent.PAUSED))
+                        queuedContentIds.add(newContentId);
                 }
+                dao.insertQueueAtBottom(queuedContentIds);
+            });
+            batch.clear();
+        }
+        emitter.onNext(nbProcessedBooks);
+    }
+
+    private void mapToContent(@NonNull final Context context, @NonNull final Content c, @NonNull final DocumentFile siteFolder) {
+        Map<String, DocumentFile> bookFolders = bookFoldersCache.get(c.getSite());
+        if (null == bookFolders) {
+            bookFolders = indexBookFolders(FileHelper.listFolders(context, siteFolder));
+            bookFoldersCache.put(c.getSite(), bookFolders);
         }
-        // If no local storage found for the book, it goes in the errors queue (except if it already was in progress)
-        if (!filesFound) {
+        // Look for the book ID
+        c.populateUniqueSiteId();
+        DocumentFile f = bookFolders.get(ContentHelper.formatBookId(c));
+        if (f != null) {
+            // Cache folder Uri
+            c.setStorageUri(f.getUri().toString());
+            // Cache JSON Uri
+            DocumentFile json = FileHelper.findFile(context, f, Consts.JSON_FILE_NAME_V2);
+            if (json != null) c.setJsonUri(json.getUri().toString());
+            // Create the images from detected files
+            c.setImageFiles(ContentHelper.createImageListFromFolder(context, f));
+        } else {
+            // If no local storage found for the book, it goes in the errors queue (except if it already was in progress)
             if (!c.getStatus().equals(StatusContent.DOWNLOADING) && !c.getStatus().equals(StatusContent.PAUSED))
                 c.setStatus(StatusContent.ERROR);
             List<ErrorRecord> errors = new ArrayList<>();
@@ -405,13 +458,35 @@ public class LibImportDialogFragment extends DialogFragment {
         }
     }
 
-    private Map<Site, DocumentFile> getSiteFolders() {
+    /**
+     * Index the given book folders by the bracketed book IDs their names contain (e.g. "[12345]"),
+     * to find the folder of each imported book without scanning all the folders
+     * When several folders contain the same ID, the first one is kept
+     */
+    private static Map<String, DocumentFile> indexBookFolders(@NonNull final List<DocumentFile> bookFolders) {
+        Map<String, DocumentFile> result = new HashMap<>(bookFolders.size());
+        for (DocumentFile f : bookFolders) {
+            String name = f.getName();
+            if (null == name) continue;
+            int start = name.indexOf('[');
+            while (start > -1) {
+                int end = name.indexOf(']', start);
+                if (-1 == end) break;
+                String bookId = name.substring(start, end + 1);
+                if (!result.containsKey(bookId)) result.put(bookId, f);
+                start = name.indexOf('[', start + 1);
+            }
+        }
+        return result;
+    }
+
+    private Map<Site, DocumentFile> getSiteFolders(@NonNull final Context context) {
         Helper.assertNonUiThread();
         Map<Site, DocumentFile> result = new EnumMap<>(Site.class);
 
-        DocumentFile rootFolder = FileHelper.getFolderFromTreeUriString(requireActivity(), Preferences.getStorageUri());
+        DocumentFile rootFolder = FileHelper.getFolderFromTreeUriString(context, Preferences.getStorageUri());
         if (null != rootFolder) {
-            List<DocumentFile> subfolders = FileHelper.listFolders(requireContext(), rootFolder);
+            List<DocumentFile> subfolders = FileHelper.listFolders(context, rootFolder);
             String folderName;
             for (DocumentFile f : subfolders)
                 if (f.getName() != null) {
@@ -427,24 +502,15 @@ public class LibImportDialogFragment extends DialogFragment {
         return result;
     }
 
-    private void importGroup(@NonNull final Group group, @NonNull final CollectionDAO dao) {
-        if (null == dao.selectGroupByName(Grouping.CUSTOM.getId(), group.name))
-            dao.insertGroup(group);
+    private void importGroups(@NonNull final List<Group> groups) {
+        for (Group group : groups)
+            if (null == dao.selectGroupByName(Grouping.CUSTOM.getId(), group.name))
+                dao.insertGroup(group);
     }
 
-    private void nextOK(boolean isGroup) {
-        nbSuccess++;
-        updateProgress(isGroup);
-    }
-
-    private void nextKO(Throwable e, boolean isGroup) {
-        Timber.w(e);
-        updateProgress(isGroup);
-    }
-
-    private void updateProgress(boolean isGroup) {
-        currentProgress++;
-        progressTxt.setText(getResources().getString(isGroup ? R.string.group_progress : R.string.book_progress, currentProgress, totalItems));
+    private void updateProgress(int nbProcessedBooks) {
+        currentProgress = nbProcessedBooks;
+        progressTxt.setText(getResources().getString(R.string.book_progress, currentProgress, totalItems));
         progressBar.setProgress(currentProgress);
         progressTxt.setVisibility(View.VISIBLE);
         progressBar.setVisibility(View.VISIBLE);
@@ -453,12 +519,20 @@ public class LibImportDialogFragment extends DialogFragment {
     private void finish() {
         importDisposable.dispose();
         if (dao != null) dao.cleanup();
-        if (nbSuccess > 0)
-            Snackbar.make(rootView, getResources().getQuantityString(R.plurals.import_result_books, nbSuccess, nbSuccess), LENGTH_LONG).show();
+        if (currentProgress > 0)
+            Snackbar.make(rootView, getResources().getQuantityString(R.plurals.import_result_books, currentProgress, currentProgress), LENGTH_LONG).show();
         else if (nbBookmarksSuccess > 0)
             Snackbar.make(rootView, getResources().getQuantityString(R.plurals.import_result_bookmarks, nbBookmarksSuccess, nbBookmarksSuccess), LENGTH_LONG).show();
 
         // Dismiss after 3s, for the user to be able to see the snackbar
         new Handler(Looper.getMainLooper()).postDelayed(this::dismiss, 3000);
     }
+
+    // Number of items of each list of the collection to import
+    private static class CollectionSummary {
+        int nbLibraryBooks = 0;
+        int nbQueueBooks = 0;
+        int nbGroups = 0;
+        int nbBookmarks = 0;
+    }
 }
@@ -548,6 +548,7 @@ public class ViewerPagerFragment extends Fragment implements ViewerBrowseModeDia
         highestImageIndexReached = Math.max(imageIndex, highestImageIndexReached);
         ImageFile currentImage = adapter.getImageAt(imageIndex);
         if (currentImage != null) viewModel.markPageAsRead(currentImage.getOrder());
+        if (isContentArchive) viewModel.onPageChange(imageIndex);
 
         // Resets zoom if we're using horizontal (independent pages) mode
         if (Preferences.Constant.VIEWER_ORIENTATION_HORIZONTAL == Preferences.getContentOrientation(bookPreferences))
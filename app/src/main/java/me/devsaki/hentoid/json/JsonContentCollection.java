@@ -16,6 +16,12 @@ import me.devsaki.hentoid.enums.Grouping;
 
 public class JsonContentCollection {
 
+    // Names of the lists of the collection, as serialized to JSON
+    public static final String LIBRARY = "library";
+    public static final String QUEUE = "queue";
+    public static final String GROUPINGS = "groupings";
+    public static final String BOOKMARKS = "bookmarks";
+
     private List<JsonContent> library = new ArrayList<>();
     private List<JsonContent> queue = new ArrayList<>();
     private List<JsonCustomGrouping> groupings = new ArrayList<>();
@@ -0,0 +1,143 @@
+package me.devsaki.hentoid.json;
+
+import android.content.Context;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.documentfile.provider.DocumentFile;
+
+import com.squareup.moshi.JsonReader;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import me.devsaki.hentoid.database.CollectionDAO;
+import me.devsaki.hentoid.database.domains.Content;
+import me.devsaki.hentoid.database.domains.Group;
+import me.devsaki.hentoid.database.domains.SiteBookmark;
+import me.devsaki.hentoid.enums.Grouping;
+import me.devsaki.hentoid.util.JsonHelper;
+
+/**
+ * Reader of {@link JsonContentCollection} data that deserializes items one by one from the given file,
+ * instead of loading the whole collection in memory first
+ * <p>
+ * Lists of the collection are read in the order they appear in the file :
+ * {@link #nextList()} moves to the next list, then its items are read one by one while {@link #hasNext()} is true
+ */
+public class JsonContentCollectionReader implements Closeable {
+
+    private final JsonReader reader;
+
+
+    /**
+     * Open a new reader on the given file
+     *
+     * @param context Context to use
+     * @param file    File containing the collection to read
+     * @throws IOException If the file can't be read or doesn't contain a collection
+     */
+    public JsonContentCollectionReader(@NonNull final Context context, @NonNull final DocumentFile file) throws IOException {
+        reader = JsonHelper.openJsonReader(context, file);
+        try {
+            reader.beginObject();
+        } catch (IOException e) {
+            reader.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Move to the next list of the collection, skipping the remaining items of the current list
+     *
+     * @return Name of the next list (see {@link JsonContentCollection#LIBRARY} and its siblings); null if the end of the collection has been reached
+     * @throws IOException If the collection can't be read
+     */
+    @Nullable
+    public String nextList() throws IOException {
+        while (reader.peek() != JsonReader.Token.END_OBJECT) {
+            if (reader.peek() == JsonReader.Token.NAME) {
+                String name = reader.nextName();
+                if (isList(name) && reader.peek() == JsonReader.Token.BEGIN_ARRAY) {
+                    reader.beginArray();
+                    return name;
+                }
+            } else if (reader.peek() == JsonReader.Token.END_ARRAY) { // End of the current list
+                reader.endArray();
+                continue;
+            }
+            reader.skipValue();
+        }
+        return null;
+    }
+
+    private static boolean isList(@NonNull final String name) {
+        return JsonContentCollection.LIBRARY.equals(name)
+                || JsonContentCollection.QUEUE.equals(name)
+                || JsonContentCollection.GROUPINGS.equals(name)
+                || JsonContentCollection.BOOKMARKS.equals(name);
+    }
+
+    /**
+     * @return True if the current list has items left to read; false instead
+     * @throws IOException If the collection can't be read
+     */
+    public boolean hasNext() throws IOException {
+        return reader.hasNext();
+    }
+
+    /**
+     * Read the next book of the current list, which has to be the library or the queue
+     *
+     * @param dao DAO to use to link the book to its groups; null not to link it to any group
+     * @return Next book of the current list; null if the item is empty
+     * @throws IOException If the collection can't be read
+     */
+    @Nullable
+    public Content nextContent(@Nullable final CollectionDAO dao) throws IOException {
+        JsonContent content = JsonHelper.jsonToObject(reader, JsonContent.class);
+        return (null == content) ? null : content.toEntity(dao);
+    }
+
+    /**
+     * Read the next grouping of the current list, which has to be the groupings
+     *
+     * @return Custom groups of the next grouping
+     * @throws IOException If the collection can't be read
+     */
+    public List<Group> nextCustomGroups() throws IOException {
+        List<Group> result = new ArrayList<>();
+        JsonCustomGrouping grouping = JsonHelper.jsonToObject(reader, JsonCustomGrouping.class);
+        if (grouping != null)
+            for (JsonCustomGroup g : grouping.getGroups()) result.add(g.toEntity(Grouping.CUSTOM));
+        return result;
+    }
+
+    /**
+     * Read the next bookmark of the current list, which has to be the bookmarks
+     *
+     * @return Next bookmark of the current list; null if the item is empty
+     * @throws IOException If the collection can't be read
+     */
+    @Nullable
+    public SiteBookmark nextBookmark() throws IOException {
+        JsonBookmark bookmark = JsonHelper.jsonToObject(reader, JsonBookmark.class);
+        return (null == bookmark) ? null : bookmark.toEntity();
+    }
+
+    /**
+     * Skip the next item of the current list
+     *
+     * @throws IOException If the collection can't be read
+     */
+    public void skip() throws IOException {
+        reader.skipValue();
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+}
@@ -0,0 +1,128 @@
+package me.devsaki.hentoid.json;
+
+import androidx.annotation.NonNull;
+
+import com.squareup.moshi.JsonWriter;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+
+import me.devsaki.hentoid.database.domains.Content;
+import me.devsaki.hentoid.database.domains.Group;
+import me.devsaki.hentoid.database.domains.SiteBookmark;
+import me.devsaki.hentoid.enums.Grouping;
+import me.devsaki.hentoid.util.JsonHelper;
+import okio.BufferedSink;
+import okio.Okio;
+
+/**
+ * Writer of {@link JsonContentCollection} data that serializes books one by one to the given stream,
+ * instead of building the whole collection in memory first
+ * <p>
+ * Produced JSON data can be read back as a {@link JsonContentCollection}
+ */
+public class JsonContentCollectionWriter implements Closeable {
+
+    private final BufferedSink sink;
+    private final JsonWriter writer;
+
+
+    /**
+     * Create a new writer and start the collection
+     *
+     * @param output Stream to write the collection to; closed when the writer is closed
+     * @throws IOException If the collection can't be written
+     */
+    public JsonContentCollectionWriter(@NonNull final OutputStream output) throws IOException {
+        sink = Okio.buffer(Okio.sink(output));
+        writer = JsonWriter.of(sink);
+        writer.beginObject();
+    }
+
+    /**
+     * Start the list of library books; books are then added using {@link #writeContent(Content)}
+     * until the list is ended using {@link #endList()}
+     *
+     * @throws IOException If the collection can't be written
+     */
+    public void beginLibrary() throws IOException {
+        writer.name(JsonContentCollection.LIBRARY).beginArray();
+    }
+
+    /**
+     * Start the list of queued books; books are then added using {@link #writeContent(Content)}
+     * until the list is ended using {@link #endList()}
+     *
+     * @throws IOException If the collection can't be written
+     */
+    public void beginQueue() throws IOException {
+        writer.name(JsonContentCollection.QUEUE).beginArray();
+    }
+
+    /**
+     * Add the given book to the current list, without its images
+     *
+     * @param content Book to add
+     * @throws IOException If the collection can't be written
+     */
+    public void writeContent(@NonNull final Content content) throws IOException {
+        JsonHelper.serializeToJson(writer, JsonContent.fromEntity(content, false), JsonContent.class);
+    }
+
+    /**
+     * End the current list of books
+     *
+     * @throws IOException If the collection can't be written
+     */
+    public void endList() throws IOException {
+        writer.endArray();
+    }
+
+    /**
+     * Write the given custom groups
+     *
+     * @param customGroups Custom groups to write
+     * @throws IOException If the collection can't be written
+     */
+    public void writeCustomGroups(@NonNull final List<Group> customGroups) throws IOException {
+        writer.name(JsonContentCollection.GROUPINGS).beginArray();
+        JsonHelper.serializeToJson(writer, JsonCustomGrouping.fromEntity(Grouping.CUSTOM, customGroups), JsonCustomGrouping.class); // Just one for now
+        writer.endArray();
+    }
+
+    /**
+     * Write the given bookmarks
+     *
+     * @param bookmarks Bookmarks to write
+     * @throws IOException If the collection can't be written
+     */
+    public void writeBookmarks(@NonNull final List<SiteBookmark> bookmarks) throws IOException {
+        writer.name(JsonContentCollection.BOOKMARKS).beginArray();
+        for (SiteBookmark b : bookmarks)
+            JsonHelper.serializeToJson(writer, JsonBookmark.fromEntity(b), JsonBookmark.class);
+        writer.endArray();
+    }
+
+    /**
+     * End the collection; nothing can be written afterwards
+     *
+     * @throws IOException If the collection can't be written
+     */
+    public void finish() throws IOException {
+        writer.endObject();
+        writer.flush();
+    }
+
+    /**
+     * Close the underlying stream
+     * NB : The collection is left incomplete if it hasn't been finished using {@link #finish()} (e.g. cancelled export)
+     *
+     * @throws IOException If the stream can't be closed
+     */
+    @Override
+    public void close() throws IOException {
+        sink.close();
+    }
+}
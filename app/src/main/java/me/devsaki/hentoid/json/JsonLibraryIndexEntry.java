@@ -0,0 +1,39 @@
+package me.devsaki.hentoid.json;
+
+import androidx.annotation.NonNull;
+
+import me.devsaki.hentoid.database.domains.Content;
+
+/**
+ * Entry of the library index : metadata of a book, along with the location of its folder relative
+ * to the root folder and the fingerprint of that folder when the entry has been written
+ */
+public class JsonLibraryIndexEntry {
+
+    private String folder;
+    private String fingerprint;
+    private JsonContent content;
+
+    private JsonLibraryIndexEntry() {
+    }
+
+    public static JsonLibraryIndexEntry fromEntity(@NonNull final String folder, @NonNull final String fingerprint, @NonNull final Content c) {
+        JsonLibraryIndexEntry result = new JsonLibraryIndexEntry();
+        result.folder = folder;
+        result.fingerprint = fingerprint;
+        result.content = JsonContent.fromEntity(c);
+        return result;
+    }
+
+    public String getFolder() {
+        return folder;
+    }
+
+    public String getFingerprint() {
+        return fingerprint;
+    }
+
+    public JsonContent getContent() {
+        return content;
+    }
+}
@@ -16,13 +16,24 @@ import com.annimon.stream.Optional;
 import com.annimon.stream.Stream;
 
 import org.greenrobot.eventbus.EventBus;
+import org.threeten.bp.Instant;
 
 import java.io.File;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
 
 import io.reactivex.disposables.Disposable;
 import io.reactivex.disposables.Disposables;
@@ -30,7 +41,9 @@ import io.reactivex.schedulers.Schedulers;
 import me.devsaki.hentoid.database.CollectionDAO;
 import me.devsaki.hentoid.database.ObjectBoxDAO;
 import me.devsaki.hentoid.database.domains.Content;
+import me.devsaki.hentoid.database.domains.ErrorRecord;
 import me.devsaki.hentoid.database.domains.ImageFile;
+import me.devsaki.hentoid.enums.ErrorType;
 import me.devsaki.hentoid.enums.StatusContent;
 import me.devsaki.hentoid.events.ProcessEvent;
 import me.devsaki.hentoid.notification.import_.ImportCompleteNotification;
@@ -55,6 +68,15 @@ public class API29MigrationService extends IntentService {
 
     private static final int NOTIFICATION_ID = 1;
 
+    // Maximum number of threads migrating books
+    private static final int MAX_MIGRATION_THREADS = 4;
+    // Number of migrated books that can wait to be committed, per migration thread
+    private static final int MAX_PENDING_BOOKS_PER_THREAD = 4;
+    // Maximum number of books committed to the DB in a single transaction
+    private static final int DB_BATCH_SIZE = 50;
+    // Content part of the error records logged when the migration of a book fails
+    private static final String MIGRATION_ERROR_PART = "API29 migration";
+
     private ServiceNotificationManager notificationManager;
     private Disposable searchDisposable = Disposables.empty();
     private final Map<String, Map<String, DocumentFile>> bookFoldersCache = new HashMap<>();
@@ -119,7 +141,8 @@ public class API29MigrationService extends IntentService {
      * Import books from known source folders
      */
     private void performMigration() throws InterruptedException {
-        List<LogUtil.LogEntry> log = new ArrayList<>();
+        // Written by the migration threads too
+        List<LogUtil.LogEntry> log = Collections.synchronizedList(new ArrayList<>());
 
         DocumentFile rootFolder = FileHelper.getFolderFromTreeUriString(this, Preferences.getStorageUri());
         if (null == rootFolder) {
@@ -171,96 +194,79 @@ public class API29MigrationService extends IntentService {
         int booksOK = 0;                        // Number of books imported
         int booksKO = 0;                        // Number of folders found with no valid book inside
 
+        // Books that have already been migrated aren't listed anymore, which allows resuming an interrupted migration
         trace(Log.DEBUG, 0, log, "Library migration starting - books to process : %s", contentIds.size() + "");
 
         ContentProviderClient client = this.getContentResolver().acquireContentProviderClient(Uri.parse(Preferences.getStorageUri()));
         if (null == client) return;
+
+        // Books are read and matched to their files by a pool of threads, while the current thread
+        // commits the migrated books to the DB in batches, as soon as they are available
+        int nbThreads = Math.max(1, Math.min(MAX_MIGRATION_THREADS, Runtime.getRuntime().availableProcessors()));
+        BlockingQueue<ContentProviderClient> clients = new ArrayBlockingQueue<>(nbThreads);
+        List<ContentProviderClient> extraClients = new ArrayList<>();
+        clients.add(client);
+        for (int i = 1; i < nbThreads; i++) {
+            ContentProviderClient extraClient = getContentResolver().acquireContentProviderClient(Uri.parse(Preferences.getStorageUri()));
+            if (null == extraClient) break;
+            extraClients.add(extraClient);
+            clients.add(extraClient);
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(clients.size());
+        CompletionService<BookResult> migratedBooks = new ExecutorCompletionService<>(executor);
+
         try {
-            for (long contentId : contentIds) {
-                Content content = dao.selectContent(contentId);
-                if (content != null) {
-                    try {
-                        // Set the book's storage URI
-                        Map<String, DocumentFile> siteFolder = bookFoldersCache.get(content.getSite().getDescription());
-                        if (null == siteFolder) {
-                            trace(Log.WARN, 1, log, "Migrate book KO : site folder %s not found for %s [%s]", content.getSite().getDescription(), content.getTitle(), contentId + "");
-                            content.resetStorageFolder();
-                            dao.insertContent(content);
-                            booksKO++;
-                            continue;
-                        }
-                        // It's normal to use the deprecated feature here since it's a migration job
-                        //noinspection deprecation
-                        String[] contentFolderParts = content.getStorageFolder().split(File.separator);
-                        String bookFolderName = contentFolderParts[contentFolderParts.length - 1];
-                        DocumentFile bookFolder = siteFolder.get(bookFolderName);
-                        if (null == bookFolder) {
-                            trace(Log.WARN, 1, log, "Migrate book KO : book folder %s not found in %s for %s [%s]", bookFolderName, content.getSite().getDescription(), content.getTitle(), contentId + "");
-                            content.resetStorageFolder();
-                            dao.insertContent(content);
-                            booksKO++;
-                            continue;
+            int nbSubmitted = 0;
+            int nbPending = 0;
+            while (nbSubmitted < contentIds.size() || nbPending > 0) {
+                // Only process a few books ahead of the DB commits to keep memory usage bounded
+                while (nbSubmitted < contentIds.size() && nbPending < clients.size() * MAX_PENDING_BOOKS_PER_THREAD) {
+                    long contentId = contentIds.get(nbSubmitted++);
+                    migratedBooks.submit(() -> {
+                        ContentProviderClient threadClient = clients.take();
+                        try {
+                            return migrateBook(contentId, threadClient, log);
+                        } finally {
+                            clients.add(threadClient);
                         }
-                        content.setStorageUri(bookFolder.getUri().toString());
-                        content.resetStorageFolder();
-
-                        // Delete the JSON URI if not in the correct format (file:// instead of content://)
-                        // (might be the case when the migrated collection was stored on phone memory)
-                        if (content.getJsonUri().isEmpty() || !content.getJsonUri().startsWith("content"))
-                            content.setJsonUri("");
-
-                        //dao.insertContent(content);
-                        ContentHelper.addContent(this, dao, content);
-
-                        List<ImageFile> contentImages;
-                        if (content.getImageFiles() != null)
-                            contentImages = content.getImageFiles();
-                        else contentImages = new ArrayList<>();
-
-                        // Attach file Uri's to the book's images
-                        List<DocumentFile> imageFiles = FileHelper.listFiles(this, bookFolder, client, ImageHelper.getImageNamesFilter());
-                        if (!imageFiles.isEmpty()) {
-                            if (contentImages.isEmpty()) { // No images described in the content (e.g. unread import from old JSON) -> recreate them
-                                contentImages = ContentHelper.createImageListFromFiles(imageFiles);
-                                content.setImageFiles(contentImages);
-                                content.getCover().setUrl(content.getCoverImageUrl());
-                            } else { // Existing images -> map them
-                                contentImages = ContentHelper.matchFilesToImageList(imageFiles, contentImages);
-                                // If images are set and no cover is defined, get it too
-                                if (!contentImages.isEmpty() && StatusContent.UNHANDLED_ERROR == content.getCover().getStatus()) {
-                                    Optional<DocumentFile> file = Stream.of(imageFiles).filter(f -> f.getName() != null && f.getName().startsWith(Consts.THUMB_FILE_NAME)).findFirst();
-                                    if (file.isPresent()) {
-                                        ImageFile cover = new ImageFile(0, content.getCoverImageUrl(), StatusContent.DOWNLOADED, content.getQtyPages());
-                                        cover.setName(Consts.THUMB_FILE_NAME);
-                                        cover.setFileUri(file.get().getUri().toString());
-                                        cover.setIsCover(true);
-                                        contentImages.add(0, cover);
-                                    }
-                                }
-                                content.setImageFiles(contentImages);
-                                content.computeSize();
-                                dao.insertContent(content);
-                            }
-                        }
-                        dao.replaceImageList(contentId, contentImages);
-
-                        booksOK++;
-                        trace(Log.INFO, 1, log, "Migrate book OK : %s", bookFolder.getUri().toString());
-                    } catch (Exception e) {
+                    });
+                    nbPending++;
+                }
+
+                // Wait for the next migrated book, then add the books that have been migrated in the meantime to the same batch
+                List<BookResult> batch = new ArrayList<>();
+                Future<BookResult> migratedBook = migratedBooks.take();
+                do {
+                    nbPending--;
+                    try {
+                        batch.add(migratedBook.get());
+                    } catch (ExecutionException e) {
                         Timber.w(e);
                         booksKO++;
-                        trace(Log.ERROR, 1, log, "Migrate book ERROR : %s for Content %s [%s]", e.getMessage(), content.getTitle(), contentId + "");
+                        trace(Log.ERROR, 1, log, "Migrate book ERROR : %s", e.getMessage());
                     }
-                } else booksKO++; // null books (content ID not found in DB)
-
+                }
+                while (batch.size() < DB_BATCH_SIZE && (migratedBook = migratedBooks.poll()) != null);
+
+                // Each batch is committed at once; books are only marked as migrated when all their data has been saved
+                dao.runInTransaction(() -> {
+                    for (BookResult result : batch) commitBook(result);
+                });
+
+                for (BookResult result : batch) {
+                    if (result.success) booksOK++;
+                    else booksKO++;
+                }
                 eventProgress(3, contentIds.size(), booksOK, booksKO);
             }
+        } catch (InterruptedException e) {
+            Timber.w(e);
+            Thread.currentThread().interrupt();
+            return;
         } finally {
-            // ContentProviderClient.close only available on API level 24+
-            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N)
-                client.close();
-            else
-                client.release();
+            shutdown(executor);
+            releaseClient(client);
+            for (ContentProviderClient extraClient : extraClients) releaseClient(extraClient);
         }
         trace(Log.INFO, 2, log, "Migration complete - %s OK; %s KO; %s final count", booksOK + "", booksKO + "", contentIds.size() + "");
 
@@ -274,6 +280,134 @@ public class API29MigrationService extends IntentService {
         stopSelf();
     }
 
+    /**
+     * Match the given book to its folder and files, without writing anything to the DB
+     * <p>
+     * Runs on the migration threads; the result has to be committed with {@link #commitBook(BookResult)}
+     *
+     * @param contentId ID of the book to migrate
+     * @param client    ContentProviderClient to use; has to be used by the calling thread only
+     * @param log       Log to write to
+     * @return Result of the migration of the given book
+     */
+    private BookResult migrateBook(long contentId, @NonNull final ContentProviderClient client, @NonNull final List<LogUtil.LogEntry> log) {
+        BookResult result = new BookResult(dao.selectContent(contentId));
+        Content content = result.content;
+        if (null == content) return result; // null books (content ID not found in DB)
+
+        try {
+            // Set the book's storage URI
+            Map<String, DocumentFile> siteFolder = bookFoldersCache.get(content.getSite().getDescription());
+            if (null == siteFolder) {
+                trace(Log.WARN, 1, log, "Migrate book KO : site folder %s not found for %s [%s]", content.getSite().getDescription(), content.getTitle(), contentId + "");
+                result.isProcessed = true;
+                return result;
+            }
+            // It's normal to use the deprecated feature here since it's a migration job
+            //noinspection deprecation
+            String[] contentFolderParts = content.getStorageFolder().split(File.separator);
+            String bookFolderName = contentFolderParts[contentFolderParts.length - 1];
+            DocumentFile bookFolder = siteFolder.get(bookFolderName);
+            if (null == bookFolder) {
+                trace(Log.WARN, 1, log, "Migrate book KO : book folder %s not found in %s for %s [%s]", bookFolderName, content.getSite().getDescription(), content.getTitle(), contentId + "");
+                result.isProcessed = true;
+                return result;
+            }
+            content.setStorageUri(bookFolder.getUri().toString());
+
+            // Delete the JSON URI if not in the correct format (file:// instead of content://)
+            // (might be the case when the migrated collection was stored on phone memory)
+            if (content.getJsonUri().isEmpty() || !content.getJsonUri().startsWith("content"))
+                content.setJsonUri("");
+
+            List<ImageFile> contentImages;
+            if (content.getImageFiles() != null)
+                contentImages = content.getImageFiles();
+            else contentImages = new ArrayList<>();
+
+            // Attach file Uri's to the book's images
+            List<DocumentFile> imageFiles = FileHelper.listFiles(this, bookFolder, client, ImageHelper.getImageNamesFilter());
+            if (!imageFiles.isEmpty()) {
+                if (contentImages.isEmpty()) { // No images described in the content (e.g. unread import from old JSON) -> recreate them
+                    contentImages = ContentHelper.createImageListFromFiles(imageFiles);
+                    content.setImageFiles(contentImages);
+                    content.getCover().setUrl(content.getCoverImageUrl());
+                } else { // Existing images -> map them
+                    contentImages = ContentHelper.matchFilesToImageList(imageFiles, contentImages);
+                    // If images are set and no cover is defined, get it too
+                    if (!contentImages.isEmpty() && StatusContent.UNHANDLED_ERROR == content.getCover().getStatus()) {
+                        Optional<DocumentFile> file = Stream.of(imageFiles).filter(f -> f.getName() != null && f.getName().startsWith(Consts.THUMB_FILE_NAME)).findFirst();
+                        if (file.isPresent()) {
+                            ImageFile cover = new ImageFile(0, content.getCoverImageUrl(), StatusContent.DOWNLOADED, content.getQtyPages());
+                            cover.setName(Consts.THUMB_FILE_NAME);
+                            cover.setFileUri(file.get().getUri().toString());
+                            cover.setIsCover(true);
+                            contentImages.add(0, cover);
+                        }
+                    }
+                    content.setImageFiles(contentImages);
+                    content.computeSize();
+                }
+            }
+            result.images = contentImages;
+            result.isProcessed = true;
+            result.success = true;
+            trace(Log.INFO, 1, log, "Migrate book OK : %s", bookFolder.getUri().toString());
+        } catch (Exception e) {
+            Timber.w(e);
+            trace(Log.ERROR, 1, log, "Migrate book ERROR : %s for Content %s [%s]", e.getMessage(), content.getTitle(), contentId + "");
+            // Books are retried once; a book that has already failed is given up on, so that the migration doesn't restart forever
+            if (Stream.of(content.getErrorLog()).anyMatch(r -> MIGRATION_ERROR_PART.equals(r.getContentPart())))
+                result.isProcessed = true;
+            else
+                result.error = new ErrorRecord(contentId, ErrorType.IMPORT, "", MIGRATION_ERROR_PART, "Migration failed : " + e.getMessage(), Instant.now());
+        }
+        return result;
+    }
+
+    /**
+     * Commit the given migrated book to the DB
+     * NB : Books whose migration has failed unexpectedly for the first time are left as they are, to be retried when the migration is resumed;
+     * the failure is logged in their error log
+     *
+     * @param result Migrated book to commit
+     */
+    private void commitBook(@NonNull final BookResult result) {
+        if (null == result.content) return;
+        if (!result.isProcessed) {
+            if (result.error != null) dao.insertErrorRecord(result.error);
+            return;
+        }
+
+        // Marks the book as migrated
+        result.content.resetStorageFolder();
+        if (result.success) {
+            ContentHelper.addContent(this, dao, result.content);
+            dao.replaceImageList(result.content.getId(), result.images);
+        } else {
+            dao.insertContent(result.content);
+        }
+    }
+
+    private static void releaseClient(@NonNull final ContentProviderClient client) {
+        // ContentProviderClient.close only available on API level 24+
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N)
+            client.close();
+        else
+            client.release();
+    }
+
+    private static void shutdown(@NonNull final ExecutorService executor) {
+        executor.shutdownNow();
+        try {
+            if (!executor.awaitTermination(1, TimeUnit.MINUTES))
+                Timber.w("Book migration threads didn't terminate");
+        } catch (InterruptedException e) {
+            Timber.w(e);
+            Thread.currentThread().interrupt();
+        }
+    }
+
     private LogUtil.LogInfo buildLogInfo(@NonNull List<LogUtil.LogEntry> log) {
         LogUtil.LogInfo logInfo = new LogUtil.LogInfo();
         logInfo.setLogName("API29Migration");
@@ -282,4 +416,24 @@ public class API29MigrationService extends IntentService {
         logInfo.setLog(log);
         return logInfo;
     }
+
+    /**
+     * Result of the migration of a book, waiting to be committed to the DB
+     */
+    private static class BookResult {
+
+        final Content content;
+        // Images of the book, matched to their files
+        List<ImageFile> images;
+        // True if the book has been processed and can be marked as migrated
+        boolean isProcessed = false;
+        // True if the book has been matched to its folder
+        boolean success = false;
+        // Error to log when the book has failed for the first time and has to be retried
+        ErrorRecord error = null;
+
+        BookResult(@Nullable final Content content) {
+            this.content = content;
+        }
+    }
 }
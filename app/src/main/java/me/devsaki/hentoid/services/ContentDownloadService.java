@@ -29,6 +29,7 @@ import org.greenrobot.eventbus.Subscribe;
 import org.threeten.bp.Instant;
 
 import java.io.IOException;
+import java.io.OutputStream;
 import java.security.InvalidParameterException;
 import java.util.ArrayList;
 import java.util.Collections;
@@ -66,6 +67,7 @@ import me.devsaki.hentoid.parsers.ContentParserFactory;
 import me.devsaki.hentoid.parsers.images.ImageListParser;
 import me.devsaki.hentoid.util.Consts;
 import me.devsaki.hentoid.util.ContentHelper;
+import me.devsaki.hentoid.util.DocumentFolderIndex;
 import me.devsaki.hentoid.util.FileHelper;
 import me.devsaki.hentoid.util.ImageHelper;
 import me.devsaki.hentoid.util.JsonHelper;
@@ -106,6 +108,8 @@ public class ContentDownloadService extends IntentService {
 
     // Download speed calculator
     private final DownloadSpeedCalculator downloadSpeedCalulator = new DownloadSpeedCalculator();
+    // Index of the files of the folder of the book being downloaded
+    private volatile DocumentFolderIndex downloadFolderIndex = null;
 
 
     public ContentDownloadService() {
@@ -374,6 +378,8 @@ public class ContentDownloadService extends IntentService {
 
         // Folder creation succeeds -> memorize its path
         content.setStorageUri(dir.getUri().toString());
+        // Index its files once to avoid looking them up each time an image is saved
+        downloadFolderIndex = new DocumentFolderIndex(this, dir);
         // Set QtyPages if the content parser couldn't do it (certain sources only)
         // Don't count the cover thumbnail in the number of pages
         if (0 == content.getQtyPages()) content.setQtyPages(images.size() - 1);
@@ -404,8 +410,7 @@ public class ContentDownloadService extends IntentService {
             }
         }
 
-        if (ContentHelper.updateQueueJson(this, dao)) Timber.i("Queue JSON successfully saved");
-        else Timber.w("Queue JSON saving failed");
+        ContentHelper.updateQueueJson(this);
 
         return new ImmutablePair<>(QueuingResult.CONTENT_FOUND, content);
     }
@@ -580,6 +585,7 @@ public class ContentDownloadService extends IntentService {
                     Timber.e(e, "I/O Error saving JSON: %s", title);
                 }
                 ContentHelper.addContent(this, dao, content);
+                ContentHelper.updateLibraryIndex(this, content);
 
                 Timber.i("Content download finished: %s [%s]", title, contentId);
 
@@ -915,10 +921,19 @@ public class ContentDownloadService extends IntentService {
      */
     private DocumentFile saveImage(@NonNull DocumentFile dir, @NonNull String
             fileName, @NonNull String mimeType, byte[] binaryContent) throws IOException {
-        DocumentFile file = FileHelper.findOrCreateDocumentFile(this, dir, mimeType, fileName);
+        DocumentFolderIndex index = downloadFolderIndex;
+        DocumentFile file;
+        if (index != null && index.getFolder().getUri().equals(dir.getUri()))
+            file = index.findOrCreateDocumentFile(this, mimeType, fileName);
+        else
+            file = FileHelper.findOrCreateDocumentFile(this, dir, mimeType, fileName);
         if (null == file)
             throw new IOException(String.format("Failed to create document %s under %s", fileName, dir.getUri().toString()));
-        FileHelper.saveBinary(this, file.getUri(), binaryContent);
+        try (OutputStream output = FileHelper.getOutputStream(this, file)) {
+            if (null == output)
+                throw new IOException(String.format("Failed to open document %s under %s", fileName, dir.getUri().toString()));
+            output.write(binaryContent);
+        }
         return file;
     }
 
@@ -0,0 +1,41 @@
+package me.devsaki.hentoid.services;
+
+import android.app.IntentService;
+import android.content.Context;
+import android.content.Intent;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.List;
+
+import io.reactivex.Observable;
+import me.devsaki.hentoid.database.DatabaseMaintenance;
+import timber.log.Timber;
+
+/**
+ * Service responsible for performing the database maintenance tasks that don't need
+ * to be completed before the library is displayed
+ */
+public class DatabaseMaintenanceService extends IntentService {
+
+    public DatabaseMaintenanceService() {
+        super(DatabaseMaintenanceService.class.getName());
+    }
+
+    public static Intent makeIntent(@NonNull Context context) {
+        return new Intent(context, DatabaseMaintenanceService.class);
+    }
+
+    @Override
+    protected void onHandleIntent(@Nullable Intent intent) {
+        List<Observable<Float>> tasks = DatabaseMaintenance.getPostLaunchCleanupTasks(this);
+        Timber.i("Background maintenance : %s tasks to perform", tasks.size());
+        try {
+            Observable.concat(tasks).ignoreElements().blockingAwait();
+            Timber.i("Background maintenance : done");
+        } catch (Exception e) {
+            Timber.e(e, "Background maintenance : failed");
+        }
+    }
+}
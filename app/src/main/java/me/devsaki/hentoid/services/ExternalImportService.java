@@ -18,7 +18,13 @@ import org.greenrobot.eventbus.EventBus;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
 import java.util.regex.Pattern;
 
 import me.devsaki.hentoid.R;
@@ -45,7 +51,6 @@ import timber.log.Timber;
 import static me.devsaki.hentoid.util.ImportHelper.scanArchive;
 import static me.devsaki.hentoid.util.ImportHelper.scanBookFolder;
 import static me.devsaki.hentoid.util.ImportHelper.scanChapterFolders;
-import static me.devsaki.hentoid.util.ImportHelper.scanForArchives;
 
 /**
  * Service responsible for importing an external library.
@@ -54,6 +59,8 @@ public class ExternalImportService extends IntentService {
 
     private static final int NOTIFICATION_ID = 1;
     private static final Pattern ENDS_WITH_NUMBER = Pattern.compile(".*\\d+(\\.\\d+)?$");
+    // Maximum number of threads scanning the external library at the same time
+    private static final int MAX_SCAN_THREADS = 4;
 
     private static boolean running;
     private ServiceNotificationManager notificationManager;
@@ -140,9 +147,8 @@ public class ExternalImportService extends IntentService {
         try {
             notificationManager.startForeground(new ImportProgressNotification(this.getResources().getString(R.string.starting_import), 0, 0));
 
-            List<Content> library = new ArrayList<>();
             // Deep recursive search starting from the place the user has selected
-            scanFolderRecursive(rootFolder, client, new ArrayList<>(), library, dao);
+            List<Content> library = scanFolderRecursive(rootFolder, client, new ArrayList<>(), dao);
             eventComplete(2, 0, 0, 0, null);
 
             // Write JSON file for every found book and persist it in the DB
@@ -172,11 +178,7 @@ public class ExternalImportService extends IntentService {
             // Write log in root folder
             logFile = LogUtil.writeLog(this, buildLogInfo(log));
         } finally {
-            // ContentProviderClient.close only available on API level 24+
-            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N)
-                client.close();
-            else
-                client.release();
+            releaseClient(client);
 
             eventComplete(4, booksOK + booksKO, booksOK, booksKO, logFile); // Final event; should be step 4
             notificationManager.notify(new ImportCompleteNotification(booksOK, booksKO));
@@ -196,67 +198,186 @@ public class ExternalImportService extends IntentService {
         return logInfo;
     }
 
-    private void scanFolderRecursive(
+    /**
+     * Recursively scan the given root folder for books, using parallel tasks
+     *
+     * @param root        Folder to start scanning from
+     * @param mainClient  ContentProviderClient of the storage provider of the external library
+     * @param parentNames Names of the parent folders of the root folder
+     * @param dao         DAO to use
+     * @return Books found inside the root folder, in the order their folders have been listed
+     */
+    private List<Content> scanFolderRecursive(
             @NonNull final DocumentFile root,
-            @NonNull final ContentProviderClient client,
+            @NonNull final ContentProviderClient mainClient,
             @NonNull final List<String> parentNames,
-            @NonNull final List<Content> library,
             @NonNull final CollectionDAO dao) {
-        if (parentNames.size() > 4) return; // We've descended too far
-
-        String rootName = (null == root.getName()) ? "" : root.getName();
-        eventProcessed(2, rootName);
-
-        Timber.d(">>>> scan root %s", root.getUri());
-        List<DocumentFile> files = FileHelper.listDocumentFiles(this, root, client);
-        List<DocumentFile> subFolders = new ArrayList<>();
-        List<DocumentFile> images = new ArrayList<>();
-        List<DocumentFile> archives = new ArrayList<>();
-        DocumentFile json = null;
-
-        // Look for the interesting stuff
-        for (DocumentFile file : files)
-            if (file.getName() != null) {
-                if (file.isDirectory()) subFolders.add(file);
-                else if (ImageHelper.getImageNamesFilter().accept(file.getName())) images.add(file);
-                else if (ArchiveHelper.getArchiveNamesFilter().accept(file.getName())) archives.add(file);
-                else if (file.getName().equals(Consts.JSON_FILE_NAME_V2)) json = file;
-            }
+        int nbThreads = Math.max(1, Math.min(MAX_SCAN_THREADS, Runtime.getRuntime().availableProcessors()));
+
+        // ContentProviderClients aren't thread-safe; each scanning thread borrows one from the pool when it needs it
+        List<ContentProviderClient> extraClients = new ArrayList<>();
+        BlockingQueue<ContentProviderClient> clients = new ArrayBlockingQueue<>(nbThreads);
+        clients.add(mainClient);
+        for (int i = 1; i < nbThreads; i++) {
+            ContentProviderClient client = getContentResolver().acquireContentProviderClient(root.getUri());
+            if (null == client) break;
+            extraClients.add(client);
+            clients.add(client);
+        }
+
+        ForkJoinPool pool = new ForkJoinPool(clients.size());
+        try {
+            return pool.invoke(new FolderScanTask(root, parentNames, clients, dao, false));
+        } finally {
+            pool.shutdown();
+            for (ContentProviderClient client : extraClients) releaseClient(client);
+        }
+    }
 
-        // If at least 2 subfolders and everyone of them ends with a number, we've got a multi-chapter book
-        if (subFolders.size() >= 2) {
-            boolean allSubfoldersEndWithNumber = Stream.of(subFolders).map(DocumentFile::getName).withoutNulls().allMatch(n -> ENDS_WITH_NUMBER.matcher(n).matches());
-            if (allSubfoldersEndWithNumber) {
-                // Make certain folders contain actual books by peeking the 1st one (could be a false positive, i.e. folders per year '1990-2000')
-                int nbPicturesInside = FileHelper.countFiles(subFolders.get(0), client, ImageHelper.getImageNamesFilter());
-                if (nbPicturesInside > 1) {
-                    library.add(scanChapterFolders(this, root, subFolders, client, parentNames, dao, json));
-                    return;
+    private static void releaseClient(@NonNull final ContentProviderClient client) {
+        // ContentProviderClient.close only available on API level 24+
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N)
+            client.close();
+        else
+            client.release();
+    }
+
+    /**
+     * Run the given tasks in parallel and merge their results in the order of the tasks
+     */
+    private static List<Content> invokeAllInOrder(@NonNull final List<? extends RecursiveTask<List<Content>>> tasks) {
+        List<Content> result = new ArrayList<>();
+        for (RecursiveTask<List<Content>> task : ForkJoinTask.invokeAll(tasks))
+            result.addAll(task.join());
+        return result;
+    }
+
+    /**
+     * Task scanning a folder for books, forking one task per subfolder or archive to scan
+     * <p>
+     * Tasks only hold a ContentProviderClient while they query the storage provider, never while waiting for other tasks
+     */
+    private class FolderScanTask extends RecursiveTask<List<Content>> {
+
+        private final DocumentFile root;
+        private final List<String> parentNames;
+        private final BlockingQueue<ContentProviderClient> clients;
+        private final CollectionDAO dao;
+        private final boolean archivesOnly;
+
+        /**
+         * @param archivesOnly True if only the archives located directly inside the folder have to be scanned
+         */
+        FolderScanTask(
+                @NonNull final DocumentFile root,
+                @NonNull final List<String> parentNames,
+                @NonNull final BlockingQueue<ContentProviderClient> clients,
+                @NonNull final CollectionDAO dao,
+                boolean archivesOnly) {
+            this.root = root;
+            this.parentNames = parentNames;
+            this.clients = clients;
+            this.dao = dao;
+            this.archivesOnly = archivesOnly;
+        }
+
+        @Override
+        protected List<Content> compute() {
+            if (parentNames.size() > 4) return Collections.emptyList(); // We've descended too far
+
+            String rootName = (null == root.getName()) ? "" : root.getName();
+            eventProcessed(2, rootName);
+
+            Timber.d(">>>> scan root %s", root.getUri());
+            List<DocumentFile> subFolders = new ArrayList<>();
+            List<DocumentFile> images = new ArrayList<>();
+            List<DocumentFile> archives = new ArrayList<>();
+            DocumentFile json = null;
+            boolean subfoldersContainArchives = false;
+
+            ContentProviderClient client = borrowClient();
+            if (null == client) return Collections.emptyList();
+            try {
+                if (archivesOnly) {
+                    archives.addAll(FileHelper.listFiles(ExternalImportService.this, root, client, ArchiveHelper.getArchiveNamesFilter()));
                 } else {
-                    int nbArchivesInside = FileHelper.countFiles(subFolders.get(0), client, ArchiveHelper.getArchiveNamesFilter());
-                    if (nbArchivesInside > 0) {
-                        List<Content> c = scanForArchives(this, subFolders, client, parentNames);
-                        library.addAll(c);
-                        return;
+                    List<DocumentFile> files = FileHelper.listDocumentFiles(ExternalImportService.this, root, client);
+
+                    // Look for the interesting stuff
+                    for (DocumentFile file : files)
+                        if (file.getName() != null) {
+                            if (file.isDirectory()) subFolders.add(file);
+                            else if (ImageHelper.getImageNamesFilter().accept(file.getName())) images.add(file);
+                            else if (ArchiveHelper.getArchiveNamesFilter().accept(file.getName())) archives.add(file);
+                            else if (file.getName().equals(Consts.JSON_FILE_NAME_V2)) json = file;
+                        }
+
+                    // If at least 2 subfolders and everyone of them ends with a number, we've got a multi-chapter book
+                    if (subFolders.size() >= 2) {
+                        boolean allSubfoldersEndWithNumber = Stream.of(subFolders).map(DocumentFile::getName).withoutNulls().allMatch(n -> ENDS_WITH_NUMBER.matcher(n).matches());
+                        if (allSubfoldersEndWithNumber) {
+                            // Make certain folders contain actual books by peeking the 1st one (could be a false positive, i.e. folders per year '1990-2000')
+                            int nbPicturesInside = FileHelper.countFiles(subFolders.get(0), client, ImageHelper.getImageNamesFilter());
+                            if (nbPicturesInside > 1)
+                                return Collections.singletonList(scanChapterFolders(ExternalImportService.this, root, subFolders, client, parentNames, dao, json));
+                            else
+                                subfoldersContainArchives = FileHelper.countFiles(subFolders.get(0), client, ArchiveHelper.getArchiveNamesFilter()) > 0;
+                        }
+                    } else if (archives.isEmpty() && images.size() > 2) { // We've got a book !
+                        return Collections.singletonList(scanBookFolder(ExternalImportService.this, root, client, parentNames, StatusContent.EXTERNAL, dao, images, json));
                     }
                 }
+            } finally {
+                clients.add(client);
             }
-        } else if (!archives.isEmpty()) { // We've got an archived book
-            for (DocumentFile archive : archives) {
-                Content c = scanArchive(this, archive, parentNames, StatusContent.EXTERNAL);
-                if (!c.getStatus().equals(StatusContent.IGNORED)) library.add(c);
+
+            List<RecursiveTask<List<Content>>> tasks = new ArrayList<>();
+            if (subfoldersContainArchives) { // We've got archived chapters
+                for (DocumentFile subfolder : subFolders)
+                    tasks.add(new FolderScanTask(subfolder, parentNames, clients, dao, true));
+            } else if ((archivesOnly || subFolders.size() < 2) && !archives.isEmpty()) { // We've got archived books
+                for (DocumentFile archive : archives)
+                    tasks.add(new ArchiveScanTask(archive, parentNames));
+            } else if (!archivesOnly) { // If nothing above works, go down one level
+                List<String> newParentNames = new ArrayList<>(parentNames);
+                newParentNames.add(rootName);
+                for (DocumentFile subfolder : subFolders)
+                    tasks.add(new FolderScanTask(subfolder, newParentNames, clients, dao, false));
+            }
+            return invokeAllInOrder(tasks);
+        }
+
+        @Nullable
+        private ContentProviderClient borrowClient() {
+            try {
+                return clients.take();
+            } catch (InterruptedException e) {
+                Timber.w(e);
+                Thread.currentThread().interrupt();
+                return null;
             }
-            return;
-        } else if (images.size() > 2) { // We've got a book !
-            library.add(scanBookFolder(this, root, client, parentNames, StatusContent.EXTERNAL, dao, images, json));
-            return;
         }
+    }
+
+    /**
+     * Task scanning an archive
+     */
+    private class ArchiveScanTask extends RecursiveTask<List<Content>> {
 
-        // If nothing above works, go down one level
-        List<String> newParentNames = new ArrayList<>(parentNames);
-        newParentNames.add(rootName);
-        for (DocumentFile subfolder : subFolders)
-            scanFolderRecursive(subfolder, client, newParentNames, library, dao);
+        private final DocumentFile archive;
+        private final List<String> parentNames;
+
+        ArchiveScanTask(@NonNull final DocumentFile archive, @NonNull final List<String> parentNames) {
+            this.archive = archive;
+            this.parentNames = parentNames;
+        }
+
+        @Override
+        protected List<Content> compute() {
+            Content c = scanArchive(ExternalImportService.this, archive, parentNames, StatusContent.EXTERNAL);
+            if (c.getStatus().equals(StatusContent.IGNORED)) return Collections.emptyList();
+            else return Collections.singletonList(c);
+        }
     }
 
     @Nullable
@@ -21,7 +21,19 @@ import org.threeten.bp.Instant;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 import me.devsaki.hentoid.R;
 import me.devsaki.hentoid.activities.bundles.ImportActivityBundle;
@@ -31,7 +43,6 @@ import me.devsaki.hentoid.database.domains.Attribute;
 import me.devsaki.hentoid.database.domains.Content;
 import me.devsaki.hentoid.database.domains.Group;
 import me.devsaki.hentoid.database.domains.ImageFile;
-import me.devsaki.hentoid.database.domains.QueueRecord;
 import me.devsaki.hentoid.enums.AttributeType;
 import me.devsaki.hentoid.enums.Grouping;
 import me.devsaki.hentoid.enums.Site;
@@ -42,6 +53,7 @@ import me.devsaki.hentoid.json.ContentV1;
 import me.devsaki.hentoid.json.DoujinBuilder;
 import me.devsaki.hentoid.json.JsonContent;
 import me.devsaki.hentoid.json.JsonContentCollection;
+import me.devsaki.hentoid.json.JsonLibraryIndexEntry;
 import me.devsaki.hentoid.json.URLBuilder;
 import me.devsaki.hentoid.notification.import_.ImportCompleteNotification;
 import me.devsaki.hentoid.notification.import_.ImportProgressNotification;
@@ -49,9 +61,11 @@ import me.devsaki.hentoid.notification.import_.ImportStartNotification;
 import me.devsaki.hentoid.util.Consts;
 import me.devsaki.hentoid.util.ContentHelper;
 import me.devsaki.hentoid.util.FileHelper;
+import me.devsaki.hentoid.util.Helper;
 import me.devsaki.hentoid.util.ImageHelper;
 import me.devsaki.hentoid.util.ImportHelper;
 import me.devsaki.hentoid.util.JsonHelper;
+import me.devsaki.hentoid.util.LibraryIndex;
 import me.devsaki.hentoid.util.LogUtil;
 import me.devsaki.hentoid.util.Preferences;
 import me.devsaki.hentoid.util.exception.ParseException;
@@ -73,8 +87,16 @@ public class ImportService extends IntentService {
     public static final int STEP_3_BOOKS = 3;
     public static final int STEP_4_QUEUE = 4;
 
+    // Maximum number of threads processing book folders
+    private static final int MAX_IMPORT_THREADS = 4;
+    // Number of processed book folders that can wait to be committed, per processing thread
+    private static final int MAX_PENDING_FOLDERS_PER_THREAD = 4;
+    // Maximum number of books committed to the DB in a single transaction
+    private static final int DB_BATCH_SIZE = 50;
+
     private static boolean running;
     private ServiceNotificationManager notificationManager;
+    private final Object groupCreationLock = new Object();
 
 
     public ImportService() {
@@ -154,10 +176,8 @@ public class ImportService extends IntentService {
         int booksOK = 0;                        // Number of books imported
         int booksKO = 0;                        // Number of folders found with no valid book inside
         int nbFolders = 0;                      // Number of folders found with no content but subfolders
-        Content content = null;
-        List<LogUtil.LogEntry> log = new ArrayList<>();
-
-        final FileHelper.NameFilter imageNames = displayName -> ImageHelper.isImageExtensionSupported(FileHelper.getExtension(displayName));
+        // Written by the folder processing threads too
+        List<LogUtil.LogEntry> log = Collections.synchronizedList(new ArrayList<>());
 
         DocumentFile rootFolder = FileHelper.getFolderFromTreeUriString(this, Preferences.getStorageUri());
         if (null == rootFolder) {
@@ -169,7 +189,14 @@ public class ImportService extends IntentService {
         if (null == client) return;
 
         List<DocumentFile> bookFolders = new ArrayList<>();
+        List<Long> unchangedContentIds = new ArrayList<>();
+        List<ContentProviderClient> extraClients = new ArrayList<>();
+        ExecutorService executor = null;
+        LibraryIndex.Reader index = null;
+        boolean isComplete = false;
         CollectionDAO dao = new ObjectBoxDAO(this);
+        // Folders that haven't changed since the last import are skipped unless they have to be renamed or cleaned up
+        boolean skipUnchanged = !rename && !cleanNoJSON && !cleanNoImages;
 
         try {
             // 1st pass : Import groups JSON
@@ -189,6 +216,10 @@ public class ImportService extends IntentService {
                 eventProgress(STEP_2_BOOK_FOLDERS, siteFolders.size(), foldersProcessed++, 0);
             }
             eventComplete(STEP_2_BOOK_FOLDERS, siteFolders.size(), siteFolders.size(), 0, null);
+
+            // Books are read from the library index when possible; indexed folders are processed in the order of the index
+            index = LibraryIndex.Reader.open(this, rootFolder, client);
+            if (index != null) sortByIndex(bookFolders, rootFolder, index);
             notificationManager.startForeground(new ImportProgressNotification(this.getResources().getString(R.string.starting_import), 0, 0));
 
             // 3rd pass : scan every folder for a JSON file or subdirectories
@@ -198,168 +229,77 @@ public class ImportService extends IntentService {
             trace(Log.INFO, 0, log, "Rename folders %s", (rename ? enabled : disabled));
             trace(Log.INFO, 0, log, "Remove folders with no JSONs %s", (cleanNoJSON ? enabled : disabled));
             trace(Log.INFO, 0, log, "Remove folders with no images %s", (cleanNoImages ? enabled : disabled));
+            trace(Log.INFO, 0, log, "Skip unchanged folders %s", (skipUnchanged ? enabled : disabled));
 
             // Flag DB content for cleanup
             dao.flagAllInternalBooks();
             dao.flagAllErrorBooksWithJson();
 
-            for (int i = 0; i < bookFolders.size(); i++) {
-                DocumentFile bookFolder = bookFolders.get(i);
+            // Book folders are read and parsed by a pool of threads, while the current thread
+            // commits the resulting books to the DB in batches, as soon as they are available
+            int nbThreads = Math.max(1, Math.min(MAX_IMPORT_THREADS, Runtime.getRuntime().availableProcessors()));
+            BlockingQueue<ContentProviderClient> clients = new ArrayBlockingQueue<>(nbThreads);
+            clients.add(client);
+            for (int i = 1; i < nbThreads; i++) {
+                ContentProviderClient extraClient = getContentResolver().acquireContentProviderClient(rootFolder.getUri());
+                if (null == extraClient) break;
+                extraClients.add(extraClient);
+                clients.add(extraClient);
+            }
+            executor = Executors.newFixedThreadPool(clients.size());
+            CompletionService<BookFolderResult> processedFolders = new ExecutorCompletionService<>(executor);
+
+            int nbSubmitted = 0;
+            int nbPending = 0;
+            while (nbSubmitted < bookFolders.size() || nbPending > 0) {
+                // Only process a few folders ahead of the DB commits to keep memory usage bounded
+                while (nbSubmitted < bookFolders.size() && nbPending < clients.size() * MAX_PENDING_FOLDERS_PER_THREAD) {
+                    DocumentFile bookFolder = bookFolders.get(nbSubmitted++);
+                    JsonLibraryIndexEntry indexEntry = readIndexEntry(index, rootFolder, bookFolder);
+                    processedFolders.submit(() -> {
+                        ContentProviderClient threadClient = clients.take();
+                        try {
+                            return processBookFolder(bookFolder, indexEntry, threadClient, dao, rename, cleanNoJSON, cleanNoImages, skipUnchanged, log);
+                        } finally {
+                            clients.add(threadClient);
+                        }
+                    });
+                    nbPending++;
+                }
 
-                // Detect the presence of images if the corresponding cleanup option has been enabled
-                if (cleanNoImages) {
-                    List<DocumentFile> imageFiles = FileHelper.listFiles(this, bookFolder, client, imageNames);
-                    List<DocumentFile> subfolders = FileHelper.listFolders(this, bookFolder, client);
-                    if (imageFiles.isEmpty() && subfolders.isEmpty()) { // No supported images nor subfolders
+                // Wait for the next processed folder, then add the folders that have been processed in the meantime to the same batch
+                List<BookFolderResult> batch = new ArrayList<>();
+                Future<BookFolderResult> processedFolder = processedFolders.take();
+                do {
+                    nbPending--;
+                    try {
+                        batch.add(processedFolder.get());
+                    } catch (ExecutionException e) {
+                        Timber.w(e);
                         booksKO++;
-                        boolean success = bookFolder.delete();
-                        trace(Log.INFO, STEP_1, log, "[Remove no image %s] Folder %s", success ? "OK" : "KO", bookFolder.getUri().toString());
-                        continue;
+                        trace(Log.ERROR, STEP_2_BOOK_FOLDERS, log, "Import book ERROR : %s", e.getMessage());
                     }
                 }
-
-                // Find the corresponding flagged book in the library
-                Content existingFlaggedContent = dao.selectContentByFolderUri(bookFolder.getUri().toString(), true);
-
-                // Detect JSON and try to parse it
-                try {
-                    content = importJson(bookFolder, client, dao);
-                    if (content != null) {
-                        // If the book exists and is flagged for deletion, delete it to make way for a new import (as intended)
-                        if (existingFlaggedContent != null)
-                            dao.deleteContent(existingFlaggedContent);
-
-                        // If the very same book still exists in the DB at this point, it means it's present in the queue
-                        // => don't import it even though it has a JSON file; it has been re-queued after being downloaded or viewed once
-                        Content existingDuplicate = dao.selectContentBySourceAndUrl(content.getSite(), content.getUrl());
-                        if (existingDuplicate != null && !existingDuplicate.isFlaggedForDeletion()) {
-                            booksKO++;
-                            trace(Log.INFO, STEP_2_BOOK_FOLDERS, log, "Import book KO! (already in queue) : %s", bookFolder.getUri().toString());
-                            continue;
-                        }
-
-                        List<ImageFile> contentImages;
-                        if (content.getImageFiles() != null)
-                            contentImages = content.getImageFiles();
-                        else contentImages = new ArrayList<>();
-
-                        if (rename) {
-                            String canonicalBookFolderName = ContentHelper.formatBookFolderName(content);
-
-                            List<String> currentPathParts = bookFolder.getUri().getPathSegments();
-                            String[] bookUriParts = currentPathParts.get(currentPathParts.size() - 1).split(":");
-                            String[] bookPathParts = bookUriParts[bookUriParts.length - 1].split("/");
-                            String bookFolderName = bookPathParts[bookPathParts.length - 1];
-
-                            if (!canonicalBookFolderName.equalsIgnoreCase(bookFolderName)) {
-                                if (renameFolder(bookFolder, content, client, canonicalBookFolderName)) {
-                                    trace(Log.INFO, STEP_2_BOOK_FOLDERS, log, "[Rename OK] Folder %s renamed to %s", bookFolderName, canonicalBookFolderName);
-                                } else {
-                                    trace(Log.WARN, STEP_2_BOOK_FOLDERS, log, "[Rename KO] Could not rename file %s to %s", bookFolderName, canonicalBookFolderName);
-                                }
-                            }
-                        }
-
-                        // Attach file Uri's to the book's images
-                        List<DocumentFile> imageFiles = FileHelper.listFiles(this, bookFolder, client, imageNames);
-                        if (!imageFiles.isEmpty()) { // No images described in the JSON -> recreate them
-                            if (contentImages.isEmpty()) {
-                                contentImages = ContentHelper.createImageListFromFiles(imageFiles);
-                                content.setImageFiles(contentImages);
-                                content.getCover().setUrl(content.getCoverImageUrl());
-                            } else { // Existing images described in the JSON -> map them
-                                contentImages = ContentHelper.matchFilesToImageList(imageFiles, contentImages);
-                                // If no cover is defined, get it too
-                                if (StatusContent.UNHANDLED_ERROR == content.getCover().getStatus()) {
-                                    Optional<DocumentFile> file = Stream.of(imageFiles).filter(f -> f.getName() != null && f.getName().startsWith(Consts.THUMB_FILE_NAME)).findFirst();
-                                    if (file.isPresent()) {
-                                        ImageFile cover = new ImageFile(0, content.getCoverImageUrl(), StatusContent.DOWNLOADED, content.getQtyPages());
-                                        cover.setName(Consts.THUMB_FILE_NAME);
-                                        cover.setFileUri(file.get().getUri().toString());
-                                        cover.setIsCover(true);
-                                        contentImages.add(0, cover);
-                                    }
-                                }
-                                content.setImageFiles(contentImages);
-                            }
-                        }
-
-                        // If content has an external-library tag, remove it because we're importing for the primary library now
-                        ImportHelper.removeExternalAttribute(content);
-
-                        content.computeSize();
-                        ContentHelper.addContent(this, dao, content);
-                        trace(Log.INFO, STEP_2_BOOK_FOLDERS, log, "Import book OK : %s", bookFolder.getUri().toString());
-                    } else { // JSON not found
-                        List<DocumentFile> subfolders = FileHelper.listFolders(this, bookFolder, client);
-                        if (!subfolders.isEmpty()) // Folder doesn't contain books but contains subdirectories
-                        {
-                            bookFolders.addAll(subfolders);
-                            trace(Log.INFO, STEP_2_BOOK_FOLDERS, log, "Subfolders found in : %s", bookFolder.getUri().toString());
-                            nbFolders++;
-                            continue;
-                        } else { // No JSON nor any subdirectory
-                            trace(Log.WARN, STEP_2_BOOK_FOLDERS, log, "Import book KO! (no JSON found) : %s", bookFolder.getUri().toString());
-                            // Deletes the folder if cleanup is active
-                            if (cleanNoJSON) {
-                                boolean success = bookFolder.delete();
-                                trace(Log.INFO, STEP_2_BOOK_FOLDERS, log, "[Remove no JSON %s] Folder %s", success ? "OK" : "KO", bookFolder.getUri().toString());
-                            }
-                        }
-                    }
-
-                    if (null == content) booksKO++;
-                    else booksOK++;
-                } catch (ParseException jse) {
-                    // If the book is still present in the DB, regenerate the JSON and unflag the book
-                    if (existingFlaggedContent != null) {
-                        try {
-                            DocumentFile newJson = JsonHelper.jsonToFile(this, JsonContent.fromEntity(existingFlaggedContent), JsonContent.class, bookFolder);
-                            existingFlaggedContent.setJsonUri(newJson.getUri().toString());
-                            existingFlaggedContent.setFlaggedForDeletion(false);
-                            dao.insertContent(existingFlaggedContent);
-                            trace(Log.INFO, STEP_2_BOOK_FOLDERS, log, "Import book OK (JSON regenerated) : %s", bookFolder.getUri().toString());
-                            booksOK++;
-                        } catch (IOException ioe) {
-                            Timber.w(ioe);
-                            trace(Log.ERROR, STEP_2_BOOK_FOLDERS, log, "Import book ERROR while regenerating JSON : %s for Folder %s", jse.getMessage(), bookFolder.getUri().toString());
-                            booksKO++;
-                        }
-                    } else { // If not, rebuild the book and regenerate the JSON according to stored data
-                        try {
-                            List<String> parentFolder = new ArrayList<>();
-                            // Try and detect the site according to the parent folder
-                            String[] parents = bookFolder.getUri().getPath().split("/"); // _not_ File.separator but the universal Uri separator
-                            if (parents.length > 1) {
-                                for (Site s : Site.values())
-                                    if (parents[parents.length - 2].equalsIgnoreCase(s.getFolder())) {
-                                        parentFolder.add(s.getFolder());
-                                        break;
-                                    }
-                            }
-                            // Scan the folder
-                            Content storedContent = ImportHelper.scanBookFolder(this, bookFolder, client, parentFolder, StatusContent.DOWNLOADED, dao, null, null);
-                            DocumentFile newJson = JsonHelper.jsonToFile(this, JsonContent.fromEntity(storedContent), JsonContent.class, bookFolder);
-                            storedContent.setJsonUri(newJson.getUri().toString());
-                            ContentHelper.addContent(this, dao, storedContent);
-                            trace(Log.INFO, STEP_2_BOOK_FOLDERS, log, "Import book OK (Content regenerated) : %s", bookFolder.getUri().toString());
-                            booksOK++;
-                        } catch (IOException ioe) {
-                            Timber.w(ioe);
-                            trace(Log.ERROR, STEP_2_BOOK_FOLDERS, log, "Import book ERROR while regenerating Content : %s for Folder %s", jse.getMessage(), bookFolder.getUri().toString());
-                            booksKO++;
-                        }
+                while (batch.size() < DB_BATCH_SIZE && (processedFolder = processedFolders.poll()) != null);
+
+                dao.runInTransaction(() -> {
+                    for (BookFolderResult result : batch)
+                        commitBookFolder(result, dao, unchangedContentIds, log);
+                });
+
+                for (BookFolderResult result : batch) {
+                    if (BookFolderResult.Type.SUBFOLDERS == result.type) {
+                        // Folder doesn't contain books but contains subdirectories
+                        bookFolders.addAll(result.subfolders);
+                        nbFolders++;
+                        continue;
                     }
-                } catch (Exception e) {
-                    Timber.w(e);
-                    if (null == content)
-                        content = new Content().setTitle("none").setSite(Site.NONE).setUrl("");
-                    booksKO++;
-                    trace(Log.ERROR, STEP_2_BOOK_FOLDERS, log, "Import book ERROR : %s for Folder %s", e.getMessage(), bookFolder.getUri().toString());
+                    if (result.success) booksOK++;
+                    else booksKO++;
+                    String bookName = (null == result.folder.getName()) ? "" : result.folder.getName();
+                    notificationManager.notify(new ImportProgressNotification(bookName, booksOK + booksKO, bookFolders.size() - nbFolders));
+                    eventProgress(STEP_3_BOOKS, bookFolders.size() - nbFolders, booksOK, booksKO);
                 }
-                String bookName = (null == bookFolder.getName()) ? "" : bookFolder.getName();
-                notificationManager.notify(new ImportProgressNotification(bookName, booksOK + booksKO, bookFolders.size() - nbFolders));
-                eventProgress(STEP_3_BOOKS, bookFolders.size() - nbFolders, booksOK, booksKO);
             }
             trace(Log.INFO, STEP_3_BOOKS, log, "Import books complete - %s OK; %s KO; %s final count", booksOK + "", booksKO + "", bookFolders.size() - nbFolders + "");
             eventComplete(STEP_3_BOOKS, bookFolders.size(), booksOK, booksKO, null);
@@ -368,18 +308,34 @@ public class ImportService extends IntentService {
             DocumentFile queueFile = FileHelper.findFile(this, rootFolder, client, Consts.QUEUE_JSON_FILE_NAME);
             if (queueFile != null) importQueue(queueFile, dao, log);
             else trace(Log.INFO, STEP_4_QUEUE, log, "No queue file found");
+            isComplete = true;
+        } catch (InterruptedException e) {
+            Timber.w(e);
+            Thread.currentThread().interrupt();
         } finally {
+            // Wait for the folders being processed before cleaning up
+            if (executor != null) shutdown(executor);
+            for (ContentProviderClient extraClient : extraClients) releaseClient(extraClient);
+            if (index != null) {
+                try {
+                    index.close();
+                } catch (IOException e) {
+                    Timber.w(e);
+                }
+            }
+
             // Write log in root folder
             DocumentFile logFile = LogUtil.writeLog(this, buildLogInfo(rename || cleanNoJSON || cleanNoImages, log));
 
-            // ContentProviderClient.close only available on API level 24+
-            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N)
-                client.close();
-            else
-                client.release();
+            releaseClient(client);
 
+            // Unchanged books have been kept as they are
+            if (!unchangedContentIds.isEmpty())
+                dao.unflagContents(Helper.getPrimitiveLongArrayFromList(unchangedContentIds));
             dao.deleteAllFlaggedBooks(true);
             dao.deleteAllFlaggedGroups();
+            // Rebuild the library index from scratch to get rid of superseded and obsolete entries
+            if (isComplete) LibraryIndex.rewrite(this, dao);
             dao.cleanup();
 
             eventComplete(STEP_4_QUEUE, bookFolders.size(), booksOK, booksKO, logFile);
@@ -399,6 +355,286 @@ public class ImportService extends IntentService {
         return logInfo;
     }
 
+    private static void releaseClient(@NonNull final ContentProviderClient client) {
+        // ContentProviderClient.close only available on API level 24+
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N)
+            client.close();
+        else
+            client.release();
+    }
+
+    private static void shutdown(@NonNull final ExecutorService executor) {
+        executor.shutdownNow();
+        try {
+            if (!executor.awaitTermination(1, TimeUnit.MINUTES))
+                Timber.w("Book folder processing threads didn't terminate");
+        } catch (InterruptedException e) {
+            Timber.w(e);
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Sort the given book folders to process the folders indexed in the library index first, in the order of the index
+     *
+     * @param bookFolders Book folders to sort
+     * @param rootFolder  Root folder of the library
+     * @param index       Library index to use
+     */
+    private static void sortByIndex(@NonNull final List<DocumentFile> bookFolders, @NonNull final DocumentFile rootFolder, @NonNull final LibraryIndex.Reader index) {
+        Map<DocumentFile, Integer> ordinals = new HashMap<>();
+        for (DocumentFile f : bookFolders) {
+            String path = LibraryIndex.getRelativePath(rootFolder.getUri(), f.getUri());
+            int ordinal = (null == path) ? -1 : index.getOrdinal(path);
+            ordinals.put(f, (ordinal < 0) ? Integer.MAX_VALUE : ordinal);
+        }
+        // Stable sort : folders that aren't indexed keep their relative order
+        Collections.sort(bookFolders, (f1, f2) -> Integer.compare(ordinals.get(f1), ordinals.get(f2)));
+    }
+
+    @Nullable
+    private static JsonLibraryIndexEntry readIndexEntry(@Nullable final LibraryIndex.Reader index, @NonNull final DocumentFile rootFolder, @NonNull final DocumentFile bookFolder) {
+        if (null == index) return null;
+        String path = LibraryIndex.getRelativePath(rootFolder.getUri(), bookFolder.getUri());
+        return (null == path) ? null : index.read(path);
+    }
+
+    /**
+     * Read the given book folder and build the corresponding book, without writing anything to the DB
+     * <p>
+     * Runs on the folder processing threads; the result has to be committed with {@link #commitBookFolder(BookFolderResult, CollectionDAO, List, List)}
+     *
+     * @param bookFolder    Folder to process
+     * @param indexEntry    Entry of the folder in the library index, if any; used instead of the folder's JSON file if the folder hasn't changed since it was indexed
+     * @param client        ContentProviderClient to use; has to be used by the calling thread only
+     * @param dao           DAO to use
+     * @param rename        True if the folder has to be renamed according to the book it contains
+     * @param cleanNoJSON   True if the folder has to be removed if it contains no JSON nor any subfolder
+     * @param cleanNoImages True if the folder has to be removed if it contains no image nor any subfolder
+     * @param skipUnchanged True if the book has to be kept as it is if its folder hasn't changed since it was imported
+     * @param log           Log to write to
+     * @return Result of the processing of the given folder
+     */
+    private BookFolderResult processBookFolder(
+            @NonNull final DocumentFile bookFolder,
+            @Nullable final JsonLibraryIndexEntry indexEntry,
+            @NonNull final ContentProviderClient client,
+            @NonNull final CollectionDAO dao,
+            boolean rename,
+            boolean cleanNoJSON,
+            boolean cleanNoImages,
+            boolean skipUnchanged,
+            @NonNull final List<LogUtil.LogEntry> log) {
+        final FileHelper.NameFilter imageNames = displayName -> ImageHelper.isImageExtensionSupported(FileHelper.getExtension(displayName));
+        BookFolderResult result = new BookFolderResult(bookFolder);
+
+        // Detect the presence of images if the corresponding cleanup option has been enabled
+        if (cleanNoImages) {
+            List<DocumentFile> imageFiles = FileHelper.listFiles(this, bookFolder, client, imageNames);
+            List<DocumentFile> subfolders = FileHelper.listFolders(this, bookFolder, client);
+            if (imageFiles.isEmpty() && subfolders.isEmpty()) { // No supported images nor subfolders
+                boolean success = bookFolder.delete();
+                trace(Log.INFO, STEP_1, log, "[Remove no image %s] Folder %s", success ? "OK" : "KO", bookFolder.getUri().toString());
+                return result;
+            }
+        }
+
+        // Find the corresponding flagged book in the library
+        Content existingFlaggedContent = dao.selectContentByFolderUri(bookFolder.getUri().toString(), true);
+        result.existingFlaggedContent = existingFlaggedContent;
+
+        // Keep the book as it is if its folder hasn't changed since it was imported
+        String fingerprint = FileHelper.getFolderFingerprint(bookFolder, client, Consts.JSON_FILE_NAME_V2);
+        if (skipUnchanged && fingerprint != null && existingFlaggedContent != null && fingerprint.equals(existingFlaggedContent.getFolderFingerprint())) {
+            result.type = BookFolderResult.Type.UNCHANGED;
+            return result;
+        }
+
+        // Detect JSON and try to parse it
+        try {
+            Content content = null;
+            if (indexEntry != null && fingerprint != null && fingerprint.equals(indexEntry.getFingerprint()))
+                content = importIndexEntry(indexEntry, bookFolder, client, dao);
+            if (null == content) content = importJson(bookFolder, client, dao);
+            if (content != null) {
+                // Don't bother processing books that are already present in the queue
+                // (the DB is checked again when the book is committed)
+                Content existingDuplicate = dao.selectContentBySourceAndUrl(content.getSite(), content.getUrl());
+                if (existingDuplicate != null && !existingDuplicate.isFlaggedForDeletion()) {
+                    trace(Log.INFO, STEP_2_BOOK_FOLDERS, log, "Import book KO! (already in queue) : %s", bookFolder.getUri().toString());
+                    return result;
+                }
+
+                List<ImageFile> contentImages;
+                if (content.getImageFiles() != null)
+                    contentImages = content.getImageFiles();
+                else contentImages = new ArrayList<>();
+
+                if (rename) {
+                    String canonicalBookFolderName = ContentHelper.formatBookFolderName(content);
+
+                    List<String> currentPathParts = bookFolder.getUri().getPathSegments();
+                    String[] bookUriParts = currentPathParts.get(currentPathParts.size() - 1).split(":");
+                    String[] bookPathParts = bookUriParts[bookUriParts.length - 1].split("/");
+                    String bookFolderName = bookPathParts[bookPathParts.length - 1];
+
+                    if (!canonicalBookFolderName.equalsIgnoreCase(bookFolderName)) {
+                        if (renameFolder(bookFolder, content, client, canonicalBookFolderName)) {
+                            trace(Log.INFO, STEP_2_BOOK_FOLDERS, log, "[Rename OK] Folder %s renamed to %s", bookFolderName, canonicalBookFolderName);
+                        } else {
+                            trace(Log.WARN, STEP_2_BOOK_FOLDERS, log, "[Rename KO] Could not rename file %s to %s", bookFolderName, canonicalBookFolderName);
+                        }
+                    }
+                }
+
+                // Attach file Uri's to the book's images
+                List<DocumentFile> imageFiles = FileHelper.listFiles(this, bookFolder, client, imageNames);
+                if (!imageFiles.isEmpty()) { // No images described in the JSON -> recreate them
+                    if (contentImages.isEmpty()) {
+                        contentImages = ContentHelper.createImageListFromFiles(imageFiles);
+                        content.setImageFiles(contentImages);
+                        content.getCover().setUrl(content.getCoverImageUrl());
+                    } else { // Existing images described in the JSON -> map them
+                        contentImages = ContentHelper.matchFilesToImageList(imageFiles, contentImages);
+                        // If no cover is defined, get it too
+                        if (StatusContent.UNHANDLED_ERROR == content.getCover().getStatus()) {
+                            Optional<DocumentFile> file = Stream.of(imageFiles).filter(f -> f.getName() != null && f.getName().startsWith(Consts.THUMB_FILE_NAME)).findFirst();
+                            if (file.isPresent()) {
+                                ImageFile cover = new ImageFile(0, content.getCoverImageUrl(), StatusContent.DOWNLOADED, content.getQtyPages());
+                                cover.setName(Consts.THUMB_FILE_NAME);
+                                cover.setFileUri(file.get().getUri().toString());
+                                cover.setIsCover(true);
+                                contentImages.add(0, cover);
+                            }
+                        }
+                        content.setImageFiles(contentImages);
+                    }
+                }
+
+                // If content has an external-library tag, remove it because we're importing for the primary library now
+                ImportHelper.removeExternalAttribute(content);
+
+                content.computeSize();
+                content.setFolderFingerprint(fingerprint);
+                result.type = BookFolderResult.Type.NEW_CONTENT;
+                result.content = content;
+            } else { // JSON not found
+                List<DocumentFile> subfolders = FileHelper.listFolders(this, bookFolder, client);
+                if (!subfolders.isEmpty()) // Folder doesn't contain books but contains subdirectories
+                {
+                    trace(Log.INFO, STEP_2_BOOK_FOLDERS, log, "Subfolders found in : %s", bookFolder.getUri().toString());
+                    result.type = BookFolderResult.Type.SUBFOLDERS;
+                    result.subfolders = subfolders;
+                } else { // No JSON nor any subdirectory
+                    trace(Log.WARN, STEP_2_BOOK_FOLDERS, log, "Import book KO! (no JSON found) : %s", bookFolder.getUri().toString());
+                    // Deletes the folder if cleanup is active
+                    if (cleanNoJSON) {
+                        boolean success = bookFolder.delete();
+                        trace(Log.INFO, STEP_2_BOOK_FOLDERS, log, "[Remove no JSON %s] Folder %s", success ? "OK" : "KO", bookFolder.getUri().toString());
+                    }
+                }
+            }
+        } catch (ParseException jse) {
+            // If the book is still present in the DB, regenerate the JSON and unflag the book
+            if (existingFlaggedContent != null) {
+                try {
+                    DocumentFile newJson = JsonHelper.jsonToFile(this, JsonContent.fromEntity(existingFlaggedContent), JsonContent.class, bookFolder);
+                    existingFlaggedContent.setJsonUri(newJson.getUri().toString());
+                    result.type = BookFolderResult.Type.REGENERATED_JSON;
+                } catch (IOException ioe) {
+                    Timber.w(ioe);
+                    trace(Log.ERROR, STEP_2_BOOK_FOLDERS, log, "Import book ERROR while regenerating JSON : %s for Folder %s", jse.getMessage(), bookFolder.getUri().toString());
+                }
+            } else { // If not, rebuild the book and regenerate the JSON according to stored data
+                try {
+                    List<String> parentFolder = new ArrayList<>();
+                    // Try and detect the site according to the parent folder
+                    String[] parents = bookFolder.getUri().getPath().split("/"); // _not_ File.separator but the universal Uri separator
+                    if (parents.length > 1) {
+                        for (Site s : Site.values())
+                            if (parents[parents.length - 2].equalsIgnoreCase(s.getFolder())) {
+                                parentFolder.add(s.getFolder());
+                                break;
+                            }
+                    }
+                    // Scan the folder
+                    Content storedContent = ImportHelper.scanBookFolder(this, bookFolder, client, parentFolder, StatusContent.DOWNLOADED, dao, null, null);
+                    DocumentFile newJson = JsonHelper.jsonToFile(this, JsonContent.fromEntity(storedContent), JsonContent.class, bookFolder);
+                    storedContent.setJsonUri(newJson.getUri().toString());
+                    result.type = BookFolderResult.Type.REGENERATED_CONTENT;
+                    result.content = storedContent;
+                } catch (IOException ioe) {
+                    Timber.w(ioe);
+                    trace(Log.ERROR, STEP_2_BOOK_FOLDERS, log, "Import book ERROR while regenerating Content : %s for Folder %s", jse.getMessage(), bookFolder.getUri().toString());
+                }
+            }
+        } catch (Exception e) {
+            Timber.w(e);
+            trace(Log.ERROR, STEP_2_BOOK_FOLDERS, log, "Import book ERROR : %s for Folder %s", e.getMessage(), bookFolder.getUri().toString());
+        }
+        return result;
+    }
+
+    /**
+     * Commit the given processed book folder to the DB
+     * <p>
+     * Runs on the import thread only, in order to keep duplicate detection consistent
+     *
+     * @param result              Processed book folder to commit; its success flag is updated by this call
+     * @param dao                 DAO to use
+     * @param unchangedContentIds IDs of the books that are kept as they are; updated by this call
+     * @param log                 Log to write to
+     */
+    private void commitBookFolder(
+            @NonNull final BookFolderResult result,
+            @NonNull final CollectionDAO dao,
+            @NonNull final List<Long> unchangedContentIds,
+            @NonNull final List<LogUtil.LogEntry> log) {
+        String folderUri = result.folder.getUri().toString();
+        try {
+            switch (result.type) {
+                case UNCHANGED:
+                    unchangedContentIds.add(result.existingFlaggedContent.getId());
+                    trace(Log.DEBUG, STEP_2_BOOK_FOLDERS, log, "Import book skipped (unchanged) : %s", folderUri);
+                    result.success = true;
+                    break;
+                case NEW_CONTENT:
+                    // If the book exists and is flagged for deletion, delete it to make way for a new import (as intended)
+                    if (result.existingFlaggedContent != null)
+                        dao.deleteContent(result.existingFlaggedContent);
+
+                    // If the very same book still exists in the DB at this point, it means it's present in the queue
+                    // => don't import it even though it has a JSON file; it has been re-queued after being downloaded or viewed once
+                    Content existingDuplicate = dao.selectContentBySourceAndUrl(result.content.getSite(), result.content.getUrl());
+                    if (existingDuplicate != null && !existingDuplicate.isFlaggedForDeletion()) {
+                        trace(Log.INFO, STEP_2_BOOK_FOLDERS, log, "Import book KO! (already in queue) : %s", folderUri);
+                        break;
+                    }
+
+                    ContentHelper.addContent(this, dao, result.content);
+                    trace(Log.INFO, STEP_2_BOOK_FOLDERS, log, "Import book OK : %s", folderUri);
+                    result.success = true;
+                    break;
+                case REGENERATED_JSON:
+                    result.existingFlaggedContent.setFlaggedForDeletion(false);
+                    dao.insertContent(result.existingFlaggedContent);
+                    trace(Log.INFO, STEP_2_BOOK_FOLDERS, log, "Import book OK (JSON regenerated) : %s", folderUri);
+                    result.success = true;
+                    break;
+                case REGENERATED_CONTENT:
+                    ContentHelper.addContent(this, dao, result.content);
+                    trace(Log.INFO, STEP_2_BOOK_FOLDERS, log, "Import book OK (Content regenerated) : %s", folderUri);
+                    result.success = true;
+                    break;
+                default:
+                    // Nothing to commit
+            }
+        } catch (Exception e) {
+            Timber.w(e);
+            trace(Log.ERROR, STEP_2_BOOK_FOLDERS, log, "Import book ERROR : %s for Folder %s", e.getMessage(), folderUri);
+        }
+    }
+
     private boolean renameFolder(@NonNull DocumentFile folder, @NonNull final Content content, @NonNull ContentProviderClient client, @NonNull final String newName) {
         try {
             if (folder.renameTo(newName)) {
@@ -421,22 +657,20 @@ public class ImportService extends IntentService {
         eventProgress(STEP_4_QUEUE, -1, 0, 0);
         JsonContentCollection contentCollection = deserialiseCollectionJson(queueFile);
         if (null != contentCollection) {
-            int queueSize = (int) dao.countAllQueueBooks();
             List<Content> queuedContent = contentCollection.getQueue();
             eventProgress(STEP_4_QUEUE, queuedContent.size(), 0, 0);
             trace(Log.INFO, STEP_4_QUEUE, log, "Queue JSON deserialized : %s books detected", queuedContent.size() + "");
-            List<QueueRecord> lst = new ArrayList<>();
+            List<Long> newContentIds = new ArrayList<>();
             int count = 1;
             for (Content c : queuedContent) {
                 // Only add at the end of the queue if it isn't a duplicate
                 Content duplicate = dao.selectContentBySourceAndUrl(c.getSite(), c.getUrl());
                 if (null == duplicate) {
-                    long newContentId = ContentHelper.addContent(this, dao, c);
-                    lst.add(new QueueRecord(newContentId, queueSize++));
+                    newContentIds.add(ContentHelper.addContent(this, dao, c));
                 }
                 eventProgress(STEP_4_QUEUE, queuedContent.size(), count++, 0);
             }
-            dao.updateQueue(lst);
+            dao.insertQueueAtBottom(newContentIds);
             trace(Log.INFO, STEP_4_QUEUE, log, "Import queue succeeded");
         } else {
             trace(Log.INFO, STEP_4_QUEUE, log, "Import queue failed : Queue JSON unreadable");
@@ -497,6 +731,39 @@ public class ImportService extends IntentService {
         return null;
     }
 
+    /**
+     * Build the book described by the given library index entry
+     *
+     * @param entry  Library index entry of the given folder
+     * @param folder Book folder the given entry describes
+     * @param client ContentProviderClient to use
+     * @param dao    DAO to use
+     * @return Book described by the given entry; null if its JSON file can't be found anymore
+     */
+    @Nullable
+    private Content importIndexEntry(
+            @NonNull final JsonLibraryIndexEntry entry,
+            @NonNull final DocumentFile folder,
+            @NonNull final ContentProviderClient client,
+            @NonNull final CollectionDAO dao) {
+        DocumentFile json = FileHelper.findFile(this, folder, client, Consts.JSON_FILE_NAME_V2);
+        if (null == json || null == entry.getContent()) return null;
+
+        Content result;
+        // Books may create the custom groups they belong to; avoid creating the same group twice
+        synchronized (groupCreationLock) {
+            result = entry.getContent().toEntity(dao);
+        }
+        result.setJsonUri(json.getUri().toString());
+        result.setStorageUri(folder.getUri().toString());
+
+        if (result.getStatus() != StatusContent.DOWNLOADED
+                && result.getStatus() != StatusContent.ERROR) {
+            result.setStatus(StatusContent.MIGRATED);
+        }
+        return result;
+    }
+
     @SuppressWarnings({"deprecation", "squid:CallToDeprecatedMethod"})
     private static List<Attribute> from(List<URLBuilder> urlBuilders, Site site) {
         List<Attribute> attributes = null;
@@ -613,7 +880,11 @@ public class ImportService extends IntentService {
             @NonNull final CollectionDAO dao) throws ParseException {
         try {
             JsonContent content = JsonHelper.jsonToObject(this, json, JsonContent.class);
-            Content result = content.toEntity(dao);
+            Content result;
+            // Books may create the custom groups they belong to; avoid creating the same group twice
+            synchronized (groupCreationLock) {
+                result = content.toEntity(dao);
+            }
             result.setJsonUri(json.getUri().toString());
             result.setStorageUri(parentFolder.getUri().toString());
 
@@ -628,4 +899,31 @@ public class ImportService extends IntentService {
             throw new ParseException("Error reading JSON (v2) file : " + e.getMessage(), e);
         }
     }
+
+    /**
+     * Result of the processing of a book folder, waiting to be committed to the DB
+     */
+    private static class BookFolderResult {
+
+        enum Type {
+            KO,                 // Nothing to import
+            UNCHANGED,          // Book is kept as it is
+            NEW_CONTENT,        // Book has been read from its JSON
+            REGENERATED_JSON,   // JSON has been regenerated from the book in the DB
+            REGENERATED_CONTENT,// Book has been rebuilt from the folder's contents
+            SUBFOLDERS          // Folder contains subfolders to process
+        }
+
+        final DocumentFile folder;
+        Type type = Type.KO;
+        Content content;
+        Content existingFlaggedContent;
+        List<DocumentFile> subfolders;
+        // True if the book has been successfully committed
+        boolean success = false;
+
+        BookFolderResult(@NonNull final DocumentFile folder) {
+            this.folder = folder;
+        }
+    }
 }
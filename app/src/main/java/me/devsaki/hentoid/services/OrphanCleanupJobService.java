@@ -0,0 +1,89 @@
+package me.devsaki.hentoid.services;
+
+import android.app.job.JobInfo;
+import android.app.job.JobParameters;
+import android.app.job.JobScheduler;
+import android.app.job.JobService;
+import android.content.ComponentName;
+import android.content.Context;
+
+import androidx.annotation.NonNull;
+
+import java.util.concurrent.TimeUnit;
+
+import io.reactivex.Observable;
+import io.reactivex.disposables.Disposable;
+import io.reactivex.disposables.Disposables;
+import io.reactivex.schedulers.Schedulers;
+import me.devsaki.hentoid.database.CollectionDAO;
+import me.devsaki.hentoid.database.DatabaseMaintenance;
+import me.devsaki.hentoid.database.ObjectBoxDAO;
+import me.devsaki.hentoid.util.FileHelper;
+import timber.log.Timber;
+
+/**
+ * Job responsible for removing database records that aren't reachable anymore
+ * <p>
+ * Runs periodically, when the device is idle and charging
+ * NB : Removed records free space that the database reuses for new records, but don't shrink the database file
+ */
+public class OrphanCleanupJobService extends JobService {
+
+    private static final int JOB_ID = 1;
+    private static final long PERIOD_MS = TimeUnit.DAYS.toMillis(1);
+
+    private Disposable disposable = Disposables.empty();
+
+
+    /**
+     * Schedule the job, unless it is already scheduled
+     *
+     * @param context Context to use
+     */
+    public static void schedule(@NonNull Context context) {
+        JobScheduler scheduler = (JobScheduler) context.getSystemService(Context.JOB_SCHEDULER_SERVICE);
+        if (null == scheduler) return;
+
+        for (JobInfo job : scheduler.getAllPendingJobs())
+            if (JOB_ID == job.getId()) return;
+
+        JobInfo job = new JobInfo.Builder(JOB_ID, new ComponentName(context, OrphanCleanupJobService.class))
+                .setRequiresDeviceIdle(true)
+                .setRequiresCharging(true)
+                .setPeriodic(PERIOD_MS)
+                .build();
+        if (JobScheduler.RESULT_SUCCESS != scheduler.schedule(job))
+            Timber.w("Orphan cleanup job : scheduling failed");
+    }
+
+    @Override
+    public boolean onStartJob(JobParameters params) {
+        CollectionDAO dao = new ObjectBoxDAO(this);
+        long sizeBefore = dao.getDbSizeBytes();
+        Timber.i("Orphan cleanup job : start; database size %s", FileHelper.formatHumanReadableSize(sizeBefore));
+
+        disposable = Observable.concat(DatabaseMaintenance.getOrphanCleanupTasks(this))
+                .ignoreElements()
+                .subscribeOn(Schedulers.io())
+                .doFinally(dao::cleanup)
+                .subscribe(
+                        () -> {
+                            long sizeAfter = dao.getDbSizeBytes();
+                            Timber.i("Orphan cleanup job : done; database size %s -> %s", FileHelper.formatHumanReadableSize(sizeBefore), FileHelper.formatHumanReadableSize(sizeAfter));
+                            jobFinished(params, false);
+                        },
+                        t -> {
+                            Timber.e(t, "Orphan cleanup job : failed");
+                            jobFinished(params, false);
+                        }
+                );
+        return true; // Work goes on in the background
+    }
+
+    @Override
+    public boolean onStopJob(JobParameters params) {
+        // Device isn't idle or charging anymore; try again at the next period
+        disposable.dispose();
+        return false;
+    }
+}
@@ -7,20 +7,25 @@ import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 import androidx.documentfile.provider.DocumentFile;
 
-import com.annimon.stream.Stream;
 import com.github.junrar.Archive;
 import com.github.junrar.exception.RarException;
 import com.github.junrar.rarfile.FileHeader;
 
 import java.io.BufferedInputStream;
 import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.io.OutputStream;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.zip.CRC32;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipInputStream;
 import java.util.zip.ZipOutputStream;
@@ -43,6 +48,9 @@ public class ArchiveHelper {
     private static FileHelper.NameFilter archiveNamesFilter;
 
     private static final int BUFFER = 32 * 1024;
+    // Maximum size of the files that are buffered in memory to be stored into ZIP archives
+    // NB : Several archives can be built at the same time; larger files are read twice instead
+    private static final int MAX_STORED_IN_MEMORY = 1024 * 1024;
 
 
     /**
@@ -101,12 +109,35 @@ public class ArchiveHelper {
             if (bis.read(header) < header.length) return Collections.emptyList();
             bis.reset();
             String mimeType = getMimeTypeFromArchiveBinary(header);
-            if (mimeType.equals(ZIP_MIME_TYPE)) return getZipEntries(bis);
-            else if (mimeType.equals(RAR_MIME_TYPE)) return getRarEntries(bis);
+            if (mimeType.equals(ZIP_MIME_TYPE)) {
+                List<ArchiveEntry> entries = getZipEntriesRandomAccess(context, file.getUri());
+                return (entries != null) ? entries : getZipEntries(bis);
+            } else if (mimeType.equals(RAR_MIME_TYPE)) return getRarEntries(bis);
             else return Collections.emptyList();
         }
     }
 
+    /**
+     * List the entries of the given ZIP archive by reading its central directory only
+     *
+     * @param context Context to use
+     * @param uri     Uri of the archive to list the entries of
+     * @return Entries of the given archive; null if the archive can't be accessed randomly
+     */
+    @Nullable
+    private static List<ArchiveEntry> getZipEntriesRandomAccess(@NonNull final Context context, @NonNull final Uri uri) {
+        try (SeekableZipReader reader = SeekableZipReader.open(context, uri)) {
+            if (null == reader) return null;
+            List<ArchiveEntry> result = new ArrayList<>(reader.getEntries().size());
+            for (SeekableZipReader.Entry entry : reader.getEntries())
+                result.add(new ArchiveEntry(entry.name, entry.size));
+            return result;
+        } catch (IOException e) {
+            Timber.w(e, "Random access failed on %s; reading the whole archive instead", uri);
+            return null;
+        }
+    }
+
     // TODO doc
     private static List<ArchiveEntry> getZipEntries(@NonNull final BufferedInputStream bis) throws IOException {
         Helper.assertNonUiThread();
@@ -153,14 +184,137 @@ public class ArchiveHelper {
             if (bis.read(header) < header.length) return Collections.emptyList();
             bis.reset();
             String mimeType = getMimeTypeFromArchiveBinary(header);
-            if (mimeType.equals(ZIP_MIME_TYPE))
-                return extractZipEntries(bis, entriesToExtract, targetFolder, targetNames);
-            else if (mimeType.equals(RAR_MIME_TYPE))
+            if (mimeType.equals(ZIP_MIME_TYPE)) {
+                List<Uri> result = extractZipEntriesRandomAccess(context, file.getUri(), entriesToExtract, targetFolder, targetNames);
+                return (result != null) ? result : extractZipEntries(bis, entriesToExtract, targetFolder, targetNames);
+            } else if (mimeType.equals(RAR_MIME_TYPE))
                 return extractRarEntries(bis, entriesToExtract, targetFolder, targetNames);
             else return Collections.emptyList();
         }
     }
 
+    /**
+     * Extract the given entries of the given ZIP archive, seeking directly to each of them
+     *
+     * @param context          Context to use
+     * @param uri              Uri of the archive to extract entries from
+     * @param entriesToExtract Paths of the entries to extract (case-insensitive); null to extract all entries
+     * @param targetFolder     Folder to extract the entries to
+     * @param targetNames      Names of the extracted files (without extension), in the order of the given entries (or of the entries inside the archive if all are extracted); null to keep the names of the entries
+     * @return Uri's of the extracted files; null if the archive can't be accessed randomly
+     * @throws IOException If something horrible happens during I/O
+     */
+    @Nullable
+    private static List<Uri> extractZipEntriesRandomAccess(
+            @NonNull final Context context,
+            @NonNull final Uri uri,
+            @Nullable final List<String> entriesToExtract,
+            @NonNull final File targetFolder,
+            @Nullable final List<String> targetNames) throws IOException {
+        Map<String, Integer> entryNames = indexEntryNames(entriesToExtract);
+
+        List<Uri> result = new ArrayList<>();
+        int index = 0;
+        byte[] buffer = BufferPool.acquire();
+        try (SeekableZipReader reader = SeekableZipReader.open(context, uri)) {
+            if (null == reader) return null;
+            Map<String, File> existingFiles = indexFolder(targetFolder);
+            if (null == existingFiles) return result;
+            for (SeekableZipReader.Entry entry : reader.getEntries()) {
+                if (null != entryNames && !entryNames.containsKey(entry.name.toLowerCase(Locale.ROOT)))
+                    continue;
+
+                String fileName;
+                if (null == targetNames) {
+                    fileName = entry.name;
+                    int lastSeparator = fileName.lastIndexOf(File.separator);
+                    if (lastSeparator > -1) fileName = fileName.substring(lastSeparator + 1);
+                } else {
+                    fileName = targetNames.get(getTargetIndex(entryNames, entry.name, index++)) + "." + FileHelper.getExtension(entry.name);
+                }
+
+                File targetFile = getTargetFile(targetFolder, existingFiles, fileName);
+                int count;
+                try (InputStream input = reader.getInputStream(entry); OutputStream out = FileHelper.getOutputStream(targetFile)) {
+                    while ((count = input.read(buffer)) != -1)
+                        out.write(buffer, 0, count);
+                }
+                result.add(Uri.fromFile(targetFile));
+            }
+        } finally {
+            BufferPool.release(buffer);
+        }
+        return result;
+    }
+
+    /**
+     * Index the names of the given archive entries for case-insensitive lookups
+     *
+     * @param entries Paths of the archive entries to index; null to index nothing
+     * @return Positions of the given entries inside the given list, indexed by lower-case path; null if the given list is null
+     */
+    @Nullable
+    private static Map<String, Integer> indexEntryNames(@Nullable final List<String> entries) {
+        if (null == entries) return null;
+        Map<String, Integer> result = new HashMap<>(entries.size());
+        for (int i = 0; i < entries.size(); i++) result.put(entries.get(i).toLowerCase(Locale.ROOT), i);
+        return result;
+    }
+
+    /**
+     * Get the position of the target name of the given extracted entry
+     *
+     * @param entryNames     Index of the entries to extract (see {@link #indexEntryNames(List)}); null if all entries are extracted
+     * @param entryName      Path of the extracted entry
+     * @param extractedIndex Number of entries extracted before the given one
+     * @return Position of the target name of the given entry : its position inside the list of entries to extract if there's one;
+     * the number of entries extracted before it if not
+     */
+    private static int getTargetIndex(@Nullable final Map<String, Integer> entryNames, @NonNull final String entryName, int extractedIndex) {
+        if (null == entryNames) return extractedIndex;
+        Integer result = entryNames.get(entryName.toLowerCase(Locale.ROOT));
+        return (null == result) ? extractedIndex : result;
+    }
+
+    /**
+     * Index the files of the given folder by name for case-insensitive lookups
+     *
+     * @param folder Folder to index
+     * @return Files of the given folder indexed by lower-case name; null if the given folder can't be listed
+     */
+    @Nullable
+    private static Map<String, File> indexFolder(@NonNull final File folder) {
+        File[] files = folder.listFiles();
+        if (null == files) return null;
+        Map<String, File> result = new HashMap<>(files.length);
+        for (File f : files) result.put(f.getName().toLowerCase(Locale.ROOT), f);
+        return result;
+    }
+
+    /**
+     * Get the file with the given name (case-insensitive) inside the given folder; create it if it doesn't exist
+     *
+     * @param targetFolder  Folder to get the file from
+     * @param existingFiles Index of the files of the given folder (see {@link #indexFolder(File)}); updated when the file is created
+     * @param fileName      Name of the file
+     * @return File with the given name
+     * @throws IOException If the file can't be created
+     */
+    private static File getTargetFile(
+            @NonNull final File targetFolder,
+            @NonNull final Map<String, File> existingFiles,
+            @NonNull final String fileName) throws IOException {
+        String key = fileName.toLowerCase(Locale.ROOT);
+        File existing = existingFiles.get(key);
+        if (existing != null) return existing;
+
+        File targetFile = new File(targetFolder, fileName);
+        if (!targetFile.createNewFile() && !targetFile.exists())
+            throw new IOException("Could not create file " + targetFile.getPath());
+        existingFiles.put(key, targetFile);
+        return targetFile;
+    }
+
     // TODO doc
     private static List<Uri> extractZipEntries(
             @NonNull final BufferedInputStream bis,
@@ -171,12 +325,16 @@ public class ArchiveHelper {
         List<Uri> result = new ArrayList<>();
         int index = 0;
 
+        Map<String, Integer> entryNames = indexEntryNames(entriesToExtract);
+        Map<String, File> existingFiles = indexFolder(targetFolder);
+        if (null == existingFiles) return result;
+
+        byte[] buffer = BufferPool.acquire();
         try (ZipInputStream input = new ZipInputStream(bis)) {
-            byte[] buffer = new byte[BUFFER];
             ZipEntry entry = input.getNextEntry();
             while (entry != null) {
                 final ZipEntry theEntry = entry;
-                if (null == entriesToExtract || Stream.of(entriesToExtract).anyMatch(e -> e.equalsIgnoreCase(theEntry.getName()))) {
+                if (null == entryNames || entryNames.containsKey(theEntry.getName().toLowerCase(Locale.ROOT))) {
                     int count;
                     // TL;DR - We don't care about folders
                     // If we were coding an all-purpose extractor we would have to create folders
@@ -188,31 +346,21 @@ public class ArchiveHelper {
                         int lastSeparator = fileName.lastIndexOf(File.separator);
                         if (lastSeparator > -1) fileName = fileName.substring(lastSeparator + 1);
                     } else {
-                        fileName = targetNames.get(index++) + "." + FileHelper.getExtension(theEntry.getName());
+                        fileName = targetNames.get(getTargetIndex(entryNames, theEntry.getName(), index++)) + "." + FileHelper.getExtension(theEntry.getName());
                     }
-                    final String fileNameFinal = fileName;
-
-                    File targetFile;
-                    File[] existing = targetFolder.listFiles((dir, name) -> name.equalsIgnoreCase(fileNameFinal));
-                    if (existing != null) {
-                        if (0 == existing.length) {
-                            targetFile = new File(targetFolder.getAbsolutePath() + File.separator + fileName);
-                            if (!targetFile.createNewFile())
-                                throw new IOException("Could not create file " + targetFile.getPath());
-                        } else {
-                            targetFile = existing[0];
-                        }
-
-                        try (OutputStream out = FileHelper.getOutputStream(targetFile)) {
-                            while ((count = input.read(buffer)) != -1)
-                                out.write(buffer, 0, count);
-                        }
-                        result.add(Uri.fromFile(targetFile));
+
+                    File targetFile = getTargetFile(targetFolder, existingFiles, fileName);
+                    try (OutputStream out = FileHelper.getOutputStream(targetFile)) {
+                        while ((count = input.read(buffer)) != -1)
+                            out.write(buffer, 0, count);
                     }
+                    result.add(Uri.fromFile(targetFile));
                     input.closeEntry();
                 }
                 entry = input.getNextEntry();
             }
+        } finally {
+            BufferPool.release(buffer);
         }
         return result;
     }
@@ -227,10 +375,14 @@ public class ArchiveHelper {
         List<Uri> result = new ArrayList<>();
         int index = 0;
 
+        Map<String, Integer> entryNames = indexEntryNames(entriesToExtract);
+        Map<String, File> existingFiles = indexFolder(targetFolder);
+        if (null == existingFiles) return result;
+
+        byte[] buffer = BufferPool.acquire();
         try (Archive input = new Archive(bis)) {
-            byte[] buffer = new byte[BUFFER];
             for (final FileHeader fileHeader : input) {
-                if (null == entriesToExtract || Stream.of(entriesToExtract).anyMatch(e -> e.equalsIgnoreCase(fileHeader.getFileName()))) {
+                if (null == entryNames || entryNames.containsKey(fileHeader.getFileName().toLowerCase(Locale.ROOT))) {
                     int count;
                     // TL;DR - We don't care about folders
                     // If we were coding an all-purpose extractor we would have to create folders
@@ -242,63 +394,142 @@ public class ArchiveHelper {
                         int lastSeparator = fileName.lastIndexOf(File.separator);
                         if (lastSeparator > -1) fileName = fileName.substring(lastSeparator + 1);
                     } else {
-                        fileName = targetNames.get(index++) + "." + FileHelper.getExtension(fileHeader.getFileName());
+                        fileName = targetNames.get(getTargetIndex(entryNames, fileHeader.getFileName(), index++)) + "." + FileHelper.getExtension(fileHeader.getFileName());
                     }
-                    final String fileNameFinal = fileName;
-
-                    File targetFile;
-                    File[] existing = targetFolder.listFiles((dir, name) -> name.equalsIgnoreCase(fileNameFinal));
-                    if (existing != null) {
-                        if (0 == existing.length) {
-                            targetFile = new File(targetFolder.getAbsolutePath() + File.separator + fileName);
-                            if (!targetFile.createNewFile())
-                                throw new IOException("Could not create file " + targetFile.getPath());
-                        } else {
-                            targetFile = existing[0];
-                        }
-
-                        try (OutputStream out = FileHelper.getOutputStream(targetFile); InputStream entryInput = input.getInputStream(fileHeader)) {
-                            while ((count = entryInput.read(buffer)) != -1)
-                                out.write(buffer, 0, count);
-                        }
-                        result.add(Uri.fromFile(targetFile));
+
+                    File targetFile = getTargetFile(targetFolder, existingFiles, fileName);
+                    try (OutputStream out = FileHelper.getOutputStream(targetFile); InputStream entryInput = input.getInputStream(fileHeader)) {
+                        while ((count = entryInput.read(buffer)) != -1)
+                            out.write(buffer, 0, count);
                     }
+                    result.add(Uri.fromFile(targetFile));
                 }
             }
         } catch (RarException e) {
             Timber.w(e);
+        } finally {
+            BufferPool.release(buffer);
         }
         return result;
     }
 
     // ================= ZIP FILE CREATION
 
-    // TODO doc
+    /**
+     * Write a ZIP archive containing the given files to the given stream
+     * <p>
+     * Text files (e.g. JSON) are compressed; other files (i.e. pictures) are already compressed and are stored as is
+     *
+     * @param context Context to use
+     * @param files   Files to archive
+     * @param out     Stream to write the archive to; closed at the end of the operation
+     * @throws IOException If something horrible happens during I/O
+     */
     public static void zipFiles(@NonNull final Context context, @NonNull final List<DocumentFile> files, @NonNull final OutputStream out) throws IOException {
         Helper.assertNonUiThread();
-        try (ZipOutputStream zipOutputStream = new ZipOutputStream(new BufferedOutputStream(out))) {
-            final byte[] data = new byte[BUFFER];
-            for (DocumentFile file : files) addFile(context, file, zipOutputStream, data);
+        final byte[] data = BufferPool.acquire();
+        try (ZipOutputStream zipOutputStream = new ZipOutputStream(new BufferedOutputStream(out, BUFFER))) {
+            for (DocumentFile file : files) {
+                if (Thread.interrupted()) throw new InterruptedIOException("Archiving interrupted");
+                addFile(context, file, zipOutputStream, data);
+            }
             out.flush();
+        } finally {
+            BufferPool.release(data);
         }
     }
 
-    // TODO doc
+    /**
+     * Add the given file to the given ZIP stream
+     *
+     * @param context Context to use
+     * @param file    File to add
+     * @param stream  Stream to add the file to
+     * @param data    Buffer to use
+     * @throws IOException If something horrible happens during I/O
+     */
     private static void addFile(@NonNull final Context context,
                                 @NonNull final DocumentFile file,
                                 final ZipOutputStream stream,
                                 final byte[] data) throws IOException {
         Timber.d("Adding: %s", file);
-        try (InputStream fi = FileHelper.getInputStream(context, file); BufferedInputStream origin = new BufferedInputStream(fi, BUFFER)) {
+        String name = file.getName();
+        if (null == name) return;
 
-            ZipEntry zipEntry = new ZipEntry(file.getName());
+        ZipEntry zipEntry = new ZipEntry(name);
+        if (isCompressible(name)) {
+            zipEntry.setMethod(ZipEntry.DEFLATED);
             stream.putNextEntry(zipEntry);
-            int count;
-
-            while ((count = origin.read(data, 0, BUFFER)) != -1) {
-                stream.write(data, 0, count);
+            try (InputStream fi = FileHelper.getInputStream(context, file)) {
+                copy(fi, stream, data, null);
+            }
+        } else if (file.length() <= MAX_STORED_IN_MEMORY) {
+            // STORED entries need their size and CRC before their data : buffer the file while computing them
+            CRC32 crc = new CRC32();
+            ByteArrayOutputStream buffer = new ByteArrayOutputStream((int) Math.max(file.length(), 32));
+            try (InputStream fi = FileHelper.getInputStream(context, file)) {
+                copy(fi, buffer, data, crc);
+            }
+            setStored(zipEntry, buffer.size(), crc);
+            stream.putNextEntry(zipEntry);
+            buffer.writeTo(stream);
+        } else {
+            // Too large to be buffered : read the file twice instead
+            CRC32 crc = new CRC32();
+            long size;
+            try (InputStream fi = FileHelper.getInputStream(context, file)) {
+                size = copy(fi, null, data, crc);
+            }
+            setStored(zipEntry, size, crc);
+            stream.putNextEntry(zipEntry);
+            try (InputStream fi = FileHelper.getInputStream(context, file)) {
+                copy(fi, stream, data, null);
             }
         }
+        stream.closeEntry();
+    }
+
+    /**
+     * Indicate whether the file with the given name is worth compressing inside an archive
+     *
+     * @param fileName Name of the file
+     * @return True if the file is a text file (e.g. JSON); false if it's a picture or any other binary file
+     */
+    private static boolean isCompressible(@NonNull final String fileName) {
+        String mimeType = FileHelper.getMimeTypeFromFileName(fileName);
+        return mimeType.startsWith("text/") || mimeType.equals("application/json");
+    }
+
+    private static void setStored(@NonNull final ZipEntry entry, long size, @NonNull final CRC32 crc) {
+        entry.setMethod(ZipEntry.STORED);
+        entry.setSize(size);
+        entry.setCompressedSize(size);
+        entry.setCrc(crc.getValue());
+    }
+
+    /**
+     * Copy the given input stream to the given output stream, updating the given checksum along the way
+     *
+     * @param in   Stream to read from
+     * @param out  Stream to write to; null to only read the input
+     * @param data Buffer to use
+     * @param crc  Checksum to update with the copied data; null if not needed
+     * @return Number of copied bytes
+     * @throws IOException If something horrible happens during I/O
+     */
+    private static long copy(
+            @NonNull final InputStream in,
+            @Nullable final OutputStream out,
+            @NonNull final byte[] data,
+            @Nullable final CRC32 crc) throws IOException {
+        long result = 0;
+        int count;
+        while ((count = in.read(data, 0, data.length)) != -1) {
+            if (crc != null) crc.update(data, 0, count);
+            if (out != null) out.write(data, 0, count);
+            result += count;
+        }
+        return result;
     }
 
     @SuppressWarnings("squid:S1104")
@@ -0,0 +1,156 @@
+package me.devsaki.hentoid.util;
+
+import android.content.Context;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import timber.log.Timber;
+
+/**
+ * Size-bounded cache of the pages extracted from archived books, kept inside the app's picture cache folder
+ * <p>
+ * Cached pages are shared between books and survive app restarts; the least recently used pages are
+ * evicted when the total size of the cache exceeds MAX_SIZE. Recency is persisted through the last
+ * modification date of the cached files.
+ */
+final class ArchivePageCache {
+
+    // Maximum total size of the cached pages, in bytes
+    private static final long MAX_SIZE = 256L * 1024 * 1024;
+    // Subfolder holding the pages whose extraction hasn't completed yet
+    private static final String TEMP_FOLDER = "extracting";
+
+    // Size of the cached pages indexed by file name, from the least to the most recently used
+    private static final LinkedHashMap<String, Long> pageSizes = new LinkedHashMap<>(64, 0.75f, true);
+    private static long totalSize = 0;
+    // Cache folder; null until the index has been loaded
+    private static File folder = null;
+    private static File tempFolder = null;
+
+    private ArchivePageCache() {
+        throw new IllegalStateException("Utility class");
+    }
+
+
+    /**
+     * Get the folder where pages are cached, loading the cache index if needed
+     *
+     * @param context Context to use
+     * @return Folder where pages are cached; null if it can't be created
+     */
+    @Nullable
+    static synchronized File getFolder(@NonNull final Context context) {
+        if (null == folder) {
+            File cacheFolder = new File(context.getCacheDir(), Consts.PICTURE_CACHE_FOLDER);
+            File cacheTempFolder = new File(cacheFolder, TEMP_FOLDER);
+            if (!cacheTempFolder.exists() && !cacheTempFolder.mkdirs()) return null;
+            loadIndex(cacheFolder, cacheTempFolder);
+            folder = cacheFolder;
+            tempFolder = cacheTempFolder;
+        }
+        return folder;
+    }
+
+    /**
+     * Get the folder where pages have to be extracted before being moved to the cache folder
+     * (see {@link #put(File)}), loading the cache index if needed
+     *
+     * @param context Context to use
+     * @return Folder where pages have to be extracted; null if it can't be created
+     */
+    @Nullable
+    static synchronized File getTempFolder(@NonNull final Context context) {
+        if (null == getFolder(context)) return null;
+        return tempFolder;
+    }
+
+    /**
+     * Get the cached page with the given file name and mark it as the most recently used
+     *
+     * @param context  Context to use
+     * @param fileName File name of the page to get
+     * @return Cached page; null if the page isn't cached
+     */
+    @Nullable
+    static synchronized File get(@NonNull final Context context, @NonNull final String fileName) {
+        File cacheFolder = getFolder(context);
+        if (null == cacheFolder || !pageSizes.containsKey(fileName)) return null;
+
+        File result = new File(cacheFolder, fileName);
+        if (!result.exists()) { // Deleted behind our back (e.g. cache cleared by the system)
+            remove(fileName);
+            return null;
+        }
+        // Failure only affects the recency of the page after a restart
+        if (!result.setLastModified(System.currentTimeMillis()))
+            Timber.d("Unable to update recency of %s", fileName);
+        return result;
+    }
+
+    /**
+     * Move the given extracted page to the cache as the most recently used, evicting the least recently used pages if the cache is full
+     *
+     * @param context   Context to use
+     * @param page      Extracted page to move; must be located inside the folder given by {@link #getTempFolder(Context)}
+     * @param cacheName File name of the page inside the cache
+     * @return Cached page
+     * @throws IOException If the page can't be moved to the cache
+     */
+    static synchronized File put(@NonNull final Context context, @NonNull final File page, @NonNull final String cacheName) throws IOException {
+        File cacheFolder = getFolder(context);
+        if (null == cacheFolder) throw new IOException("Picture cache folder could not be created");
+        File result = new File(cacheFolder, cacheName);
+        if (!page.renameTo(result)) throw new IOException("Could not cache page " + cacheName);
+
+        Long previousSize = pageSizes.put(cacheName, result.length());
+        totalSize += result.length() - ((null == previousSize) ? 0 : previousSize);
+        evict(cacheFolder);
+        return result;
+    }
+
+    private static void loadIndex(@NonNull final File cacheFolder, @NonNull final File cacheTempFolder) {
+        // Leftovers of interrupted extractions
+        File[] tempFiles = cacheTempFolder.listFiles();
+        if (tempFiles != null)
+            for (File f : tempFiles)
+                if (!f.delete()) Timber.w("Unable to delete file %s", f.getAbsolutePath());
+
+        File[] files = cacheFolder.listFiles();
+        if (null == files) return;
+        Arrays.sort(files, (f1, f2) -> Long.compare(f1.lastModified(), f2.lastModified()));
+
+        pageSizes.clear();
+        totalSize = 0;
+        for (File f : files) {
+            if (f.isDirectory()) continue;
+            pageSizes.put(f.getName(), f.length());
+            totalSize += f.length();
+        }
+        evict(cacheFolder);
+    }
+
+    private static void remove(@NonNull final String fileName) {
+        Long size = pageSizes.remove(fileName);
+        if (size != null) totalSize -= size;
+    }
+
+    // The most recently used page is never evicted, even if it's bigger than the cache itself
+    private static void evict(@NonNull final File cacheFolder) {
+        Iterator<Map.Entry<String, Long>> it = pageSizes.entrySet().iterator();
+        while (totalSize > MAX_SIZE && pageSizes.size() > 1 && it.hasNext()) {
+            Map.Entry<String, Long> entry = it.next();
+            File f = new File(cacheFolder, entry.getKey());
+            if (f.exists() && !f.delete()) Timber.w("Unable to delete file %s", f.getAbsolutePath());
+            totalSize -= entry.getValue();
+            it.remove();
+        }
+    }
+}
@@ -0,0 +1,262 @@
+package me.devsaki.hentoid.util;
+
+import android.content.ContentProvider;
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.MatrixCursor;
+import android.net.Uri;
+import android.os.ParcelFileDescriptor;
+import android.provider.OpenableColumns;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.documentfile.provider.DocumentFile;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import me.devsaki.hentoid.BuildConfig;
+import timber.log.Timber;
+
+/**
+ * Content provider serving the pages of archived books one by one
+ * <p>
+ * Pages are identified by the Uri of their archive, the path of their entry inside the archive and the
+ * last modification date of the archive (see {@link #buildPageUri(String, String, long)}).
+ * Each page is extracted to the {@link ArchivePageCache} the first time it is read, without extracting the rest of the archive.
+ */
+public class ArchivePageProvider extends ContentProvider {
+
+    private static final String AUTHORITY = BuildConfig.APPLICATION_ID + ".provider.ArchivePageProvider";
+
+    // Path segments of page Uris; the entry path comes last so that the Uri ends with the name of the page
+    private static final int SEGMENT_ARCHIVE = 0;
+    private static final int SEGMENT_TIMESTAMP = 1;
+    private static final int SEGMENT_ENTRY = 2;
+
+    // Striped locks preventing the same archive from being extracted by two threads at the same time
+    private static final Object[] extractionLocks = new Object[16];
+
+    static {
+        for (int i = 0; i < extractionLocks.length; i++) extractionLocks[i] = new Object();
+    }
+
+
+    /**
+     * Build the Uri of the given page
+     *
+     * @param archiveUri       Uri of the archive containing the page
+     * @param entryPath        Path of the page inside the archive
+     * @param archiveTimestamp Last modification date of the archive; used to tell cached pages of previous versions of the archive apart
+     * @return Uri the given page can be read from using the ContentResolver
+     */
+    public static Uri buildPageUri(@NonNull final String archiveUri, @NonNull final String entryPath, long archiveTimestamp) {
+        return new Uri.Builder()
+                .scheme("content")
+                .authority(AUTHORITY)
+                .appendPath(archiveUri)
+                .appendPath(Long.toString(archiveTimestamp))
+                .appendPath(entryPath)
+                .build();
+    }
+
+    /**
+     * Indicate whether the given Uri is a page Uri built by {@link #buildPageUri(String, String, long)}
+     *
+     * @param uri Uri to test
+     * @return True if the given Uri is a page Uri; false instead
+     */
+    public static boolean isPageUri(@NonNull final Uri uri) {
+        return AUTHORITY.equals(uri.getAuthority()) && 3 == uri.getPathSegments().size();
+    }
+
+    /**
+     * Extract the given page to the {@link ArchivePageCache}, if it isn't cached yet
+     *
+     * @param context Context to use
+     * @param pageUri Uri of the page to extract (see {@link #buildPageUri(String, String, long)})
+     * @return Extracted page
+     * @throws IOException If the page can't be extracted
+     */
+    public static File extractPage(@NonNull final Context context, @NonNull final Uri pageUri) throws IOException {
+        File result = extractPages(context, Collections.singletonList(pageUri)).get(pageUri);
+        if (null == result) throw new FileNotFoundException("Entry not found : " + pageUri);
+        return result;
+    }
+
+    /**
+     * Extract the given pages to the {@link ArchivePageCache}, if they aren't cached yet
+     * NB : Each archive is read once for all its pages that aren't cached, which matters for archives that can only be read sequentially
+     *
+     * @param context  Context to use
+     * @param pageUris Uris of the pages to extract (see {@link #buildPageUri(String, String, long)})
+     * @return Extracted pages, indexed by page Uri; pages that couldn't be found inside their archive are absent
+     * @throws IOException If the pages can't be extracted
+     */
+    public static Map<Uri, File> extractPages(@NonNull final Context context, @NonNull final List<Uri> pageUris) throws IOException {
+        Helper.assertNonUiThread();
+        File tempFolder = ArchivePageCache.getTempFolder(context);
+        if (null == tempFolder) throw new IOException("Picture cache folder could not be created");
+
+        // Group pages by archive
+        Map<String, List<Uri>> pagesByArchive = new LinkedHashMap<>();
+        for (Uri pageUri : pageUris) {
+            if (!isPageUri(pageUri)) throw new FileNotFoundException("Not a page Uri : " + pageUri);
+            String archiveUri = pageUri.getPathSegments().get(SEGMENT_ARCHIVE);
+            List<Uri> pages = pagesByArchive.get(archiveUri);
+            if (null == pages) {
+                pages = new ArrayList<>();
+                pagesByArchive.put(archiveUri, pages);
+            }
+            pages.add(pageUri);
+        }
+
+        Map<Uri, File> result = new HashMap<>();
+        for (Map.Entry<String, List<Uri>> archivePages : pagesByArchive.entrySet()) {
+            String archiveUri = archivePages.getKey();
+            synchronized (extractionLocks[(archiveUri.hashCode() & 0x7fffffff) % extractionLocks.length]) {
+                extractArchivePages(context, archiveUri, archivePages.getValue(), tempFolder, result);
+            }
+        }
+        return result;
+    }
+
+    private static void extractArchivePages(
+            @NonNull final Context context,
+            @NonNull final String archiveUri,
+            @NonNull final List<Uri> pageUris,
+            @NonNull final File tempFolder,
+            @NonNull final Map<Uri, File> result) throws IOException {
+        List<Uri> pagesToExtract = new ArrayList<>();
+        List<String> entryPaths = new ArrayList<>();
+        List<String> keys = new ArrayList<>();
+        for (Uri pageUri : pageUris) {
+            String entryPath = pageUri.getPathSegments().get(SEGMENT_ENTRY);
+            String key = buildKey(archiveUri, entryPath, pageUri.getPathSegments().get(SEGMENT_TIMESTAMP));
+
+            File cached = ArchivePageCache.get(context, key + "." + FileHelper.getExtension(entryPath));
+            if (cached != null) result.put(pageUri, cached);
+            else {
+                pagesToExtract.add(pageUri);
+                entryPaths.add(entryPath);
+                keys.add(key);
+            }
+        }
+        if (pagesToExtract.isEmpty()) return;
+
+        DocumentFile archive = FileHelper.getFileFromSingleUriString(context, archiveUri);
+        if (null == archive) throw new FileNotFoundException("Archive not found : " + archiveUri);
+
+        // Extract to a temporary folder first to avoid readers getting a partial page
+        // Extracted files are named after the keys of their pages
+        Map<String, File> extractedFiles = new HashMap<>();
+        for (Uri extracted : ArchiveHelper.extractArchiveEntries(context, archive, entryPaths, tempFolder, keys)) {
+            String extractedPath = extracted.getPath();
+            if (null == extractedPath) continue;
+            File extractedFile = new File(extractedPath);
+            String name = extractedFile.getName();
+            int extensionIndex = name.indexOf('.');
+            extractedFiles.put((extensionIndex > -1) ? name.substring(0, extensionIndex) : name, extractedFile);
+        }
+
+        for (int i = 0; i < pagesToExtract.size(); i++) {
+            File extractedFile = extractedFiles.get(keys.get(i));
+            if (extractedFile != null)
+                result.put(pagesToExtract.get(i), ArchivePageCache.put(context, extractedFile, keys.get(i) + "." + FileHelper.getExtension(entryPaths.get(i))));
+        }
+    }
+
+    private static String buildKey(@NonNull final String archiveUri, @NonNull final String entryPath, @NonNull final String archiveTimestamp) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            digest.update(archiveUri.getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+            digest.update(entryPath.toLowerCase(Locale.ROOT).getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+            digest.update(archiveTimestamp.getBytes(StandardCharsets.UTF_8));
+            StringBuilder result = new StringBuilder();
+            for (byte b : digest.digest()) result.append(String.format(Locale.ROOT, "%02x", b));
+            return result.toString();
+        } catch (NoSuchAlgorithmException e) {
+            // SHA-1 is available on every Android device
+            throw new IllegalStateException(e);
+        }
+    }
+
+
+    @Override
+    public boolean onCreate() {
+        return true;
+    }
+
+    @Nullable
+    @Override
+    public Cursor query(@NonNull Uri uri, @Nullable String[] projection, @Nullable String selection, @Nullable String[] selectionArgs, @Nullable String sortOrder) {
+        if (!isPageUri(uri)) return null;
+        if (null == projection)
+            projection = new String[]{OpenableColumns.DISPLAY_NAME, OpenableColumns.SIZE};
+
+        String entryPath = uri.getPathSegments().get(SEGMENT_ENTRY);
+        int separatorIndex = entryPath.lastIndexOf('/');
+        String displayName = (separatorIndex > -1) ? entryPath.substring(separatorIndex + 1) : entryPath;
+
+        // The size of the page is unknown until it's extracted; other columns are left empty
+        Object[] row = new Object[projection.length];
+        for (int i = 0; i < projection.length; i++)
+            if (OpenableColumns.DISPLAY_NAME.equals(projection[i])) row[i] = displayName;
+        MatrixCursor result = new MatrixCursor(projection, 1);
+        result.addRow(row);
+        return result;
+    }
+
+    @Nullable
+    @Override
+    public String getType(@NonNull Uri uri) {
+        if (!isPageUri(uri)) return null;
+        return FileHelper.getMimeTypeFromFileName(uri.getPathSegments().get(SEGMENT_ENTRY));
+    }
+
+    @Nullable
+    @Override
+    public ParcelFileDescriptor openFile(@NonNull Uri uri, @NonNull String mode) throws FileNotFoundException {
+        if (!"r".equals(mode)) throw new FileNotFoundException("Pages are read-only");
+        Context context = getContext();
+        if (null == context) throw new FileNotFoundException("Provider not attached");
+        try {
+            return ParcelFileDescriptor.open(extractPage(context, uri), ParcelFileDescriptor.MODE_READ_ONLY);
+        } catch (FileNotFoundException e) {
+            throw e;
+        } catch (IOException e) {
+            Timber.w(e);
+            throw new FileNotFoundException(e.getMessage());
+        }
+    }
+
+    @Nullable
+    @Override
+    public Uri insert(@NonNull Uri uri, @Nullable ContentValues values) {
+        throw new UnsupportedOperationException("No external inserts");
+    }
+
+    @Override
+    public int delete(@NonNull Uri uri, @Nullable String selection, @Nullable String[] selectionArgs) {
+        return 0;
+    }
+
+    @Override
+    public int update(@NonNull Uri uri, @Nullable ContentValues values, @Nullable String selection, @Nullable String[] selectionArgs) {
+        throw new UnsupportedOperationException("No external updates");
+    }
+}
@@ -0,0 +1,52 @@
+package me.devsaki.hentoid.util;
+
+import androidx.annotation.NonNull;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * Pool of large byte buffers shared by the I/O helpers, to avoid allocating a new buffer
+ * (and the garbage collection that goes with it) for each copied file
+ * <p>
+ * Acquired buffers have to be released once they're not used anymore; buffers that aren't
+ * released are simply left to the garbage collector
+ */
+final class BufferPool {
+
+    static final int BUFFER_SIZE = 128 * 1024;
+    // Maximum number of idle buffers kept in the pool
+    private static final int MAX_POOLED_BUFFERS = 8;
+
+    private static final Deque<byte[]> buffers = new ArrayDeque<>(MAX_POOLED_BUFFERS);
+
+    private BufferPool() {
+        throw new IllegalStateException("Utility class");
+    }
+
+
+    /**
+     * Get a buffer of BUFFER_SIZE bytes from the pool, or a new one if the pool is empty
+     *
+     * @return Buffer of BUFFER_SIZE bytes; its content is undefined
+     */
+    static byte[] acquire() {
+        synchronized (buffers) {
+            byte[] result = buffers.poll();
+            if (result != null) return result;
+        }
+        return new byte[BUFFER_SIZE];
+    }
+
+    /**
+     * Give the given buffer back to the pool
+     *
+     * @param buffer Buffer to release; must have been acquired from the pool and must not be used anymore
+     */
+    static void release(@NonNull final byte[] buffer) {
+        if (buffer.length != BUFFER_SIZE) return;
+        synchronized (buffers) {
+            if (buffers.size() < MAX_POOLED_BUFFERS) buffers.push(buffer);
+        }
+    }
+}
@@ -25,6 +25,7 @@ public abstract class Consts {
 
     public static final String QUEUE_JSON_FILE_NAME = "queue.json";
     public static final String GROUPS_JSON_FILE_NAME = "groups.json";
+    public static final String LIBRARY_INDEX_FILE_NAME = "library_index.json";
 
     public static final String THUMB_FILE_NAME = "thumb";
     public static final String PICTURE_CACHE_FOLDER = "pictures";
@@ -27,9 +27,13 @@ import java.util.Comparator;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import javax.annotation.Nonnull;
 
+import io.reactivex.Observable;
+import io.reactivex.exceptions.CompositeException;
+import io.reactivex.schedulers.Schedulers;
 import me.devsaki.hentoid.R;
 import me.devsaki.hentoid.activities.ImageViewerActivity;
 import me.devsaki.hentoid.activities.UnlockActivity;
@@ -56,6 +60,7 @@ import me.devsaki.hentoid.viewholders.ContentItem;
 import timber.log.Timber;
 
 import static com.annimon.stream.Collectors.toList;
+import static com.annimon.stream.Collectors.toSet;
 
 /**
  * Utility class for Content-related operations
@@ -68,6 +73,8 @@ public final class ContentHelper {
 
     // TODO empty this cache at some point
     private static final Map<String, String> fileNameMatchCache = new HashMap<>();
+    // Maximum number of books whose files are removed at the same time
+    private static final int MAX_PARALLEL_REMOVALS = 4;
 
 
     private ContentHelper() {
@@ -112,12 +119,24 @@ public final class ContentHelper {
     }
 
     /**
-     * Update the given Content's JSON file with its current values
+     * Update the given Content's JSON file with its current DB values
+     * NB : The file is written asynchronously, after a short delay (see {@link DeferredJsonWriter})
      *
      * @param context Context to use for the action
-     * @param content Content whose JSON file to update
+     * @param content Content whose JSON file to update; has to be stored in the DB
      */
     public static void updateContentJson(@NonNull Context context, @NonNull Content content) {
+        if (content.isArchive()) return;
+        DeferredJsonWriter.updateContentJson(context, content.getId());
+    }
+
+    /**
+     * Write the given Content's JSON file with its current values
+     *
+     * @param context Context to use for the action
+     * @param content Content whose JSON file to write
+     */
+    static void writeContentJson(@NonNull Context context, @NonNull Content content) {
         Helper.assertNonUiThread();
         if (content.isArchive()) return;
 
@@ -145,19 +164,42 @@ public final class ContentHelper {
         if (null == folder) return;
         try {
             JsonHelper.jsonToFile(context, JsonContent.fromEntity(content), JsonContent.class, folder);
+            if (content.getId() > 0) updateLibraryIndex(context, content);
         } catch (IOException e) {
             Timber.e(e, "Error while writing to %s", content.getStorageUri());
         }
     }
 
+    /**
+     * Update the given Content's entry in the library index with its current DB values
+     * NB : The index is written asynchronously, after a short delay (see {@link DeferredJsonWriter})
+     *
+     * @param context Context to use for the action
+     * @param content Content whose entry to update; has to be stored in the DB
+     */
+    public static void updateLibraryIndex(@NonNull Context context, @NonNull Content content) {
+        if (content.isArchive()) return;
+        DeferredJsonWriter.updateLibraryIndex(context, content.getId());
+    }
+
     /**
      * Update the JSON file that stores the queue with the current contents of the queue
+     * NB : The file is written asynchronously, after a short delay (see {@link DeferredJsonWriter})
+     *
+     * @param context Context to be used
+     */
+    public static void updateQueueJson(@NonNull Context context) {
+        DeferredJsonWriter.updateQueueJson(context);
+    }
+
+    /**
+     * Write the JSON file that stores the queue with the current contents of the queue
      *
      * @param context Context to be used
      * @param dao     DAO to be used
-     * @return True if the queue JSON file has been updated properly; false instead
+     * @return True if the queue JSON file has been written properly; false instead
      */
-    public static boolean updateQueueJson(@NonNull Context context, @NonNull CollectionDAO dao) {
+    static boolean writeQueueJson(@NonNull Context context, @NonNull CollectionDAO dao) {
         Helper.assertNonUiThread();
         List<QueueRecord> queue = dao.selectQueue();
         // Save current queue (to be able to restore it in case the app gets uninstalled)
@@ -271,6 +313,84 @@ public final class ContentHelper {
         // NB : start with DB to have a LiveData feedback, because file removal can take much time
         dao.deleteContent(content);
 
+        removeContentFiles(context, content);
+    }
+
+    /**
+     * Remove the given Contents from the disk and the DB, in bulk
+     * <p>
+     * DB entries of all Contents are removed first, by batches; their files are then removed
+     * in parallel, at most MAX_PARALLEL_REMOVALS books at a time.
+     * Errors don't interrupt the removal of the other Contents; the first one is signalled
+     * once all Contents have been processed.
+     * NB : The queue JSON is updated once at the end if queued Contents have been removed;
+     * updating the groups JSON is up to the caller
+     *
+     * @param context  Context to be used
+     * @param dao      DAO to be used
+     * @param contents Contents to be removed
+     * @return Observable emitting each Content once it has been removed from the DB and the disk
+     */
+    public static Observable<Content> removeContents(@NonNull Context context, @NonNull CollectionDAO dao, @NonNull List<Content> contents) {
+        return Observable.defer(() -> {
+            Helper.assertNonUiThread();
+            // Check if given contents still exist in DB
+            List<Content> dbContents = Stream.of(dao.selectContent(Helper.getPrimitiveLongArrayFromList(Stream.of(contents).map(Content::getId).toList())))
+                    .withoutNulls().toList();
+            Set<Long> dbContentIds = Stream.of(dbContents).map(Content::getId).collect(toSet());
+            List<Throwable> errors = new ArrayList<>();
+            for (Content c : contents)
+                if (!dbContentIds.contains(c.getId()))
+                    errors.add(new ContentNotRemovedException(c, "Error when trying to delete : invalid ContentId " + c.getId()));
+
+            // Remove queued contents from the queue
+            List<QueueRecord> queue = dao.selectQueue();
+            Set<Long> queuedContentIds = Stream.of(queue).map(qr -> qr.getContent().getTargetId()).collect(toSet());
+            List<Content> queuedContents = Stream.of(dbContents).filter(c -> queuedContentIds.contains(c.getId())).toList();
+            for (Content c : queuedContents) {
+                // If the content is on top of the queue, send a CANCEL event
+                if (queue.get(0).getContent().getTargetId() == c.getId())
+                    EventBus.getDefault().post(new DownloadEvent(c, DownloadEvent.EV_CANCEL));
+                dao.deleteQueue(c);
+            }
+
+            // Remove from DB
+            // NB : start with DB to have a LiveData feedback, because file removal can take much time
+            dao.deleteContents(Helper.getPrimitiveLongArrayFromList(new ArrayList<>(dbContentIds)));
+
+            // Remove files; storage calls are I/O bound, hence parallel removals
+            return Observable.fromIterable(dbContents)
+                    .flatMap(c -> Observable.fromCallable(() -> {
+                                try {
+                                    removeContentFiles(context, c);
+                                } catch (ContentNotRemovedException cnre) {
+                                    Timber.e(cnre, "Error when trying to delete %s", c.getId());
+                                    throw cnre;
+                                } catch (Exception e) {
+                                    Timber.e(e, "Error when trying to delete %s", c.getId());
+                                    // Content has already been removed from the DB at that point
+                                    throw new FileNotRemovedException(c, "Error when trying to delete " + c.getId() + " : " + e.getMessage(), e);
+                                }
+                                Timber.d("Removed item: %s from db and file system.", c.getTitle());
+                                return c;
+                            }).subscribeOn(Schedulers.io()),
+                            true, MAX_PARALLEL_REMOVALS)
+                    .concatWith(Observable.defer(() -> errors.isEmpty() ? Observable.empty() : Observable.error(errors.get(0))))
+                    .onErrorResumeNext((Throwable t) -> Observable.error((t instanceof CompositeException) ? ((CompositeException) t).getExceptions().get(0) : t))
+                    .doOnTerminate(() -> {
+                        if (!queuedContents.isEmpty()) updateQueueJson(context);
+                    });
+        });
+    }
+
+    /**
+     * Remove the files of the given Content from the disk
+     *
+     * @param context Context to be used
+     * @param content Content whose files to remove
+     * @throws ContentNotRemovedException in case an issue prevents the files from being actually removed
+     */
+    private static void removeContentFiles(@NonNull Context context, @NonNull Content content) throws ContentNotRemovedException {
         if (content.isArchive()) { // Remove an archive
             DocumentFile archive = FileHelper.getFileFromSingleUriString(context, content.getStorageUri());
             if (null == archive)
@@ -384,7 +504,7 @@ public final class ContentHelper {
                                     group = new Group(Grouping.ARTIST, a.getName(), ++nbGroups);
                                     group.setSubtype(a.getType().equals(AttributeType.ARTIST) ? Preferences.Constant.ARTIST_GROUP_VISIBILITY_ARTISTS : Preferences.Constant.ARTIST_GROUP_VISIBILITY_GROUPS);
                                     if (!a.contents.isEmpty())
-                                        group.picture.setTarget(a.contents.get(0).getCover());
+                                        group.setCover(a.contents.get(0).getCover());
                                 }
                                 GroupHelper.addContentToAttributeGroup(dao, group, a, content);
                             }
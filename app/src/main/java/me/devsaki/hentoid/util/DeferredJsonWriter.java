@@ -0,0 +1,284 @@
+package me.devsaki.hentoid.util;
+
+import android.content.Context;
+
+import androidx.annotation.NonNull;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import me.devsaki.hentoid.database.CollectionDAO;
+import me.devsaki.hentoid.database.ObjectBoxDAO;
+import me.devsaki.hentoid.database.domains.Content;
+import timber.log.Timber;
+
+/**
+ * Write-behind of the JSON files that mirror the DB (books, queue and custom groups)
+ * <p>
+ * Updated JSON files are only marked as pending; they are written with the then-current DB values once no update
+ * has happened for DEBOUNCE_DELAY_MS (or at most MAX_DELAY_MS after the first pending update), or when the app
+ * goes to background. Bursts of updates (e.g. reordering the queue, batch favouriting) thus result in a single write
+ * per file.
+ * <p>
+ * Books whose JSON file is written are also added to the library index (see {@link LibraryIndex}).
+ * <p>
+ * Pending updates are recorded in a journal inside the app's private storage, so that they aren't lost if the
+ * app is killed before they're written; they're written the next time the app starts.
+ */
+public final class DeferredJsonWriter {
+
+    // Delay without any new update after which pending updates are written
+    private static final long DEBOUNCE_DELAY_MS = 2000;
+    // Maximum delay between the first pending update and the writing of the JSON files
+    private static final long MAX_DELAY_MS = 10000;
+
+    private static final String JOURNAL_FILE_NAME = "pending_json.txt";
+    private static final String JOURNAL_QUEUE = "queue";
+    private static final String JOURNAL_GROUPS = "groups";
+    private static final String JOURNAL_INDEX_PREFIX = "index:";
+
+    // Single thread, so that JSON files are never written concurrently
+    private static final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
+
+    private static final Object lock = new Object();
+    // All following fields are guarded by lock
+    private static Context appContext = null;
+    private static final Set<Long> pendingContentIds = new HashSet<>();
+    private static final Set<Long> pendingIndexIds = new HashSet<>();
+    private static boolean isQueuePending = false;
+    private static boolean isGroupsPending = false;
+    private static long firstPendingTime = 0;
+    private static ScheduledFuture<?> scheduledWrite = null;
+
+    private DeferredJsonWriter() {
+        throw new IllegalStateException("Utility class");
+    }
+
+
+    /**
+     * Initialize the writer and write the updates left pending by the previous run of the app, if any
+     *
+     * @param context Context to use
+     */
+    public static void init(@NonNull final Context context) {
+        synchronized (lock) {
+            appContext = context.getApplicationContext();
+        }
+        executor.execute(() -> {
+            if (readJournal()) writePendingUpdates();
+        });
+    }
+
+    /**
+     * Mark the JSON file of the given book as needing to be updated with the book's DB values
+     *
+     * @param context   Context to use
+     * @param contentId ID of the book whose JSON file to update
+     */
+    public static void updateContentJson(@NonNull final Context context, long contentId) {
+        synchronized (lock) {
+            boolean isNew = pendingContentIds.add(contentId);
+            onUpdate(context, isNew);
+        }
+    }
+
+    /**
+     * Mark the library index entry of the given book as needing to be updated with the book's DB values
+     * NB : Only needed when the book's JSON file has been written without using {@link #updateContentJson(Context, long)}
+     *
+     * @param context   Context to use
+     * @param contentId ID of the book whose library index entry to update
+     */
+    public static void updateLibraryIndex(@NonNull final Context context, long contentId) {
+        synchronized (lock) {
+            boolean isNew = pendingIndexIds.add(contentId);
+            onUpdate(context, isNew);
+        }
+    }
+
+    /**
+     * Mark the JSON file of the queue as needing to be updated with the current queue
+     *
+     * @param context Context to use
+     */
+    public static void updateQueueJson(@NonNull final Context context) {
+        synchronized (lock) {
+            boolean isNew = !isQueuePending;
+            isQueuePending = true;
+            onUpdate(context, isNew);
+        }
+    }
+
+    /**
+     * Mark the JSON file of the custom groups as needing to be updated with the current custom groups
+     *
+     * @param context Context to use
+     */
+    public static void updateGroupsJson(@NonNull final Context context) {
+        synchronized (lock) {
+            boolean isNew = !isGroupsPending;
+            isGroupsPending = true;
+            onUpdate(context, isNew);
+        }
+    }
+
+    /**
+     * Write all pending updates as soon as possible, without waiting for the debounce delay
+     * NB : Writing happens asynchronously
+     */
+    public static void flush() {
+        synchronized (lock) {
+            if (!hasPendingUpdates()) return;
+            schedule(0);
+        }
+    }
+
+    // Must be called while holding lock
+    private static void onUpdate(@NonNull final Context context, boolean isNew) {
+        if (null == appContext) appContext = context.getApplicationContext();
+        long now = System.currentTimeMillis();
+        if (0 == firstPendingTime) firstPendingTime = now;
+        // Bursts of updates on the same files don't need to be journaled again
+        if (isNew) executor.execute(DeferredJsonWriter::saveJournal);
+        schedule(Math.min(DEBOUNCE_DELAY_MS, firstPendingTime + MAX_DELAY_MS - now));
+    }
+
+    // Must be called while holding lock
+    private static void schedule(long delayMs) {
+        if (scheduledWrite != null) scheduledWrite.cancel(false);
+        scheduledWrite = executor.schedule(DeferredJsonWriter::writePendingUpdates, Math.max(0, delayMs), TimeUnit.MILLISECONDS);
+    }
+
+    // Must be called while holding lock
+    private static boolean hasPendingUpdates() {
+        return !pendingContentIds.isEmpty() || !pendingIndexIds.isEmpty() || isQueuePending || isGroupsPending;
+    }
+
+    private static void writePendingUpdates() {
+        Context context;
+        Set<Long> contentIds;
+        Set<Long> indexIds;
+        boolean writeQueue;
+        boolean writeGroups;
+        synchronized (lock) {
+            if (null == appContext || !hasPendingUpdates()) return;
+            context = appContext;
+            contentIds = new HashSet<>(pendingContentIds);
+            indexIds = new HashSet<>(pendingIndexIds);
+            writeQueue = isQueuePending;
+            writeGroups = isGroupsPending;
+            pendingContentIds.clear();
+            pendingIndexIds.clear();
+            isQueuePending = false;
+            isGroupsPending = false;
+            firstPendingTime = 0;
+            scheduledWrite = null;
+        }
+
+        CollectionDAO dao = new ObjectBoxDAO(context);
+        try {
+            List<Content> indexedContents = new ArrayList<>();
+            indexIds.removeAll(contentIds);
+            for (long contentId : indexIds) {
+                Content content = dao.selectContent(contentId);
+                if (content != null) indexedContents.add(content);
+            }
+            for (long contentId : contentIds) {
+                Content content = dao.selectContent(contentId);
+                // Book may have been deleted or sent back to the queue in the meantime
+                if (null == content || content.getJsonUri().isEmpty()) continue;
+                try {
+                    ContentHelper.writeContentJson(context, content);
+                    indexedContents.add(content);
+                } catch (RuntimeException e) {
+                    Timber.w(e);
+                }
+            }
+            LibraryIndex.append(context, indexedContents);
+            if (writeQueue && ContentHelper.writeQueueJson(context, dao))
+                Timber.i("Queue JSON successfully saved");
+            if (writeGroups && GroupHelper.writeGroupsJson(context, dao))
+                Timber.i("Groups JSON successfully saved");
+        } finally {
+            dao.cleanup();
+        }
+        saveJournal();
+    }
+
+    private static File getJournalFile(@NonNull final Context context) {
+        return new File(context.getFilesDir(), JOURNAL_FILE_NAME);
+    }
+
+    // Runs on the executor
+    private static void saveJournal() {
+        Context context;
+        StringBuilder journal = new StringBuilder();
+        synchronized (lock) {
+            if (null == appContext) return;
+            context = appContext;
+            for (long contentId : pendingContentIds) journal.append(contentId).append('\n');
+            for (long contentId : pendingIndexIds)
+                journal.append(JOURNAL_INDEX_PREFIX).append(contentId).append('\n');
+            if (isQueuePending) journal.append(JOURNAL_QUEUE).append('\n');
+            if (isGroupsPending) journal.append(JOURNAL_GROUPS).append('\n');
+        }
+
+        File journalFile = getJournalFile(context);
+        if (0 == journal.length()) {
+            if (journalFile.exists() && !journalFile.delete())
+                Timber.w("Unable to delete file %s", journalFile.getAbsolutePath());
+            return;
+        }
+        try (Writer writer = new FileWriter(journalFile)) {
+            writer.write(journal.toString());
+        } catch (IOException e) {
+            Timber.w(e);
+        }
+    }
+
+    /**
+     * Load the pending updates recorded in the journal
+     *
+     * @return True if the journal contains pending updates; false instead
+     */
+    // Runs on the executor
+    private static boolean readJournal() {
+        Context context;
+        synchronized (lock) {
+            context = appContext;
+        }
+        File journalFile = getJournalFile(context);
+        if (!journalFile.exists()) return false;
+
+        boolean result = false;
+        try (BufferedReader reader = new BufferedReader(new FileReader(journalFile))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                synchronized (lock) {
+                    if (JOURNAL_QUEUE.equals(line)) isQueuePending = true;
+                    else if (JOURNAL_GROUPS.equals(line)) isGroupsPending = true;
+                    else if (line.isEmpty()) continue;
+                    else if (line.startsWith(JOURNAL_INDEX_PREFIX))
+                        pendingIndexIds.add(Long.parseLong(line.substring(JOURNAL_INDEX_PREFIX.length())));
+                    else pendingContentIds.add(Long.parseLong(line));
+                }
+                result = true;
+            }
+        } catch (IOException | NumberFormatException e) {
+            Timber.w(e);
+        }
+        return result;
+    }
+}
@@ -0,0 +1,146 @@
+package me.devsaki.hentoid.util;
+
+import android.Manifest;
+import android.content.Context;
+import android.net.Uri;
+import android.os.Build;
+import android.os.Environment;
+import android.provider.DocumentsContract;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.core.content.ContextCompat;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static android.content.pm.PackageManager.PERMISSION_GRANTED;
+
+/**
+ * Direct access (java.io) to the documents of the storage trees that map to a real path of the device's
+ * external storage, in order to avoid the overhead of going through the storage provider for each document
+ * <p>
+ * Only usable when the app has legacy read/write access to the external storage (i.e. before scoped storage);
+ * all methods return null when direct access is unavailable, in which case callers have to fall back to SAF.
+ * Documents accessed directly keep being identified by their SAF Uri.
+ */
+final class DirectFileAccess {
+
+    private static final String EXTERNAL_STORAGE_AUTHORITY = "com.android.externalstorage.documents";
+    private static final String DOCPROVIDER_PATH_DOCUMENT = "document";
+    private static final String DOCPROVIDER_PATH_TREE = "tree";
+    private static final char VOLUME_SEPARATOR = ':';
+
+    // Paths of the storage volumes, indexed by volume ID
+    private static final Map<String, String> volumePaths = new ConcurrentHashMap<>();
+
+    private DirectFileAccess() {
+        throw new IllegalStateException("Utility class");
+    }
+
+
+    /**
+     * Indicate whether the app can access the external storage directly
+     *
+     * @param context Context to use
+     * @return True if the app can read and write the external storage directly; false if it has to use SAF
+     */
+    static boolean isAvailable(@NonNull final Context context) {
+        // Scoped storage hides non-media files from direct listings
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q && !Environment.isExternalStorageLegacy())
+            return false;
+        return ContextCompat.checkSelfPermission(context, Manifest.permission.READ_EXTERNAL_STORAGE) == PERMISSION_GRANTED
+                && ContextCompat.checkSelfPermission(context, Manifest.permission.WRITE_EXTERNAL_STORAGE) == PERMISSION_GRANTED;
+    }
+
+    /**
+     * Get the real file represented by the given document Uri
+     *
+     * @param context Context to use
+     * @param uri     SAF Uri of the document (tree or single document Uri)
+     * @return File represented by the given Uri; null if it can't be accessed directly
+     */
+    @Nullable
+    static File getFile(@NonNull final Context context, @NonNull final Uri uri) {
+        if (!EXTERNAL_STORAGE_AUTHORITY.equals(uri.getAuthority()) || !isAvailable(context))
+            return null;
+
+        String documentId = getDocumentId(uri);
+        if (null == documentId) return null;
+        int separatorIndex = documentId.indexOf(VOLUME_SEPARATOR);
+        if (separatorIndex < 0) return null;
+
+        String volumePath = getVolumePath(context, documentId.substring(0, separatorIndex));
+        if (null == volumePath) return null;
+
+        File result = new File(volumePath, documentId.substring(separatorIndex + 1));
+        return result.canRead() ? result : null;
+    }
+
+    /**
+     * Build the SAF Uri of the given child of the given folder
+     *
+     * @param parentUri SAF Uri of the folder
+     * @param childName Name of the child document
+     * @return SAF Uri of the given child
+     */
+    static Uri buildChildUri(@NonNull final Uri parentUri, @NonNull final String childName) {
+        String parentId = getDocumentId(parentUri);
+        return DocumentsContract.buildDocumentUriUsingTree(parentUri, buildChildId((null == parentId) ? "" : parentId, childName));
+    }
+
+    /**
+     * List the properties of all the children of the given folder (non recursive)
+     *
+     * @param context   Context to use
+     * @param parentUri SAF Uri of the folder to list the children of
+     * @return List of properties of the children of the given folder; null if the folder can't be accessed directly
+     */
+    @Nullable
+    static List<FileUtil.DocumentProperties> listChildren(@NonNull final Context context, @NonNull final Uri parentUri) {
+        File folder = getFile(context, parentUri);
+        if (null == folder) return null;
+        File[] files = folder.listFiles();
+        if (null == files) return null;
+
+        String parentId = getDocumentId(parentUri);
+        if (null == parentId) return null;
+        List<FileUtil.DocumentProperties> result = new ArrayList<>(files.length);
+        for (File f : files) {
+            String mimeType = f.isDirectory() ? DocumentsContract.Document.MIME_TYPE_DIR : FileHelper.getMimeTypeFromFileName(f.getName());
+            result.add(new FileUtil.DocumentProperties(parentUri, buildChildId(parentId, f.getName()), f.getName(), mimeType, f.length(), f.lastModified()));
+        }
+        return result;
+    }
+
+    // Same structure as the IDs built by ExternalStorageProvider ("volumeId:relative/path")
+    private static String buildChildId(@NonNull final String parentId, @NonNull final String childName) {
+        if (parentId.isEmpty() || parentId.charAt(parentId.length() - 1) == VOLUME_SEPARATOR)
+            return parentId + childName;
+        else return parentId + File.separator + childName;
+    }
+
+    // Document ID of the given tree, tree document or single document Uri
+    @Nullable
+    private static String getDocumentId(@NonNull final Uri uri) {
+        final List<String> paths = uri.getPathSegments();
+        if (paths.size() >= 4 && DOCPROVIDER_PATH_DOCUMENT.equals(paths.get(2)))
+            return paths.get(3);
+        if (paths.size() >= 2 && (DOCPROVIDER_PATH_TREE.equals(paths.get(0)) || DOCPROVIDER_PATH_DOCUMENT.equals(paths.get(0))))
+            return paths.get(1);
+        return null;
+    }
+
+    @Nullable
+    private static String getVolumePath(@NonNull final Context context, @NonNull final String volumeId) {
+        String result = volumePaths.get(volumeId);
+        if (null == result) {
+            result = FileHelper.getVolumePath(context, volumeId);
+            if (result != null) volumePaths.put(volumeId, result);
+        }
+        return result;
+    }
+}
@@ -0,0 +1,67 @@
+package me.devsaki.hentoid.util;
+
+import android.content.Context;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.documentfile.provider.DocumentFile;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Index of the files of a given folder by name, to find or create files inside that folder without
+ * having to list it each time
+ * <p>
+ * The folder is listed once when the index is built; the index only stays accurate as long as
+ * the files of the folder are created through it
+ */
+public class DocumentFolderIndex {
+
+    private final DocumentFile folder;
+    private final Map<String, DocumentFile> files;
+
+
+    /**
+     * Build the index of the given folder
+     *
+     * @param context Context to use
+     * @param folder  Folder to index
+     */
+    public DocumentFolderIndex(@NonNull final Context context, @NonNull final DocumentFile folder) {
+        this.folder = folder;
+        List<DocumentFile> existingFiles = FileHelper.listFiles(context, folder, null);
+        files = new HashMap<>(existingFiles.size());
+        for (DocumentFile f : existingFiles) {
+            String name = f.getName();
+            if (name != null) files.put(name, f);
+        }
+    }
+
+    /**
+     * @return Indexed folder
+     */
+    public DocumentFile getFolder() {
+        return folder;
+    }
+
+    /**
+     * Return the file with the given display name located in the indexed folder
+     * If it doesn't exist, create a new one, index it and return it
+     *
+     * @param context     Context to use
+     * @param mimeType    Mime-type to use if the file has to be created
+     * @param displayName Display name of the file
+     * @return Usable DocumentFile; null if creation failed
+     */
+    @Nullable
+    public synchronized DocumentFile findOrCreateDocumentFile(@NonNull final Context context, @Nullable String mimeType, @NonNull final String displayName) {
+        DocumentFile file = files.get(displayName);
+        if (null == file) {
+            file = FileHelper.createDocumentFile(context, folder, mimeType, displayName);
+            if (file != null) files.put(displayName, file);
+        }
+        return file;
+    }
+}
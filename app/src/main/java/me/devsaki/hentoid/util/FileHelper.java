@@ -27,17 +27,15 @@ import com.annimon.stream.Stream;
 
 import org.apache.commons.io.FileUtils;
 
-import java.io.BufferedOutputStream;
-import java.io.BufferedReader;
-import java.io.ByteArrayInputStream;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.io.OutputStream;
 import java.lang.reflect.Array;
 import java.lang.reflect.Method;
+import java.nio.channels.FileChannel;
 import java.util.Collections;
 import java.util.List;
 import java.util.Locale;
@@ -133,7 +131,7 @@ public class FileHelper {
      * @return Human-readable access path of the given volume ID
      */
     @SuppressLint("ObsoleteSdkInt")
-    private static String getVolumePath(@NonNull Context context, final String volumeId) {
+    static String getVolumePath(@NonNull Context context, final String volumeId) {
         try {
             // StorageVolume exist since API21, but only visible since API24
             StorageManager mStorageManager =
@@ -232,6 +230,8 @@ public class FileHelper {
      * @throws IOException In case something horrible happens during I/O
      */
     public static OutputStream getOutputStream(@NonNull final Context context, @NonNull final DocumentFile target) throws IOException {
+        File file = DirectFileAccess.getFile(context, target.getUri());
+        if (file != null) return getOutputStream(file);
         return context.getContentResolver().openOutputStream(target.getUri(), "rwt"); // Always truncate file to whatever data needs to be written
     }
 
@@ -251,6 +251,8 @@ public class FileHelper {
             if (null != path)
                 return getOutputStream(new File(fileUri.getPath()));
         } else {
+            File file = DirectFileAccess.getFile(context, fileUri);
+            if (file != null) return getOutputStream(file);
             DocumentFile doc = FileHelper.getFileFromSingleUriString(context, fileUri.toString());
             if (doc != null) return getOutputStream(context, doc);
         }
@@ -266,7 +268,7 @@ public class FileHelper {
      * @throws IOException In case something horrible happens during I/O
      */
     public static InputStream getInputStream(@NonNull final Context context, @NonNull final DocumentFile target) throws IOException {
-        return context.getContentResolver().openInputStream(target.getUri());
+        return getInputStream(context, target.getUri());
     }
 
     /**
@@ -278,6 +280,8 @@ public class FileHelper {
      * @throws IOException In case something horrible happens during I/O
      */
     public static InputStream getInputStream(@NonNull final Context context, @NonNull final Uri fileUri) throws IOException {
+        File file = DirectFileAccess.getFile(context, fileUri);
+        if (file != null) return new FileInputStream(file);
         return context.getContentResolver().openInputStream(fileUri);
     }
 
@@ -302,6 +306,11 @@ public class FileHelper {
             if (null != path)
                 removeFile(new File(fileUri.getPath()));
         } else {
+            File file = DirectFileAccess.getFile(context, fileUri);
+            if (file != null) {
+                removeFile(file);
+                return;
+            }
             DocumentFile doc = FileHelper.getFileFromSingleUriString(context, fileUri.toString());
             if (doc != null) doc.delete();
         }
@@ -321,10 +330,34 @@ public class FileHelper {
     public static DocumentFile findOrCreateDocumentFile(@NonNull final Context context, @NonNull final DocumentFile folder, @Nullable String mimeType, @NonNull final String displayName) {
         // Look for it first
         DocumentFile file = findFile(context, folder, displayName);
-        if (null == file) { // Create it
-            if (null == mimeType) mimeType = "application/octet-steam";
-            return folder.createFile(mimeType, displayName);
-        } else return file;
+        if (null == file) return createDocumentFile(context, folder, mimeType, displayName);
+        else return file;
+    }
+
+    /**
+     * Create a new DocumentFile with the given display name in the given folder
+     * NB : The caller is responsible for making sure no document with the same name already exists
+     *
+     * @param context     Context to use
+     * @param folder      Containing folder
+     * @param mimeType    Mime-type of the document
+     * @param displayName Display name of the document
+     * @return Created DocumentFile; null if creation failed
+     */
+    @Nullable
+    static DocumentFile createDocumentFile(@NonNull final Context context, @NonNull final DocumentFile folder, @Nullable String mimeType, @NonNull final String displayName) {
+        File folderFile = DirectFileAccess.getFile(context, folder.getUri());
+        if (folderFile != null) {
+            try {
+                File newFile = new File(folderFile, displayName);
+                if (newFile.createNewFile() || newFile.exists())
+                    return FileUtil.fromTreeUriCached(context, DirectFileAccess.buildChildUri(folder.getUri(), displayName));
+            } catch (IOException e) {
+                Timber.w(e, "Direct file creation failed; falling back to SAF");
+            }
+        }
+        if (null == mimeType) mimeType = "application/octet-steam";
+        return folder.createFile(mimeType, displayName);
     }
 
     /**
@@ -462,18 +495,11 @@ public class FileHelper {
      * @throws IOException In case something horrible happens during I/O
      */
     public static void saveBinary(@NonNull final Context context, @NonNull final Uri uri, byte[] binaryData) throws IOException {
-        byte[] buffer = new byte[1024];
-        int count;
-
-        try (InputStream input = new ByteArrayInputStream(binaryData)) {
-            try (BufferedOutputStream output = new BufferedOutputStream(FileHelper.getOutputStream(context, uri))) {
-
-                while ((count = input.read(buffer)) != -1) {
-                    output.write(buffer, 0, count);
-                }
-
-                output.flush();
-            }
+        // Data is already in memory; no need for an intermediate buffer
+        try (OutputStream output = FileHelper.getOutputStream(context, uri)) {
+            if (null == output) throw new IOException("Could not open " + uri.toString());
+            output.write(binaryData);
+            output.flush();
         }
     }
 
@@ -599,6 +625,22 @@ public class FileHelper {
         return FileUtil.countDocumentFiles(parent, client, filter, false, true);
     }
 
+    /**
+     * Compute the fingerprint of the given folder
+     * <p>
+     * The fingerprint changes whenever a file or a folder is added to or removed from the given folder,
+     * or when its key file is modified (e.g. the JSON file of a book folder)
+     *
+     * @param parent      Folder to compute the fingerprint of
+     * @param client      ContentProviderClient to use
+     * @param keyFileName Name of the key file of the given folder
+     * @return Fingerprint of the given folder; null if its key file doesn't exist
+     */
+    @Nullable
+    public static String getFolderFingerprint(@NonNull DocumentFile parent, @NonNull ContentProviderClient client, @NonNull String keyFileName) {
+        return FileUtil.getFingerprint(parent, client, keyFileName);
+    }
+
     /**
      * List all files (non-folders) inside the given parent folder (non recursive) that match the given name filter
      *
@@ -770,21 +812,56 @@ public class FileHelper {
 
     /**
      * Copy all data from the given InputStream to the given OutputStream
+     * <p>
+     * When both streams are backed by file descriptors (e.g. streams opened by the ContentResolver
+     * on files), data is transferred between their channels without going through the Java heap
      *
      * @param in  InputStream to read data from
      * @param out OutputStream to write data to
      * @throws IOException If something horrible happens during I/O
      */
     public static void copy(@NonNull InputStream in, @NonNull OutputStream out) throws IOException {
-        // Transfer bytes from in to out
-        byte[] buf = new byte[1024];
-        int len;
-        while ((len = in.read(buf)) > 0) {
-            out.write(buf, 0, len);
+        if (in instanceof FileInputStream && out instanceof FileOutputStream)
+            transfer(((FileInputStream) in).getChannel(), ((FileOutputStream) out).getChannel());
+
+        // Transfer remaining bytes from in to out
+        byte[] buf = BufferPool.acquire();
+        try {
+            int len;
+            while ((len = in.read(buf)) > 0) {
+                out.write(buf, 0, len);
+            }
+        } finally {
+            BufferPool.release(buf);
         }
         out.flush();
     }
 
+    /**
+     * Transfer as much data as possible from the current position of the given input channel to the given output channel
+     * NB : Channels that don't support random access (e.g. pipes) are left untouched
+     *
+     * @param in  Channel to read data from
+     * @param out Channel to write data to
+     * @throws IOException If something horrible happens during I/O
+     */
+    private static void transfer(@NonNull FileChannel in, @NonNull FileChannel out) throws IOException {
+        long position;
+        long size;
+        try {
+            position = in.position();
+            size = in.size();
+        } catch (IOException e) {
+            return; // Not a regular file
+        }
+        while (position < size) {
+            long transferred = in.transferTo(position, size - position, out);
+            if (transferred <= 0) break;
+            position += transferred;
+        }
+        in.position(position);
+    }
+
     /**
      * Get the device's Downloads folder
      *
@@ -808,23 +885,66 @@ public class FileHelper {
             @NonNull final Context context,
             @NonNull final String fileName,
             @NonNull final String mimeType
+    ) throws IOException {
+        return openDownloadOutputStream(context, createNewDownloadFile(context, fileName, mimeType));
+    }
+
+    /**
+     * Create a brand new file in the device's Downloads folder
+     *
+     * @param context  Context to use
+     * @param fileName Name of the file to create
+     * @param mimeType Mime-type of the file to create
+     * @return Uri of the new file, to be used with {@link #openDownloadOutputStream(Context, Uri)} and {@link #removeDownloadFile(Context, Uri)}
+     * @throws IOException If something horrible happens during I/O
+     */
+    public static Uri createNewDownloadFile(
+            @NonNull final Context context,
+            @NonNull final String fileName,
+            @NonNull final String mimeType
     ) throws IOException {
         if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
-            return openNewDownloadOutputStreamQ(context, fileName, mimeType);
+            return createNewDownloadFileQ(context, fileName, mimeType);
         } else {
-            return openNewDownloadOutputStreamLegacy(fileName);
+            return createNewDownloadFileLegacy(fileName);
         }
     }
 
     /**
-     * Legacy (non-SAF, pre-Android 10) version of openNewDownloadOutputStream
-     * Return an opened OutputStream in a brand new file created in the device's Downloads folder
+     * Return an opened OutputStream in the given file of the device's Downloads folder
+     *
+     * @param context Context to use
+     * @param fileUri Uri of the file, as given by {@link #createNewDownloadFile(Context, String, String)}
+     * @return Opened OutputStream in the given file
+     * @throws IOException If something horrible happens during I/O
+     */
+    public static OutputStream openDownloadOutputStream(@NonNull final Context context, @NonNull final Uri fileUri) throws IOException {
+        OutputStream result = context.getContentResolver().openOutputStream(fileUri);
+        if (null == result) throw new IOException("Could not open " + fileUri);
+        return result;
+    }
+
+    /**
+     * Delete the given file of the device's Downloads folder
+     * NB : Used to remove files whose writing has failed or has been interrupted
+     *
+     * @param context Context to use
+     * @param fileUri Uri of the file, as given by {@link #createNewDownloadFile(Context, String, String)}
+     */
+    public static void removeDownloadFile(@NonNull final Context context, @NonNull final Uri fileUri) {
+        if (ContentResolver.SCHEME_FILE.equals(fileUri.getScheme())) removeFile(context, fileUri);
+        else context.getContentResolver().delete(fileUri, null, null);
+    }
+
+    /**
+     * Legacy (non-SAF, pre-Android 10) version of createNewDownloadFile
+     * Create a brand new file in the device's Downloads folder
      *
      * @param fileName Name of the file to create
-     * @return Opened OutputStream in a brand new file created in the device's Downloads folder
+     * @return Uri of the new file
      * @throws IOException If something horrible happens during I/O
      */
-    private static OutputStream openNewDownloadOutputStreamLegacy(@NonNull final String fileName) throws IOException {
+    private static Uri createNewDownloadFileLegacy(@NonNull final String fileName) throws IOException {
         File downloadsFolder = Environment.getExternalStoragePublicDirectory(Environment.DIRECTORY_DOWNLOADS);
         if (null == downloadsFolder) throw new IOException("Downloads folder not found");
 
@@ -832,22 +952,22 @@ public class FileHelper {
         if (!target.exists() && !target.createNewFile())
             throw new IOException("Could not create new file in downloads folder");
 
-        return getOutputStream(target);
+        return Uri.fromFile(target);
     }
 
     /**
-     * Android 10 version of openNewDownloadOutputStream
+     * Android 10 version of createNewDownloadFile
      * https://gitlab.com/commonsguy/download-wrangler/blob/master/app/src/main/java/com/commonsware/android/download/DownloadRepository.kt
-     * Return an opened OutputStream in a brand new file created in the device's Downloads folder
+     * Create a brand new file in the device's Downloads folder
      *
      * @param context  Context to use
      * @param fileName Name of the file to create
      * @param mimeType Mime-type of the file to create
-     * @return Opened OutputStream in a brand new file created in the device's Downloads folder
+     * @return Uri of the new file
      * @throws IOException If something horrible happens during I/O
      */
     @TargetApi(29)
-    private static OutputStream openNewDownloadOutputStreamQ(
+    private static Uri createNewDownloadFileQ(
             @NonNull final Context context,
             @NonNull final String fileName,
             @NonNull final String mimeType) throws IOException {
@@ -859,7 +979,7 @@ public class FileHelper {
         Uri targetFileUri = resolver.insert(MediaStore.Downloads.EXTERNAL_CONTENT_URI, values);
         if (null == targetFileUri) throw new IOException("Target URI could not be formed");
 
-        return resolver.openOutputStream(targetFileUri);
+        return targetFileUri;
     }
 
     /**
@@ -996,34 +1116,6 @@ public class FileHelper {
         return displayName -> displayName.equalsIgnoreCase(name);
     }
 
-    /**
-     * Return the content of the given file as an UTF-8 string
-     * Leading BOMs are ignored
-     *
-     * @param context Context to be used
-     * @param f       File to read from
-     * @return Content of the given file as a string
-     */
-    static String readFileAsString(@NonNull final Context context, @NonNull DocumentFile f) {
-        StringBuilder result = new StringBuilder();
-        String sCurrentLine;
-        boolean isFirst = true;
-        try (BufferedReader br = new BufferedReader(new InputStreamReader(FileHelper.getInputStream(context, f)))) {
-            while ((sCurrentLine = br.readLine()) != null) {
-                if (isFirst) {
-                    // Strip UTF-8 BOMs if any
-                    if (sCurrentLine.charAt(0) == '\uFEFF')
-                        sCurrentLine = sCurrentLine.substring(1);
-                    isFirst = false;
-                }
-                result.append(sCurrentLine);
-            }
-        } catch (IOException | IllegalArgumentException e) {
-            Timber.e(e, "Error while reading %s", f.getUri().toString());
-        }
-        return result.toString();
-    }
-
     /**
      * Indicate whether the file at the given Uri exists or not
      *
@@ -1038,6 +1130,8 @@ public class FileHelper {
                 return new File(path).exists();
             else return false;
         } else {
+            File file = DirectFileAccess.getFile(context, fileUri);
+            if (file != null) return file.exists();
             DocumentFile doc = FileHelper.getFileFromSingleUriString(context, fileUri.toString());
             return (doc != null);
         }
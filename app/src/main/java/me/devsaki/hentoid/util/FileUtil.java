@@ -19,10 +19,12 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.lang.reflect.Constructor;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
+import me.devsaki.hentoid.HentoidApp;
 import timber.log.Timber;
 
 /**
@@ -182,6 +184,9 @@ class FileUtil {
 
     /**
      * List the properties of the children of the given folder (non recursive) matching the given criteria
+     * <p>
+     * Listings of folders that haven't been modified since they were last listed are read from the
+     * persistent FolderListingCache instead of being queried again
      * @param parent Folder containing the document to count
      * @param client ContentProviderClient to use for the query
      * @param nameFilter NameFilter defining which documents to include
@@ -195,31 +200,129 @@ class FileUtil {
             final FileHelper.NameFilter nameFilter,
             boolean listFolders,
             boolean listFiles) {
+        final Uri parentUri = parent.getUri();
+        // Folders that can be accessed directly are listed directly
+        List<DocumentProperties> children = DirectFileAccess.listChildren(HentoidApp.getInstance(), parentUri);
+        if (children != null) return filter(children, nameFilter, listFolders, listFiles);
+
+        final long parentLastModified = queryLastModified(parentUri, client);
+
+        children = FolderListingCache.get(parentUri, parentLastModified);
+        if (null == children) {
+            children = queryChildren(parentUri, client);
+            if (children != null) FolderListingCache.put(parentUri, parentLastModified, children);
+            else children = Collections.emptyList();
+        }
+        return filter(children, nameFilter, listFolders, listFiles);
+    }
+
+    /**
+     * Compute the fingerprint of the given folder, which changes whenever a child is added or removed,
+     * or when the given key file is modified
+     * @param parent Folder to compute the fingerprint of
+     * @param client ContentProviderClient to use for the queries
+     * @param keyFileName Name of the key file of the folder (case-insensitive)
+     * @return Fingerprint of the given folder; null if the given key file doesn't exist or can't be read
+     */
+    @Nullable
+    static String getFingerprint(
+            @NonNull final DocumentFile parent,
+            @NonNull final ContentProviderClient client,
+            @NonNull final String keyFileName) {
+        final List<DocumentProperties> children = queryDocumentFiles(parent, client, null, true, true);
+        DocumentProperties keyFile = null;
+        for (DocumentProperties child : children)
+            if (!child.isDirectory && keyFileName.equalsIgnoreCase(child.name)) {
+                keyFile = child;
+                break;
+            }
+        if (null == keyFile) return null;
+
+        // Rewriting a file doesn't modify its folder, so its properties may be outdated in cached listings
+        long size;
+        long lastModified;
+        File file = DirectFileAccess.getFile(HentoidApp.getInstance(), keyFile.uri);
+        if (file != null) {
+            size = file.length();
+            lastModified = file.lastModified();
+        } else {
+            try (Cursor c = client.query(keyFile.uri, new String[]{
+                    DocumentsContract.Document.COLUMN_SIZE,
+                    DocumentsContract.Document.COLUMN_LAST_MODIFIED}, null, null, null)) {
+                if (null == c || !c.moveToFirst() || c.isNull(1)) return null;
+                size = c.getLong(0);
+                lastModified = c.getLong(1);
+            } catch (Exception e) {
+                Timber.w(e, "Failed query");
+                return null;
+            }
+        }
+        return children.size() + "/" + size + "/" + lastModified;
+    }
+
+    private static List<DocumentProperties> filter(
+            @NonNull final List<DocumentProperties> children,
+            final FileHelper.NameFilter nameFilter,
+            boolean listFolders,
+            boolean listFiles) {
         final List<DocumentProperties> results = new ArrayList<>();
+        for (DocumentProperties child : children) {
+            // FileProvider doesn't take query selection arguments into account, so the selection has to be done manually
+            if ((null == nameFilter || nameFilter.accept(child.name)) && ((listFiles && !child.isDirectory) || (listFolders && child.isDirectory)))
+                results.add(child);
+        }
+        return results;
+    }
 
-        final Uri searchUri = DocumentsContract.buildChildDocumentsUriUsingTree(parent.getUri(), DocumentsContract.getDocumentId(parent.getUri()));
+    /**
+     * List the properties of all the children of the given folder (non recursive)
+     * @param parentUri Uri of the folder to list the children of
+     * @param client ContentProviderClient to use for the query
+     * @return List of properties of the children of the given folder; null if the query failed
+     */
+    @Nullable
+    private static List<DocumentProperties> queryChildren(@NonNull final Uri parentUri, @NonNull final ContentProviderClient client) {
+        final List<DocumentProperties> results = new ArrayList<>();
+
+        final Uri searchUri = DocumentsContract.buildChildDocumentsUriUsingTree(parentUri, DocumentsContract.getDocumentId(parentUri));
         try (Cursor c = client.query(searchUri, new String[]{
                 DocumentsContract.Document.COLUMN_DOCUMENT_ID,
                 DocumentsContract.Document.COLUMN_DISPLAY_NAME,
                 DocumentsContract.Document.COLUMN_MIME_TYPE,
-                DocumentsContract.Document.COLUMN_SIZE}, null, null, null)) {
-            if (c != null)
-                while (c.moveToNext()) {
-                    final String documentId = c.getString(0);
-                    final String documentName = c.getString(1);
-                    boolean isFolder = c.getString(2).equals(DocumentsContract.Document.MIME_TYPE_DIR);
-                    final long documentSize = c.getLong(3);
-
-                    // FileProvider doesn't take query selection arguments into account, so the selection has to be done manually
-                    if ((null == nameFilter || nameFilter.accept(documentName)) && ((listFiles && !isFolder) || (listFolders && isFolder)))
-                        results.add(new DocumentProperties(DocumentsContract.buildDocumentUriUsingTree(parent.getUri(), documentId), documentName, documentSize, isFolder));
-                }
+                DocumentsContract.Document.COLUMN_SIZE,
+                DocumentsContract.Document.COLUMN_LAST_MODIFIED}, null, null, null)) {
+            if (null == c) return null;
+            while (c.moveToNext()) {
+                final String documentId = c.getString(0);
+                final String documentName = c.getString(1);
+                final String mimeType = c.getString(2);
+                final long documentSize = c.getLong(3);
+                final long documentLastModified = c.isNull(4) ? 0 : c.getLong(4);
+
+                results.add(new DocumentProperties(parentUri, documentId, (null == documentName) ? "" : documentName, (null == mimeType) ? "" : mimeType, documentSize, documentLastModified));
+            }
         } catch (Exception e) {
             Timber.w(e, "Failed query");
+            return null;
         }
         return results;
     }
 
+    /**
+     * Get the last modification date of the given document
+     * @param uri Uri of the document
+     * @param client ContentProviderClient to use for the query
+     * @return Last modification date of the given document, in milliseconds since the epoch; 0 if unknown
+     */
+    private static long queryLastModified(@NonNull final Uri uri, @NonNull final ContentProviderClient client) {
+        try (Cursor c = client.query(uri, new String[]{DocumentsContract.Document.COLUMN_LAST_MODIFIED}, null, null, null)) {
+            if (c != null && c.moveToFirst() && !c.isNull(0)) return c.getLong(0);
+        } catch (Exception e) {
+            Timber.w(e, "Failed query");
+        }
+        return 0;
+    }
+
     /**
      * Convert the given document properties to DocumentFile's
      * @param context Context to use for the conversion
@@ -245,7 +348,7 @@ class FileUtil {
 
     // Original (uncached) is DocumentFile.fromTreeUri
     @Nullable
-    private static DocumentFile fromTreeUriCached(@NonNull final Context context, @NonNull final Uri treeUri) {
+    static DocumentFile fromTreeUriCached(@NonNull final Context context, @NonNull final Uri treeUri) {
         String documentId = DocumentsContract.getTreeDocumentId(treeUri);
         if (isDocumentUriCached(context, treeUri)) {
             documentId = DocumentsContract.getDocumentId(treeUri);
@@ -313,15 +416,21 @@ class FileUtil {
      */
     static class DocumentProperties {
         final Uri uri;
+        final String documentId;
         final String name;
+        final String mimeType;
         final long size;
+        final long lastModified;
         final boolean isDirectory;
 
-        public DocumentProperties(Uri uri, String name, long size, boolean isDirectory) {
-            this.uri = uri;
+        DocumentProperties(Uri parentUri, String documentId, String name, String mimeType, long size, long lastModified) {
+            this.uri = DocumentsContract.buildDocumentUriUsingTree(parentUri, documentId);
+            this.documentId = documentId;
             this.name = name;
+            this.mimeType = mimeType;
             this.size = size;
-            this.isDirectory = isDirectory;
+            this.lastModified = lastModified;
+            this.isDirectory = DocumentsContract.Document.MIME_TYPE_DIR.equals(mimeType);
         }
     }
 
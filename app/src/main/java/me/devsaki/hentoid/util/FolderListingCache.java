@@ -0,0 +1,126 @@
+package me.devsaki.hentoid.util;
+
+import android.net.Uri;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import me.devsaki.hentoid.HentoidApp;
+import timber.log.Timber;
+
+/**
+ * Persistent cache of the listings of storage folders, to avoid listing unchanged folders through the
+ * storage provider again and again (e.g. when importing the same library several times)
+ * <p>
+ * Listings are stored inside the app's cache folder, one file per storage folder, along with the
+ * last modification date of the folder at the time it has been listed. A listing is valid as long as
+ * the last modification date of its folder stays the same.
+ * <p>
+ * NB : Rewriting a file in place doesn't modify its folder, so the cached size and modification date of such a file
+ * may be outdated. Book pictures are never rewritten in place; the properties of files that are (e.g. the JSON file
+ * used by {@link FileUtil#getFingerprint}) have to be queried again by the caller.
+ */
+final class FolderListingCache {
+
+    private static final String CACHE_FOLDER = "folder_listings";
+    private static final int FORMAT_VERSION = 1;
+    // Folders modified less than that ago aren't cached, in case they get modified again within the resolution of their last modification date
+    private static final long MIN_FOLDER_AGE_MS = 2000;
+
+    private FolderListingCache() {
+        throw new IllegalStateException("Utility class");
+    }
+
+
+    /**
+     * Get the cached listing of the given folder
+     *
+     * @param folderUri    Uri of the folder
+     * @param lastModified Current last modification date of the folder
+     * @return Cached listing of the folder; null if there's none or if it is outdated
+     */
+    @Nullable
+    static List<FileUtil.DocumentProperties> get(@NonNull final Uri folderUri, long lastModified) {
+        if (lastModified <= 0) return null;
+        File cacheFile = getCacheFile(folderUri);
+        if (!cacheFile.exists()) return null;
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(cacheFile)))) {
+            if (in.readInt() != FORMAT_VERSION) return null;
+            // Different folders may share the same cache file name
+            if (!in.readUTF().equals(folderUri.toString())) return null;
+            if (in.readLong() != lastModified) return null;
+
+            int nbDocuments = in.readInt();
+            List<FileUtil.DocumentProperties> result = new ArrayList<>(nbDocuments);
+            for (int i = 0; i < nbDocuments; i++) {
+                String documentId = in.readUTF();
+                String name = in.readUTF();
+                String mimeType = in.readUTF();
+                long size = in.readLong();
+                long documentLastModified = in.readLong();
+                result.add(new FileUtil.DocumentProperties(folderUri, documentId, name, mimeType, size, documentLastModified));
+            }
+            return result;
+        } catch (IOException e) {
+            Timber.w(e, "Unreadable folder listing cache %s", cacheFile.getName());
+            return null;
+        }
+    }
+
+    /**
+     * Store the listing of the given folder
+     *
+     * @param folderUri    Uri of the folder
+     * @param lastModified Last modification date of the folder at the time it has been listed
+     * @param documents    Listing of the folder
+     */
+    static void put(@NonNull final Uri folderUri, long lastModified, @NonNull final List<FileUtil.DocumentProperties> documents) {
+        if (lastModified <= 0 || System.currentTimeMillis() - lastModified < MIN_FOLDER_AGE_MS)
+            return;
+        File cacheFolder = getCacheFolder();
+        if (!cacheFolder.exists() && !cacheFolder.mkdirs()) return;
+
+        // Write to a temporary file first to avoid readers getting a partial listing
+        File cacheFile = getCacheFile(folderUri);
+        File tempFile = new File(cacheFolder, cacheFile.getName() + "." + Thread.currentThread().getId() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)))) {
+            out.writeInt(FORMAT_VERSION);
+            out.writeUTF(folderUri.toString());
+            out.writeLong(lastModified);
+            out.writeInt(documents.size());
+            for (FileUtil.DocumentProperties doc : documents) {
+                out.writeUTF(doc.documentId);
+                out.writeUTF(doc.name);
+                out.writeUTF(doc.mimeType);
+                out.writeLong(doc.size);
+                out.writeLong(doc.lastModified);
+            }
+        } catch (IOException e) {
+            Timber.w(e, "Failed to write folder listing cache %s", cacheFile.getName());
+            FileHelper.removeFile(tempFile);
+            return;
+        }
+        if (!tempFile.renameTo(cacheFile)) FileHelper.removeFile(tempFile);
+    }
+
+    private static File getCacheFolder() {
+        return new File(HentoidApp.getInstance().getCacheDir(), CACHE_FOLDER);
+    }
+
+    private static File getCacheFile(@NonNull final Uri folderUri) {
+        String key = folderUri.toString();
+        return new File(getCacheFolder(), Integer.toHexString(key.hashCode()) + "_" + key.length());
+    }
+}
@@ -69,7 +69,7 @@ public final class GroupHelper {
             if (attribute != null) attribute.putGroup(group);
             nbContents = 0;
         } else {
-            nbContents = group.getItems().size();
+            nbContents = group.getItemCount();
         }
         for (Content book : newContents) {
             GroupItem item = new GroupItem(book, group, nbContents++);
@@ -79,12 +79,22 @@ public final class GroupHelper {
 
     /**
      * Update the JSON file that stores the groups with all the groups of the app
+     * NB : The file is written asynchronously, after a short delay (see {@link DeferredJsonWriter})
+     *
+     * @param context Context to be used
+     */
+    public static void updateGroupsJson(@NonNull Context context) {
+        DeferredJsonWriter.updateGroupsJson(context);
+    }
+
+    /**
+     * Write the JSON file that stores the groups with all the groups of the app
      *
      * @param context Context to be used
      * @param dao     DAO to be used
-     * @return True if the groups JSON file has been updated properly; false instead
+     * @return True if the groups JSON file has been written properly; false instead
      */
-    public static boolean updateGroupsJson(@NonNull Context context, @NonNull CollectionDAO dao) {
+    static boolean writeGroupsJson(@NonNull Context context, @NonNull CollectionDAO dao) {
         Helper.assertNonUiThread();
         List<Group> customGroups = dao.selectGroups(Grouping.CUSTOM.getId());
         // Save custom groups (to be able to restore them in case the app gets uninstalled)
@@ -193,14 +193,12 @@ public final class Helper {
         List<InputStream> result = new ArrayList<>();
 
         ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        FileHelper.copy(stream, baos);
 
-        byte[] buffer = new byte[1024];
-        int len;
-        while ((len = stream.read(buffer)) > -1) baos.write(buffer, 0, len);
-        baos.flush();
-
+        // ByteArrayInputStreams don't modify their data; all duplicates can share the same copy
+        byte[] data = baos.toByteArray();
         for (int i = 0; i < numberDuplicates; i++)
-            result.add(new ByteArrayInputStream(baos.toByteArray()));
+            result.add(new ByteArrayInputStream(data));
 
         return result;
     }
@@ -560,25 +560,6 @@ public class ImportHelper {
         return result;
     }
 
-    public static List<Content> scanForArchives(
-            @NonNull final Context context,
-            @NonNull final List<DocumentFile> subFolders,
-            @NonNull final ContentProviderClient client,
-            @NonNull final List<String> parentNames) {
-        List<Content> result = new ArrayList<>();
-
-        for (DocumentFile subfolder : subFolders) {
-            List<DocumentFile> archives = FileHelper.listFiles(context, subfolder, client, ArchiveHelper.getArchiveNamesFilter());
-            for (DocumentFile archive : archives) {
-                Content c = scanArchive(context, archive, parentNames, StatusContent.EXTERNAL);
-                if (!c.getStatus().equals(StatusContent.IGNORED))
-                    result.add(c);
-            }
-        }
-
-        return result;
-    }
-
     public static Content scanArchive(
             @NonNull final Context context,
             @NonNull final DocumentFile archive,
@@ -3,15 +3,20 @@ package me.devsaki.hentoid.util;
 import android.content.Context;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 import androidx.documentfile.provider.DocumentFile;
 
 import com.squareup.moshi.JsonAdapter;
+import com.squareup.moshi.JsonReader;
+import com.squareup.moshi.JsonWriter;
 import com.squareup.moshi.Moshi;
 import com.squareup.moshi.Types;
 import com.squareup.moshi.adapters.Rfc3339DateJsonAdapter;
 
+import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStream;
 import java.lang.reflect.Type;
 import java.util.Date;
@@ -20,6 +25,10 @@ import java.util.Map;
 import javax.annotation.Nonnull;
 
 import me.devsaki.hentoid.enums.AttributeType;
+import okio.BufferedSink;
+import okio.BufferedSource;
+import okio.ByteString;
+import okio.Okio;
 import timber.log.Timber;
 
 /**
@@ -36,6 +45,8 @@ public class JsonHelper {
 
     public static final Type MAP_STRINGS = Types.newParameterizedType(Map.class, String.class, String.class);
 
+    private static final ByteString UTF8_BOM = ByteString.decodeHex("efbbbf");
+
     private static final Moshi MOSHI = new Moshi.Builder()
             .add(Date.class, new Rfc3339DateJsonAdapter())
             .add(new AttributeType.AttributeTypeAdapter())
@@ -56,6 +67,20 @@ public class JsonHelper {
         return jsonAdapter.toJson(o);
     }
 
+    /**
+     * Serialize the given object to JSON format using the given writer
+     *
+     * @param writer Writer to serialize the object with
+     * @param o      Object to serialize
+     * @param type   Type of the output JSON structure to use
+     * @param <K>    Type of the given object
+     * @throws IOException If something horrible happens during I/O
+     */
+    public static <K> void serializeToJson(@NonNull final JsonWriter writer, K o, Type type) throws IOException {
+        JsonAdapter<K> jsonAdapter = MOSHI.adapter(type);
+        jsonAdapter.toJson(writer, o);
+    }
+
     /**
      * Serialize and save the object contents to a json file in the given directory.
      * The JSON file is created if it doesn't exist
@@ -89,6 +114,7 @@ public class JsonHelper {
         DocumentFile file = FileHelper.findOrCreateDocumentFile(context, dir, JSON_MIME_TYPE, fileName);
         if (null == file)
             throw new IOException("Failed creating file " + fileName + " in " + dir.getUri().getPath());
+        if (replaceJson(context, object, type, file)) return file;
 
         try (OutputStream output = FileHelper.getOutputStream(context, file)) {
             if (output != null) updateJson(object, type, output);
@@ -109,6 +135,7 @@ public class JsonHelper {
      */
     static <K> void updateJson(@NonNull final Context context, K object, Type type, @Nonnull DocumentFile file) throws IOException {
         if (!file.exists()) return;
+        if (replaceJson(context, object, type, file)) return;
 
         try (OutputStream output = FileHelper.getOutputStream(context, file)) {
             if (output != null) updateJson(object, type, output);
@@ -118,6 +145,34 @@ public class JsonHelper {
         }
     }
 
+    /**
+     * Serialize the object contents to a temporary file, then replace the given file with it, so that
+     * the given file never ends up partially written
+     * NB : Only possible when the given file can be accessed directly; SAF can't replace a file atomically
+     *
+     * @param context Context to be used
+     * @param object  Object to serialize
+     * @param type    Type of the output JSON structure to use
+     * @param file    File to replace
+     * @param <K>     Type of the given object
+     * @return True if the given file has been replaced; false if it can't be accessed directly
+     * @throws IOException If anything happens during file I/O
+     */
+    private static <K> boolean replaceJson(@NonNull final Context context, K object, Type type, @Nonnull DocumentFile file) throws IOException {
+        File target = DirectFileAccess.getFile(context, file.getUri());
+        if (null == target) return false;
+
+        File temp = new File(target.getParentFile(), target.getName() + ".tmp");
+        try (OutputStream output = FileHelper.getOutputStream(temp)) {
+            updateJson(object, type, output);
+        }
+        if (!temp.renameTo(target)) {
+            FileHelper.removeFile(temp);
+            throw new IOException("Could not replace " + target.getAbsolutePath());
+        }
+        return true;
+    }
+
     /**
      * Serialize and save the object contents to the given OutputStream using the JSON format
      *
@@ -128,8 +183,12 @@ public class JsonHelper {
      * @throws IOException If anything happens during file I/O
      */
     private static <K> void updateJson(K object, Type type, @Nonnull OutputStream output) throws IOException {
-        byte[] bytes = serializeToJson(object, type).getBytes();
-        output.write(bytes);
+        JsonAdapter<K> jsonAdapter = MOSHI.adapter(type);
+
+        // Not closed here as it would close the given stream
+        BufferedSink sink = Okio.buffer(Okio.sink(output));
+        jsonAdapter.toJson(sink, object);
+        sink.flush();
         FileHelper.sync(output);
         output.flush();
     }
@@ -145,7 +204,7 @@ public class JsonHelper {
      * @throws IOException If anything happens during file I/O
      */
     public static <T> T jsonToObject(@NonNull final Context context, DocumentFile f, Class<T> type) throws IOException {
-        return jsonToObject(FileHelper.readFileAsString(context, f), type);
+        return jsonToObject(context, f, (Type) type);
     }
 
     /**
@@ -159,7 +218,58 @@ public class JsonHelper {
      * @throws IOException If anything happens during file I/O
      */
     public static <T> T jsonToObject(@NonNull final Context context, @NonNull DocumentFile f, Type type) throws IOException {
-        return jsonToObject(FileHelper.readFileAsString(context, f), type);
+        JsonAdapter<T> jsonAdapter = MOSHI.adapter(type);
+
+        // JSON data is decoded as it is read from the file, without loading the whole file into memory
+        try (JsonReader reader = openJsonReader(context, f)) {
+            return jsonAdapter.fromJson(reader);
+        }
+    }
+
+    /**
+     * Convert the next JSON value read by the given reader to an object of the given type
+     *
+     * @param reader Reader to read JSON data from
+     * @param type   Type of the input JSON structure to use
+     * @param <T>    Type of the converted object
+     * @return Object of the given type representing the next JSON value; null if that value is null
+     * @throws IOException If anything happens during I/O
+     */
+    @Nullable
+    public static <T> T jsonToObject(@NonNull final JsonReader reader, Type type) throws IOException {
+        JsonAdapter<T> jsonAdapter = MOSHI.adapter(type);
+        return jsonAdapter.fromJson(reader);
+    }
+
+    /**
+     * Open a lenient JSON reader on the given file, to read its JSON data progressively
+     * Leading BOMs are ignored
+     *
+     * @param context Context to be used
+     * @param f       File to read JSON data from
+     * @return JSON reader positioned at the beginning of the JSON data of the given file; has to be closed by the caller
+     * @throws IOException If anything happens during file I/O
+     */
+    public static JsonReader openJsonReader(@NonNull final Context context, @NonNull DocumentFile f) throws IOException {
+        InputStream input;
+        try {
+            input = FileHelper.getInputStream(context, f);
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Error while reading " + f.getUri(), e);
+        }
+        if (null == input) throw new IOException("Could not open " + f.getUri());
+
+        BufferedSource source = Okio.buffer(Okio.source(input));
+        try {
+            // Skip UTF-8 BOM if any
+            if (source.rangeEquals(0, UTF8_BOM)) source.skip(UTF8_BOM.size());
+        } catch (IOException e) {
+            source.close();
+            throw e;
+        }
+        JsonReader result = JsonReader.of(source);
+        result.setLenient(true);
+        return result;
     }
 
     /**
@@ -0,0 +1,429 @@
+package me.devsaki.hentoid.util;
+
+import android.content.ContentProviderClient;
+import android.content.Context;
+import android.net.Uri;
+import android.os.Build;
+import android.provider.DocumentsContract;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.documentfile.provider.DocumentFile;
+
+import com.squareup.moshi.JsonReader;
+import com.squareup.moshi.JsonWriter;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import me.devsaki.hentoid.database.CollectionDAO;
+import me.devsaki.hentoid.database.domains.Content;
+import me.devsaki.hentoid.json.JsonLibraryIndexEntry;
+import okio.BufferedSink;
+import okio.Okio;
+import timber.log.Timber;
+
+/**
+ * Consolidated index of the metadata of all books of the library, stored at the root of the library folder
+ * <p>
+ * The index is a sequence of {@link JsonLibraryIndexEntry}, one per line; it is kept up to date by appending new
+ * entries at its end, the last entry of a given folder superseding the previous ones. It is compacted from time to time.
+ * <p>
+ * Each entry records the fingerprint of its book folder (see {@link FileHelper#getFolderFingerprint}), so that
+ * entries of folders that have changed since they were written can be detected and ignored.
+ * <p>
+ * Appends happen on the {@link DeferredJsonWriter} thread while rewrites happen on the import thread; all writes
+ * to the index and to its appends counter are serialized by a single lock.
+ */
+public final class LibraryIndex {
+
+    // Number of entries appended to the index after which it is compacted
+    private static final int COMPACTION_THRESHOLD = 1000;
+
+    private static final String TEMP_FILE_SUFFIX = ".tmp";
+
+    // Guards all writes to the index file and to the appends counter
+    private static final Object writeLock = new Object();
+
+    private LibraryIndex() {
+        throw new IllegalStateException("Utility class");
+    }
+
+
+    /**
+     * Get the path of the given folder relative to the given root folder, as used to identify book folders inside the index
+     *
+     * @param rootUri   Uri of the root folder
+     * @param folderUri Uri of the folder to get the path of
+     * @return Path of the given folder relative to the given root folder; null if it isn't located inside the root folder
+     */
+    @Nullable
+    public static String getRelativePath(@NonNull final Uri rootUri, @NonNull final Uri folderUri) {
+        try {
+            String rootId = DocumentsContract.getTreeDocumentId(rootUri);
+            if (!rootId.equals(DocumentsContract.getTreeDocumentId(folderUri))) return null;
+            String folderId = DocumentsContract.getDocumentId(folderUri);
+            if (!folderId.startsWith(rootId) || folderId.length() == rootId.length()) return null;
+            // e.g. "primary:Hentoid2" isn't located inside "primary:Hentoid"
+            if (!rootId.endsWith("/") && !rootId.endsWith(":") && folderId.charAt(rootId.length()) != '/')
+                return null;
+            return folderId.substring(rootId.length());
+        } catch (IllegalArgumentException e) {
+            Timber.d(e);
+            return null;
+        }
+    }
+
+    /**
+     * Append the entries of the given books to the index of the current library
+     * NB : Books that aren't stored inside the library folder or whose JSON file doesn't exist are ignored
+     *
+     * @param context  Context to use
+     * @param contents Books to add to the index
+     */
+    static void append(@NonNull final Context context, @NonNull final List<Content> contents) {
+        Helper.assertNonUiThread();
+        if (contents.isEmpty()) return;
+
+        synchronized (writeLock) {
+            doAppend(context, contents);
+        }
+    }
+
+    // Must be called while holding writeLock
+    private static void doAppend(@NonNull final Context context, @NonNull final List<Content> contents) {
+        DocumentFile rootFolder = FileHelper.getFolderFromTreeUriString(context, Preferences.getStorageUri());
+        if (null == rootFolder) return;
+        ContentProviderClient client = context.getContentResolver().acquireContentProviderClient(rootFolder.getUri());
+        if (null == client) return;
+
+        int nbAppended = 0;
+        try {
+            DocumentFile indexFile = FileHelper.findOrCreateDocumentFile(context, rootFolder, JsonHelper.JSON_MIME_TYPE, Consts.LIBRARY_INDEX_FILE_NAME);
+            if (null == indexFile) {
+                Timber.w("Could not create library index");
+                return;
+            }
+            OutputStream output = openAppendStream(context, indexFile);
+            if (null == output) return;
+            try (BufferedSink sink = Okio.buffer(Okio.sink(output))) {
+                for (Content c : contents) {
+                    JsonLibraryIndexEntry entry = buildEntry(context, rootFolder, client, c, null);
+                    if (entry != null) {
+                        writeEntry(sink, entry);
+                        nbAppended++;
+                    }
+                }
+            }
+        } catch (IOException e) {
+            Timber.w(e);
+        } finally {
+            releaseClient(client);
+        }
+
+        if (nbAppended > 0) {
+            int nbAppendedTotal = Preferences.getLibraryIndexAppends() + nbAppended;
+            if (nbAppendedTotal >= COMPACTION_THRESHOLD) compact(context);
+            else Preferences.setLibraryIndexAppends(nbAppendedTotal);
+        }
+    }
+
+    /**
+     * Rewrite the index of the current library with the books of the library stored in the DB
+     * NB : To be used after importing the library, when the folder fingerprints stored in the DB are up to date
+     *
+     * @param context Context to use
+     * @param dao     DAO to use
+     */
+    public static void rewrite(@NonNull final Context context, @NonNull final CollectionDAO dao) {
+        Helper.assertNonUiThread();
+        DocumentFile rootFolder = FileHelper.getFolderFromTreeUriString(context, Preferences.getStorageUri());
+        if (null == rootFolder) return;
+
+        synchronized (writeLock) {
+            doRewrite(context, rootFolder, dao);
+        }
+    }
+
+    // Must be called while holding writeLock
+    private static void doRewrite(@NonNull final Context context, @NonNull final DocumentFile rootFolder, @NonNull final CollectionDAO dao) {
+        long[] contentIds = dao.selectAllInternalBookIds(false);
+        try {
+            replace(context, rootFolder, sink -> {
+                // Books are loaded one by one to keep memory usage bounded
+                for (long contentId : contentIds) {
+                    Content c = dao.selectContent(contentId);
+                    if (null == c) continue;
+                    JsonLibraryIndexEntry entry = buildEntry(context, rootFolder, null, c, c.getFolderFingerprint());
+                    if (entry != null) writeEntry(sink, entry);
+                }
+            });
+            Preferences.setLibraryIndexAppends(0);
+        } catch (IOException e) {
+            Timber.w(e);
+        }
+    }
+
+    /**
+     * Compact the index of the current library by removing the entries that have been superseded
+     * NB : Must be called while holding writeLock
+     */
+    private static void compact(@NonNull final Context context) {
+        DocumentFile rootFolder = FileHelper.getFolderFromTreeUriString(context, Preferences.getStorageUri());
+        if (null == rootFolder) return;
+        DocumentFile indexFile = FileHelper.findFile(context, rootFolder, Consts.LIBRARY_INDEX_FILE_NAME);
+        if (null == indexFile) return;
+
+        try {
+            Map<String, Integer> lastOrdinals = readFolderOrdinals(context, indexFile);
+            try (JsonReader reader = JsonHelper.openJsonReader(context, indexFile)) {
+                replace(context, rootFolder, sink -> {
+                    for (int ordinal = 0; ; ordinal++) {
+                        Object value;
+                        try {
+                            if (reader.peek() == JsonReader.Token.END_DOCUMENT) break;
+                            value = reader.readJsonValue();
+                        } catch (IOException | RuntimeException e) {
+                            // Truncated or corrupted entry; drop it along with the following ones
+                            Timber.w(e);
+                            break;
+                        }
+                        if (!(value instanceof Map)) continue;
+                        Object folder = ((Map<?, ?>) value).get("folder");
+                        Integer lastOrdinal = (folder instanceof String) ? lastOrdinals.get(folder) : null;
+                        if (lastOrdinal != null && lastOrdinal == ordinal) {
+                            JsonWriter writer = JsonWriter.of(sink);
+                            writer.jsonValue(value);
+                            writer.flush();
+                            sink.writeUtf8("\n");
+                        }
+                    }
+                });
+            }
+            Preferences.setLibraryIndexAppends(0);
+        } catch (IOException e) {
+            Timber.w(e);
+        }
+    }
+
+    /**
+     * Build the index entry of the given book
+     *
+     * @param context     Context to use
+     * @param rootFolder  Root folder of the library
+     * @param client      ContentProviderClient to use to compute the fingerprint of the book's folder; null to use the given fingerprint
+     * @param content     Book to build the entry of
+     * @param fingerprint Fingerprint of the book's folder, if known
+     * @return Index entry of the given book; null if it can't be built
+     */
+    @Nullable
+    private static JsonLibraryIndexEntry buildEntry(
+            @NonNull final Context context,
+            @NonNull final DocumentFile rootFolder,
+            @Nullable final ContentProviderClient client,
+            @NonNull final Content content,
+            @Nullable String fingerprint) {
+        if (content.isArchive() || content.getStorageUri().isEmpty()) return null;
+        String folder = getRelativePath(rootFolder.getUri(), Uri.parse(content.getStorageUri()));
+        if (null == folder) return null;
+
+        if (client != null) {
+            DocumentFile bookFolder = FileHelper.getFolderFromTreeUriString(context, content.getStorageUri());
+            if (null == bookFolder) return null;
+            fingerprint = FileHelper.getFolderFingerprint(bookFolder, client, Consts.JSON_FILE_NAME_V2);
+        }
+        if (null == fingerprint) return null;
+
+        return JsonLibraryIndexEntry.fromEntity(folder, fingerprint, content);
+    }
+
+    private static void writeEntry(@NonNull final BufferedSink sink, @NonNull final JsonLibraryIndexEntry entry) throws IOException {
+        // Not closed here as it would close the given sink
+        JsonWriter writer = JsonWriter.of(sink);
+        JsonHelper.serializeToJson(writer, entry, JsonLibraryIndexEntry.class);
+        writer.flush();
+        sink.writeUtf8("\n");
+    }
+
+    /**
+     * Read the folders of all entries of the given index
+     * NB : If the index ends with a partially written entry (e.g. if the app has been killed while appending entries to it),
+     * the entries read before that one are still returned
+     *
+     * @param context   Context to use
+     * @param indexFile Index file to read
+     * @return Position of the last entry of each folder inside the index, indexed by folder
+     * @throws IOException If the index can't be opened
+     */
+    private static Map<String, Integer> readFolderOrdinals(@NonNull final Context context, @NonNull final DocumentFile indexFile) throws IOException {
+        Map<String, Integer> result = new HashMap<>();
+        try (JsonReader reader = JsonHelper.openJsonReader(context, indexFile)) {
+            int ordinal = 0;
+            while (reader.peek() != JsonReader.Token.END_DOCUMENT) {
+                String folder = null;
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    if ("folder".equals(reader.nextName())) folder = reader.nextString();
+                    else reader.skipValue();
+                }
+                reader.endObject();
+                if (folder != null) result.put(folder, ordinal);
+                ordinal++;
+            }
+        } catch (IOException | IllegalStateException e) {
+            // Truncated or corrupted entry; keep those read so far
+            Timber.w(e, "Library index could only be partially read");
+        }
+        return result;
+    }
+
+    @Nullable
+    private static OutputStream openAppendStream(@NonNull final Context context, @NonNull final DocumentFile file) throws IOException {
+        File directFile = DirectFileAccess.getFile(context, file.getUri());
+        if (directFile != null) return new FileOutputStream(directFile, true);
+        return context.getContentResolver().openOutputStream(file.getUri(), "wa");
+    }
+
+    /**
+     * Replace the index of the given library with the entries written by the given writer
+     * NB : The current index is kept as it is if the new one can't be written entirely
+     */
+    private static void replace(@NonNull final Context context, @NonNull final DocumentFile rootFolder, @NonNull final EntriesWriter entriesWriter) throws IOException {
+        String tempName = Consts.LIBRARY_INDEX_FILE_NAME + TEMP_FILE_SUFFIX;
+        DocumentFile tempFile = FileHelper.findOrCreateDocumentFile(context, rootFolder, JsonHelper.JSON_MIME_TYPE, tempName);
+        if (null == tempFile) throw new IOException("Could not create " + tempName);
+
+        try (OutputStream output = FileHelper.getOutputStream(context, tempFile)) {
+            if (null == output) throw new IOException("Could not open " + tempName);
+            try (BufferedSink sink = Okio.buffer(Okio.sink(output))) {
+                entriesWriter.write(sink);
+            }
+        } catch (IOException e) {
+            tempFile.delete();
+            throw e;
+        }
+
+        // Direct access allows replacing the index in one go
+        File directTemp = DirectFileAccess.getFile(context, tempFile.getUri());
+        if (directTemp != null && directTemp.renameTo(new File(directTemp.getParentFile(), Consts.LIBRARY_INDEX_FILE_NAME)))
+            return;
+
+        DocumentFile indexFile = FileHelper.findFile(context, rootFolder, Consts.LIBRARY_INDEX_FILE_NAME);
+        if (indexFile != null && !indexFile.delete())
+            throw new IOException("Could not delete " + Consts.LIBRARY_INDEX_FILE_NAME);
+        if (!tempFile.renameTo(Consts.LIBRARY_INDEX_FILE_NAME))
+            throw new IOException("Could not rename " + tempName);
+    }
+
+    private static void releaseClient(@NonNull final ContentProviderClient client) {
+        // ContentProviderClient.close only available on API level 24+
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N)
+            client.close();
+        else
+            client.release();
+    }
+
+    @FunctionalInterface
+    private interface EntriesWriter {
+        void write(@NonNull BufferedSink sink) throws IOException;
+    }
+
+
+    /**
+     * Sequential reader of the index of the library, used when importing the library
+     * <p>
+     * Entries have to be read in the order they appear in the index (see {@link #getOrdinal(String)})
+     */
+    public static class Reader implements Closeable {
+
+        private final Map<String, Integer> ordinals;
+        private final JsonReader reader;
+        // Position of the next entry to be read
+        private int position = 0;
+        private boolean isBroken = false;
+
+        /**
+         * Open the index of the library located in the given root folder
+         *
+         * @param context    Context to use
+         * @param rootFolder Root folder of the library
+         * @param client     ContentProviderClient to use
+         * @return Reader of the index of the given library; null if it doesn't exist or can't be read
+         */
+        @Nullable
+        public static Reader open(@NonNull final Context context, @NonNull final DocumentFile rootFolder, @NonNull final ContentProviderClient client) {
+            DocumentFile indexFile = FileHelper.findFile(context, rootFolder, client, Consts.LIBRARY_INDEX_FILE_NAME);
+            if (null == indexFile) return null;
+            return open(context, indexFile);
+        }
+
+        /**
+         * Open the given index file
+         *
+         * @param context   Context to use
+         * @param indexFile Index file to read
+         * @return Reader of the given index; null if it is empty or can't be read
+         */
+        @Nullable
+        static Reader open(@NonNull final Context context, @NonNull final DocumentFile indexFile) {
+            try {
+                Map<String, Integer> ordinals = readFolderOrdinals(context, indexFile);
+                if (ordinals.isEmpty()) return null;
+                return new Reader(ordinals, JsonHelper.openJsonReader(context, indexFile));
+            } catch (IOException e) {
+                Timber.w(e);
+                return null;
+            }
+        }
+
+        private Reader(@NonNull final Map<String, Integer> ordinals, @NonNull final JsonReader reader) {
+            this.ordinals = ordinals;
+            this.reader = reader;
+        }
+
+        /**
+         * @param folder Path of the folder to look for, relative to the root folder of the library
+         * @return Position of the entry of the given folder inside the index; -1 if it isn't indexed
+         */
+        public int getOrdinal(@NonNull final String folder) {
+            Integer result = ordinals.get(folder);
+            return (null == result) ? -1 : result;
+        }
+
+        /**
+         * Read the entry of the given folder
+         * NB : Entries located before the last one read can't be read anymore
+         *
+         * @param folder Path of the folder to read the entry of, relative to the root folder of the library
+         * @return Entry of the given folder; null if it isn't indexed or can't be read anymore
+         */
+        @Nullable
+        public JsonLibraryIndexEntry read(@NonNull final String folder) {
+            int ordinal = getOrdinal(folder);
+            if (isBroken || ordinal < position) return null;
+            try {
+                while (position < ordinal) {
+                    reader.skipValue();
+                    position++;
+                }
+                position++;
+                return JsonHelper.jsonToObject(reader, JsonLibraryIndexEntry.class);
+            } catch (IOException | RuntimeException e) {
+                Timber.w(e);
+                isBroken = true;
+                return null;
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            reader.close();
+        }
+    }
+}
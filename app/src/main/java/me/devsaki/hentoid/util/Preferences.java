@@ -10,8 +10,10 @@ import androidx.preference.PreferenceManager;
 import com.annimon.stream.Stream;
 
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import me.devsaki.hentoid.BuildConfig;
 import me.devsaki.hentoid.enums.Grouping;
@@ -153,6 +155,16 @@ public final class Preferences {
                 .apply();
     }
 
+    public static int getLibraryIndexAppends() {
+        return sharedPreferences.getInt(Key.LIBRARY_INDEX_APPENDS, 0);
+    }
+
+    public static void setLibraryIndexAppends(int nbAppends) {
+        sharedPreferences.edit()
+                .putInt(Key.LIBRARY_INDEX_APPENDS, nbAppends)
+                .apply();
+    }
+
     public static boolean isAnalyticsEnabled() {
         return sharedPreferences.getBoolean(Key.ANALYTICS_PREFERENCE, true);
     }
@@ -453,6 +465,19 @@ public final class Preferences {
                 .apply();
     }
 
+    public static Set<String> getCompletedMaintenanceTasks() {
+        return sharedPreferences.getStringSet(Key.COMPLETED_MAINTENANCE_TASKS, Collections.emptySet());
+    }
+
+    public static synchronized void addCompletedMaintenanceTask(String taskName) {
+        // NB : The set returned by SharedPreferences must not be modified
+        Set<String> tasks = new HashSet<>(getCompletedMaintenanceTasks());
+        tasks.add(taskName);
+        sharedPreferences.edit()
+                .putStringSet(Key.COMPLETED_MAINTENANCE_TASKS, tasks)
+                .apply();
+    }
+
     public static boolean isQueueAutostart() {
         return sharedPreferences.getBoolean(Key.QUEUE_AUTOSTART, Default.QUEUE_AUTOSTART);
     }
@@ -584,6 +609,7 @@ public final class Preferences {
         public static final String IMPORT_LIBRARY = "pref_import_library";
         static final String WELCOME_DONE = "pref_welcome_done";
         static final String VERSION_KEY = "prefs_version";
+        static final String LIBRARY_INDEX_APPENDS = "pref_library_index_appends";
         public static final String LIBRARY_DISPLAY = "pref_library_display";
         static final String QUANTITY_PER_PAGE_LISTS = "pref_quantity_per_page_lists";
         static final String ORDER_CONTENT_FIELD = "pref_order_content_field";
@@ -631,6 +657,7 @@ public final class Preferences {
         public static final String VIEWER_HOLD_TO_ZOOM = "pref_viewer_zoom_holding";
         public static final String VIEWER_AUTO_ROTATE = "pref_viewer_auto_rotate";
         static final String LAST_KNOWN_APP_VERSION_CODE = "last_known_app_version_code";
+        static final String COMPLETED_MAINTENANCE_TASKS = "completed_maintenance_tasks";
         public static final String COLOR_THEME = "pref_color_theme";
         static final String QUEUE_AUTOSTART = "pref_queue_autostart";
         static final String QUEUE_WIFI_ONLY = "pref_queue_wifi_only";
@@ -0,0 +1,321 @@
+package me.devsaki.hentoid.util;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.net.Uri;
+import android.os.ParcelFileDescriptor;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+import java.util.zip.ZipException;
+
+/**
+ * Random-access ZIP reader working on the file descriptor behind a Uri
+ * <p>
+ * The central directory of the archive is read once when the reader is opened; entries can then be
+ * read in any order without reading the entries located before them.
+ * Only works on archives stored as regular files (i.e. seekable file descriptors); see {@link #open(Context, Uri)}
+ */
+class SeekableZipReader implements Closeable {
+
+    private static final int LOCAL_HEADER_SIGNATURE = 0x04034b50;
+    private static final int CENTRAL_HEADER_SIGNATURE = 0x02014b50;
+    private static final int END_OF_CENTRAL_DIR_SIGNATURE = 0x06054b50;
+    private static final int ZIP64_END_OF_CENTRAL_DIR_SIGNATURE = 0x06064b50;
+    private static final int ZIP64_END_OF_CENTRAL_DIR_LOCATOR_SIGNATURE = 0x07064b50;
+    private static final int ZIP64_EXTRA_FIELD_ID = 0x0001;
+
+    private static final int LOCAL_HEADER_SIZE = 30;
+    private static final int CENTRAL_HEADER_SIZE = 46;
+    private static final int END_OF_CENTRAL_DIR_SIZE = 22;
+    private static final int ZIP64_END_OF_CENTRAL_DIR_LOCATOR_SIZE = 20;
+    private static final int ZIP64_END_OF_CENTRAL_DIR_SIZE = 56;
+    private static final int MAX_COMMENT_SIZE = 0xFFFF;
+    private static final long ZIP64_MAGIC = 0xFFFFFFFFL;
+
+    static final int METHOD_STORED = 0;
+    static final int METHOD_DEFLATED = 8;
+
+    private final Closeable source;
+    private final FileChannel channel;
+    private final List<Entry> entries;
+
+
+    /**
+     * Entry of a ZIP archive, as described by the central directory
+     */
+    static class Entry {
+        final String name;
+        final int method;
+        final long compressedSize;
+        final long size;
+        final long localHeaderOffset;
+
+        Entry(String name, int method, long compressedSize, long size, long localHeaderOffset) {
+            this.name = name;
+            this.method = method;
+            this.compressedSize = compressedSize;
+            this.size = size;
+            this.localHeaderOffset = localHeaderOffset;
+        }
+
+        boolean isDirectory() {
+            return name.endsWith("/");
+        }
+    }
+
+    private SeekableZipReader(@NonNull final Closeable source, @NonNull final FileChannel channel) throws IOException {
+        this.source = source;
+        this.channel = channel;
+        this.entries = readCentralDirectory();
+    }
+
+    /**
+     * Open a reader on the ZIP archive at the given Uri
+     *
+     * @param context Context to use
+     * @param uri     Uri of the archive
+     * @return Reader on the given archive; null if the archive can't be accessed randomly (e.g. provider serving a pipe)
+     * @throws IOException If the archive can't be opened or isn't a valid ZIP archive
+     */
+    @Nullable
+    static SeekableZipReader open(@NonNull final Context context, @NonNull final Uri uri) throws IOException {
+        FileInputStream fis;
+        if (ContentResolver.SCHEME_FILE.equals(uri.getScheme())) {
+            String path = uri.getPath();
+            if (null == path) return null;
+            fis = new FileInputStream(new File(path));
+        } else {
+            ParcelFileDescriptor pfd = context.getContentResolver().openFileDescriptor(uri, "r");
+            if (null == pfd) return null;
+            fis = new ParcelFileDescriptor.AutoCloseInputStream(pfd);
+        }
+
+        FileChannel channel = fis.getChannel();
+        try {
+            channel.size(); // Throws on non-seekable descriptors
+        } catch (IOException e) {
+            fis.close();
+            return null;
+        }
+        try {
+            return new SeekableZipReader(fis, channel);
+        } catch (IOException e) {
+            fis.close();
+            throw e;
+        }
+    }
+
+    /**
+     * @return Entries of the archive, in the order of the central directory
+     */
+    List<Entry> getEntries() {
+        return entries;
+    }
+
+    /**
+     * Open a stream on the uncompressed data of the given entry
+     * NB : Several entries can be read at the same time
+     *
+     * @param entry Entry to read
+     * @return Stream on the uncompressed data of the given entry
+     * @throws IOException If the entry can't be read
+     */
+    InputStream getInputStream(@NonNull final Entry entry) throws IOException {
+        ByteBuffer header = readFully(entry.localHeaderOffset, LOCAL_HEADER_SIZE);
+        if (header.getInt(0) != LOCAL_HEADER_SIGNATURE)
+            throw new ZipException("Invalid local header for " + entry.name);
+        // Local extra field may differ from the central one
+        long dataOffset = entry.localHeaderOffset + LOCAL_HEADER_SIZE + getUnsignedShort(header, 26) + getUnsignedShort(header, 28);
+
+        switch (entry.method) {
+            case METHOD_STORED:
+                return new ChannelInputStream(channel, dataOffset, entry.compressedSize, false);
+            case METHOD_DEFLATED:
+                // Raw inflating needs an extra dummy byte at the end of the input
+                Inflater inflater = new Inflater(true);
+                return new InflaterInputStream(new ChannelInputStream(channel, dataOffset, entry.compressedSize, true), inflater, BufferPool.BUFFER_SIZE / 16) {
+                    @Override
+                    public void close() throws IOException {
+                        super.close();
+                        inflater.end();
+                    }
+                };
+            default:
+                throw new ZipException("Unsupported compression method " + entry.method + " for " + entry.name);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        source.close();
+    }
+
+    private List<Entry> readCentralDirectory() throws IOException {
+        long fileSize = channel.size();
+        if (fileSize < END_OF_CENTRAL_DIR_SIZE) throw new ZipException("File too small");
+
+        // Look for the end of central directory record from the end of the file (it's followed by a comment of variable size)
+        int tailSize = (int) Math.min(fileSize, END_OF_CENTRAL_DIR_SIZE + MAX_COMMENT_SIZE);
+        long tailOffset = fileSize - tailSize;
+        ByteBuffer tail = readFully(tailOffset, tailSize);
+        int eocdPos = -1;
+        for (int i = tailSize - END_OF_CENTRAL_DIR_SIZE; i >= 0; i--)
+            if (tail.getInt(i) == END_OF_CENTRAL_DIR_SIGNATURE) {
+                eocdPos = i;
+                break;
+            }
+        if (eocdPos < 0) throw new ZipException("End of central directory not found");
+
+        long nbEntries = getUnsignedShort(tail, eocdPos + 10);
+        long cdSize = getUnsignedInt(tail, eocdPos + 12);
+        long cdOffset = getUnsignedInt(tail, eocdPos + 16);
+
+        // ZIP64 archive
+        long locatorOffset = tailOffset + eocdPos - ZIP64_END_OF_CENTRAL_DIR_LOCATOR_SIZE;
+        if ((0xFFFF == nbEntries || ZIP64_MAGIC == cdSize || ZIP64_MAGIC == cdOffset) && locatorOffset >= 0) {
+            ByteBuffer locator = readFully(locatorOffset, ZIP64_END_OF_CENTRAL_DIR_LOCATOR_SIZE);
+            if (locator.getInt(0) == ZIP64_END_OF_CENTRAL_DIR_LOCATOR_SIGNATURE) {
+                ByteBuffer eocd64 = readFully(locator.getLong(8), ZIP64_END_OF_CENTRAL_DIR_SIZE);
+                if (eocd64.getInt(0) != ZIP64_END_OF_CENTRAL_DIR_SIGNATURE)
+                    throw new ZipException("Invalid ZIP64 end of central directory");
+                nbEntries = eocd64.getLong(32);
+                cdSize = eocd64.getLong(40);
+                cdOffset = eocd64.getLong(48);
+            }
+        }
+        if (cdOffset + cdSize > fileSize || cdSize > Integer.MAX_VALUE)
+            throw new ZipException("Invalid central directory");
+
+        ByteBuffer cd = readFully(cdOffset, (int) cdSize);
+        List<Entry> result = new ArrayList<>((int) Math.min(nbEntries, 0xFFFF));
+        int pos = 0;
+        while (pos + CENTRAL_HEADER_SIZE <= cdSize && cd.getInt(pos) == CENTRAL_HEADER_SIGNATURE) {
+            int method = getUnsignedShort(cd, pos + 10);
+            long compressedSize = getUnsignedInt(cd, pos + 20);
+            long size = getUnsignedInt(cd, pos + 24);
+            int nameLength = getUnsignedShort(cd, pos + 28);
+            int extraLength = getUnsignedShort(cd, pos + 30);
+            int commentLength = getUnsignedShort(cd, pos + 32);
+            long localHeaderOffset = getUnsignedInt(cd, pos + 42);
+
+            byte[] nameBytes = new byte[nameLength];
+            cd.position(pos + CENTRAL_HEADER_SIZE);
+            cd.get(nameBytes);
+            String name = new String(nameBytes, StandardCharsets.UTF_8);
+
+            // ZIP64 extended information; only the fields set to the magic value are present, in that order
+            int extraPos = pos + CENTRAL_HEADER_SIZE + nameLength;
+            int extraEnd = extraPos + extraLength;
+            while (extraPos + 4 <= extraEnd) {
+                int id = getUnsignedShort(cd, extraPos);
+                int length = getUnsignedShort(cd, extraPos + 2);
+                if (ZIP64_EXTRA_FIELD_ID == id) {
+                    int fieldPos = extraPos + 4;
+                    if (ZIP64_MAGIC == size) {
+                        size = cd.getLong(fieldPos);
+                        fieldPos += 8;
+                    }
+                    if (ZIP64_MAGIC == compressedSize) {
+                        compressedSize = cd.getLong(fieldPos);
+                        fieldPos += 8;
+                    }
+                    if (ZIP64_MAGIC == localHeaderOffset) localHeaderOffset = cd.getLong(fieldPos);
+                    break;
+                }
+                extraPos += 4 + length;
+            }
+
+            result.add(new Entry(name, method, compressedSize, size, localHeaderOffset));
+            pos += CENTRAL_HEADER_SIZE + nameLength + extraLength + commentLength;
+        }
+        return Collections.unmodifiableList(result);
+    }
+
+    private ByteBuffer readFully(long position, int length) throws IOException {
+        ByteBuffer result = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+        while (result.hasRemaining()) {
+            int read = channel.read(result, position + result.position());
+            if (read < 0) throw new ZipException("Unexpected end of file");
+        }
+        result.flip();
+        return result;
+    }
+
+    private static int getUnsignedShort(@NonNull final ByteBuffer buffer, int index) {
+        return buffer.getShort(index) & 0xFFFF;
+    }
+
+    private static long getUnsignedInt(@NonNull final ByteBuffer buffer, int index) {
+        return buffer.getInt(index) & 0xFFFFFFFFL;
+    }
+
+    /**
+     * Stream reading a given range of a channel, using positional reads to let several streams share the same channel
+     */
+    private static class ChannelInputStream extends InputStream {
+        private final FileChannel channel;
+        private long position;
+        private long remaining;
+        private boolean addDummyByte;
+
+        ChannelInputStream(@NonNull final FileChannel channel, long position, long length, boolean addDummyByte) {
+            this.channel = channel;
+            this.position = position;
+            this.remaining = length;
+            this.addDummyByte = addDummyByte;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] b = new byte[1];
+            return (read(b, 0, 1) < 0) ? -1 : (b[0] & 0xFF);
+        }
+
+        @Override
+        public int read(@NonNull byte[] b, int off, int len) throws IOException {
+            if (0 == len) return 0;
+            if (remaining <= 0) {
+                if (addDummyByte) {
+                    addDummyByte = false;
+                    b[off] = 0;
+                    return 1;
+                }
+                return -1;
+            }
+            int read = channel.read(ByteBuffer.wrap(b, off, (int) Math.min(len, remaining)), position);
+            if (read < 0) throw new ZipException("Unexpected end of file");
+            position += read;
+            remaining -= read;
+            return read;
+        }
+
+        @Override
+        public long skip(long n) {
+            long skipped = Math.max(0, Math.min(n, remaining));
+            position += skipped;
+            remaining -= skipped;
+            return skipped;
+        }
+
+        @Override
+        public int available() {
+            return (int) Math.min(remaining, Integer.MAX_VALUE);
+        }
+    }
+}
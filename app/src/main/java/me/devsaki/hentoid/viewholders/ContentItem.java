@@ -22,6 +22,7 @@ import androidx.core.content.ContextCompat;
 import androidx.recyclerview.widget.ItemTouchHelper;
 import androidx.recyclerview.widget.RecyclerView;
 
+import com.annimon.stream.Stream;
 import com.annimon.stream.function.Consumer;
 import com.bumptech.glide.Glide;
 import com.bumptech.glide.load.model.GlideUrl;
@@ -40,6 +41,7 @@ import java.io.IOException;
 import java.lang.annotation.Retention;
 import java.lang.annotation.RetentionPolicy;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
@@ -302,7 +304,11 @@ public class ContentItem extends AbstractItem<ContentItem.ContentViewHolder> imp
                 longValue = bundleParser.getReadPagesCount();
                 if (longValue != null) item.content.setReadPagesCount(longValue.intValue());
                 String stringValue = bundleParser.getCoverUri();
-                if (stringValue != null) item.content.getCover().setFileUri(stringValue);
+                if (stringValue != null) {
+                    if (item.content.getSummary() != null)
+                        item.content.getSummary().setCoverUri(stringValue);
+                    else item.content.getCover().setFileUri(stringValue);
+                }
             }
 
             if (item.deleteAction != null)
@@ -347,7 +353,9 @@ public class ContentItem extends AbstractItem<ContentItem.ContentViewHolder> imp
 
         private void attachCover(@NonNull final Content content) {
             String thumbLocation = "";
-            if (content.getCover().getStatus().equals(StatusContent.DOWNLOADED) || content.getCover().getStatus().equals(StatusContent.MIGRATED) || content.getCover().getStatus().equals(StatusContent.EXTERNAL))
+            if (content.getSummary() != null)
+                thumbLocation = content.getSummary().getCoverUri();
+            else if (content.getCover().getStatus().equals(StatusContent.DOWNLOADED) || content.getCover().getStatus().equals(StatusContent.MIGRATED) || content.getCover().getStatus().equals(StatusContent.EXTERNAL))
                 thumbLocation = content.getCover().getFileUri();
             if (thumbLocation.isEmpty()) thumbLocation = content.getCover().getUrl();
             if (thumbLocation.isEmpty()) thumbLocation = content.getCoverImageUrl();
@@ -394,10 +402,15 @@ public class ContentItem extends AbstractItem<ContentItem.ContentViewHolder> imp
         }
 
         private void attachFlag(@NonNull final Content content) {
-            List<Attribute> langAttributes = content.getAttributeMap().get(AttributeType.LANGUAGE);
-            if (langAttributes != null && !langAttributes.isEmpty())
-                for (Attribute lang : langAttributes) {
-                    @DrawableRes int resId = LanguageHelper.getFlagFromLanguage(ivFlag.getContext(), lang.getName());
+            List<String> languages;
+            if (content.getSummary() != null) languages = content.getSummary().getLanguages();
+            else {
+                List<Attribute> langAttributes = content.getAttributeMap().get(AttributeType.LANGUAGE);
+                languages = (null == langAttributes) ? Collections.emptyList() : Stream.of(langAttributes).map(Attribute::getName).toList();
+            }
+            if (!languages.isEmpty())
+                for (String lang : languages) {
+                    @DrawableRes int resId = LanguageHelper.getFlagFromLanguage(ivFlag.getContext(), lang);
                     if (resId != 0) {
                         ivFlag.setImageResource(resId);
                         ivFlag.setVisibility(View.VISIBLE);
@@ -420,6 +433,13 @@ public class ContentItem extends AbstractItem<ContentItem.ContentViewHolder> imp
         }
 
         private void attachReadingProgress(@NonNull final Content content) {
+            if (content.getSummary() != null) {
+                readingProgress.setVisibility(View.VISIBLE);
+                readingProgress.setTotalColor(readingProgress.getContext(), R.color.transparent);
+                readingProgress.setTotal(content.getSummary().getNbPages());
+                readingProgress.setProgress1(content.getReadPagesCount());
+                return;
+            }
             List<ImageFile> imgs = content.getImageFiles();
             if (imgs != null) {
                 readingProgress.setVisibility(View.VISIBLE);
@@ -431,6 +451,13 @@ public class ContentItem extends AbstractItem<ContentItem.ContentViewHolder> imp
 
         private void attachArtist(@NonNull final Content content) {
             Context context = tvArtist.getContext();
+            if (content.getSummary() != null) {
+                String artists = content.getSummary().getArtists();
+                if (artists.isEmpty())
+                    artists = context.getResources().getString(R.string.work_untitled);
+                tvArtist.setText(context.getString(R.string.work_artist, artists));
+                return;
+            }
             List<Attribute> attributes = new ArrayList<>();
 
             List<Attribute> artistAttributes = content.getAttributeMap().get(AttributeType.ARTIST);
@@ -454,6 +481,13 @@ public class ContentItem extends AbstractItem<ContentItem.ContentViewHolder> imp
 
 
         private void attachSeries(@NonNull final Content content) {
+            if (content.getSummary() != null) {
+                String series = content.getSummary().getSeries();
+                tvSeries.setVisibility(series.isEmpty() ? View.GONE : View.VISIBLE);
+                if (!series.isEmpty())
+                    tvSeries.setText(tvSeries.getContext().getString(R.string.work_series, series));
+                return;
+            }
             List<Attribute> seriesAttributes = content.getAttributeMap().get(AttributeType.SERIE);
             if (seriesAttributes == null || seriesAttributes.isEmpty()) {
                 tvSeries.setVisibility(View.GONE);
@@ -474,9 +508,10 @@ public class ContentItem extends AbstractItem<ContentItem.ContentViewHolder> imp
 
             String template;
             String nbPages = content.getQtyPages() + "";
+            long nbDownloadedPages = (content.getSummary() != null) ? content.getSummary().getNbDownloadedPages() : content.getNbDownloadedPages();
             if (viewType == ViewType.QUEUE || viewType == ViewType.ERRORS || viewType == ViewType.LIBRARY_EDIT) {
                 if (viewType == ViewType.ERRORS) {
-                    long nbMissingPages = content.getQtyPages() - content.getNbDownloadedPages();
+                    long nbMissingPages = content.getQtyPages() - nbDownloadedPages;
                     if (nbMissingPages > 0)
                         template = context.getString(R.string.work_pages_queue, nbPages, " (" + nbMissingPages + " missing)");
                     else
@@ -484,7 +519,7 @@ public class ContentItem extends AbstractItem<ContentItem.ContentViewHolder> imp
                 } else
                     template = context.getString(R.string.work_pages_queue, nbPages, "");
             } else { // Library
-                template = context.getResources().getString(R.string.work_pages_library, content.getNbDownloadedPages(), content.getSize() * 1.0 / (1024 * 1024));
+                template = context.getResources().getString(R.string.work_pages_library, nbDownloadedPages, content.getSize() * 1.0 / (1024 * 1024));
             }
 
             tvPages.setText(template);
@@ -492,6 +527,18 @@ public class ContentItem extends AbstractItem<ContentItem.ContentViewHolder> imp
 
         private void attachTags(@NonNull final Content content) {
             Context context = tvTags.getContext();
+            if (content.getSummary() != null) {
+                String tags = content.getSummary().getTags();
+                if (tags.isEmpty()) {
+                    tvTags.setText(context.getResources().getString(R.string.work_untitled));
+                    tvTags.setVisibility(View.GONE);
+                } else {
+                    tvTags.setVisibility(View.VISIBLE);
+                    tvTags.setText(tags);
+                    tvTags.setTextColor(ThemeHelper.getColor(context, R.color.card_tags_light));
+                }
+                return;
+            }
             List<Attribute> tagsAttributes = content.getAttributeMap().get(AttributeType.TAG);
             if (tagsAttributes == null) {
                 tvTags.setText(context.getResources().getString(R.string.work_untitled));
@@ -33,9 +33,7 @@ import java.util.List;
 import me.devsaki.hentoid.HentoidApp;
 import me.devsaki.hentoid.R;
 import me.devsaki.hentoid.database.domains.Group;
-import me.devsaki.hentoid.database.domains.GroupItem;
 import me.devsaki.hentoid.database.domains.ImageFile;
-import me.devsaki.hentoid.enums.StatusContent;
 import me.devsaki.hentoid.ui.BlinkAnimation;
 import me.devsaki.hentoid.util.Helper;
 import me.devsaki.hentoid.util.ThemeHelper;
@@ -167,20 +165,20 @@ public class GroupDisplayItem extends AbstractItem<GroupDisplayItem.GroupViewHol
                 DragDropUtil.bindDragHandle(this, item);
             }
 
-            if (item.group.picture != null && ivCover != null) {
-                ImageFile cover = item.group.picture.getTarget();
-                if (cover != null) attachCover(cover);
+            if (ivCover != null) {
+                // Use the denormalized cover location to avoid resolving the picture relation
+                if (item.group.coverUri != null && !item.group.coverUri.isEmpty())
+                    attachCover(item.group.coverUri);
+                else if (item.group.picture != null) { // Groups that are built dynamically (e.g. download date)
+                    ImageFile cover = item.group.picture.getTarget();
+                    if (cover != null) attachCover(cover.getDisplayUri());
+                }
             }
-            List<GroupItem> items = item.group.items;
-            title.setText(String.format("%s%s", item.group.name, (null == items || items.isEmpty()) ? "" : " (" + items.size() + ")"));
+            int nbItems = item.group.getItemCount();
+            title.setText(String.format("%s%s", item.group.name, (0 == nbItems) ? "" : " (" + nbItems + ")"));
         }
 
-        private void attachCover(@NonNull ImageFile cover) {
-            String thumbLocation = "";
-            if (cover.getStatus().equals(StatusContent.DOWNLOADED) || cover.getStatus().equals(StatusContent.MIGRATED) || cover.getStatus().equals(StatusContent.EXTERNAL))
-                thumbLocation = cover.getFileUri();
-            if (thumbLocation.isEmpty()) thumbLocation = cover.getUrl();
-
+        private void attachCover(@NonNull String thumbLocation) {
             if (thumbLocation.isEmpty()) return;
 
             ivCover.setVisibility(View.VISIBLE);
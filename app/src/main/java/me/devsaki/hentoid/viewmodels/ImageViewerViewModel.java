@@ -40,7 +40,7 @@ import io.reactivex.schedulers.Schedulers;
 import me.devsaki.hentoid.database.CollectionDAO;
 import me.devsaki.hentoid.database.domains.Content;
 import me.devsaki.hentoid.database.domains.ImageFile;
-import me.devsaki.hentoid.util.ArchiveHelper;
+import me.devsaki.hentoid.util.ArchivePageProvider;
 import me.devsaki.hentoid.util.Consts;
 import me.devsaki.hentoid.util.ContentHelper;
 import me.devsaki.hentoid.util.FileHelper;
@@ -55,6 +55,8 @@ import timber.log.Timber;
 public class ImageViewerViewModel extends AndroidViewModel {
 
     private static final String KEY_IS_SHUFFLED = "is_shuffled";
+    // Number of archived pages to extract ahead of the current page
+    private static final int ARCHIVE_READ_AHEAD = 3;
 
     // Collection DAO
     private final CollectionDAO collectionDao;
@@ -188,38 +190,16 @@ public class ImageViewerViewModel extends AndroidViewModel {
             }
         }
 
-        // Empty the cache folder where previous cached images might be
-        // TODO create a smarter cache that works with a window of a given size
-        File cachePicFolder = getOrCreatePictureCacheFolder();
-        if (cachePicFolder != null) {
-            File[] files = cachePicFolder.listFiles();
-            if (files != null)
-                for (File f : files)
-                    if (!f.delete()) Timber.w("Unable to delete file %s", f.getAbsolutePath());
-
-
-            // Extract the images if they are contained within an archive
-            if (theContent.isArchive()) {
-                // Unzip the archive in the app's cache folder
-                DocumentFile zipFile = FileHelper.getFileFromSingleUriString(getApplication(), theContent.getStorageUri());
-                // TODO stream that so that loading isn't blocked
-                if (zipFile != null) {
-                    List<Uri> unzippedFilesUris = ArchiveHelper.extractArchiveEntries(
-                            getApplication(),
-                            zipFile,
-                            Stream.of(imageFiles).map(i -> i.getFileUri().replace(theContent.getStorageUri() + File.separator, "")).toList(),
-                            cachePicFolder,
-                            null);
-
-                    // Feed the Uri's of unzipped files back into the corresponding images for viewing
-                    for (ImageFile img : imageFiles) {
-                        for (Uri unzippedUri : unzippedFilesUris)
-                            if (FileHelper.getFileNameWithoutExtension(img.getFileUri()).equalsIgnoreCase(FileHelper.getFileNameWithoutExtension(unzippedUri.getPath()))) {
-                                img.setFileUri(unzippedUri.toString());
-                                break;
-                            }
-                    }
-                }
+        // Serve the images through ArchivePageProvider if they are contained within an archive
+        // (each page is extracted on demand when the viewer reads it)
+        if (theContent.isArchive()) {
+            DocumentFile archive = FileHelper.getFileFromSingleUriString(getApplication(), theContent.getStorageUri());
+            long archiveTimestamp = (null == archive) ? 0 : archive.lastModified();
+            String archivePrefix = theContent.getStorageUri() + File.separator;
+            for (ImageFile img : imageFiles) {
+                String fileUri = img.getFileUri();
+                if (fileUri.startsWith(archivePrefix))
+                    img.setFileUri(ArchivePageProvider.buildPageUri(theContent.getStorageUri(), fileUri.substring(archivePrefix.length()), archiveTimestamp).toString());
             }
         }
 
@@ -572,16 +552,41 @@ public class ImageViewerViewModel extends AndroidViewModel {
         collectionDao.insertContent(content);
     }
 
-    @Nullable
-    private File getOrCreatePictureCacheFolder() {
-        File cacheDir = getApplication().getCacheDir();
-        File pictureCacheDir = new File(cacheDir.getAbsolutePath() + File.separator + Consts.PICTURE_CACHE_FOLDER);
-        if (pictureCacheDir.exists()) return pictureCacheDir;
-        else if (pictureCacheDir.mkdir()) return pictureCacheDir;
-        else return null;
-    }
-
     public void markPageAsRead(int pageNumber) {
         readPageNumbers.add(pageNumber);
     }
+
+    /**
+     * Extract the archived pages surrounding the given page ahead of time, so that they
+     * display without delay when the user browses to them
+     *
+     * @param viewerIndex Index of the page the viewer is currently displaying
+     */
+    public void onPageChange(int viewerIndex) {
+        List<ImageFile> imgs = getImages().getValue();
+        if (null == imgs || imgs.isEmpty()) return;
+
+        List<Uri> pagesToExtract = new ArrayList<>();
+        for (int i = Math.max(0, viewerIndex - 1); i <= Math.min(imgs.size() - 1, viewerIndex + ARCHIVE_READ_AHEAD); i++) {
+            Uri uri = Uri.parse(imgs.get(i).getFileUri());
+            if (ArchivePageProvider.isPageUri(uri)) pagesToExtract.add(uri);
+        }
+        if (pagesToExtract.isEmpty()) return;
+
+        compositeDisposable.add(
+                Completable.fromRunnable(() -> {
+                    // All pages are extracted at once to read their archive only once
+                    try {
+                        ArchivePageProvider.extractPages(getApplication(), pagesToExtract);
+                    } catch (IOException e) {
+                        Timber.w(e);
+                    }
+                })
+                        .subscribeOn(Schedulers.io())
+                        .subscribe(
+                                () -> { /* Nothing to do */ },
+                                Timber::e
+                        )
+        );
+    }
 }
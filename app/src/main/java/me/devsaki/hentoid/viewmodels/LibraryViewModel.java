@@ -1,6 +1,7 @@
 package me.devsaki.hentoid.viewmodels;
 
 import android.app.Application;
+import android.net.Uri;
 import android.os.Bundle;
 
 import androidx.annotation.NonNull;
@@ -18,10 +19,10 @@ import com.annimon.stream.function.Consumer;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.security.InvalidParameterException;
-import java.util.ArrayList;
 import java.util.List;
 
 import io.reactivex.Completable;
+import io.reactivex.Maybe;
 import io.reactivex.Observable;
 import io.reactivex.Single;
 import io.reactivex.android.schedulers.AndroidSchedulers;
@@ -41,7 +42,6 @@ import me.devsaki.hentoid.util.FileHelper;
 import me.devsaki.hentoid.util.GroupHelper;
 import me.devsaki.hentoid.util.Helper;
 import me.devsaki.hentoid.util.Preferences;
-import me.devsaki.hentoid.util.exception.ContentNotRemovedException;
 import me.devsaki.hentoid.util.exception.GroupNotRemovedException;
 import me.devsaki.hentoid.widget.ContentSearchManager;
 import timber.log.Timber;
@@ -49,6 +49,9 @@ import timber.log.Timber;
 
 public class LibraryViewModel extends AndroidViewModel {
 
+    // Number of books archived at the same time; archiving is bound by storage I/O, more would only make reads and writes compete
+    private static final int ARCHIVE_CONCURRENCY = 3;
+
     // Collection DAO
     private final CollectionDAO dao;
     // Library search manager
@@ -329,22 +332,20 @@ public class LibraryViewModel extends AndroidViewModel {
      */
     public void deleteItems(@NonNull final List<Content> contents, @NonNull final List<Group> groups, Consumer<Object> onProgress, Runnable onSuccess, Consumer<Throwable> onError) {
         // Flag the content as "being deleted" (triggers blink animation)
-        for (Content c : contents) flagContentDelete(c, true);
+        for (Content c : contents) c.setIsBeingDeleted(true);
+        dao.updateContentsDeleteFlag(Helper.getPrimitiveLongArrayFromList(Stream.of(contents).map(Content::getId).toList()), true);
         // TODO do the same blinking effect for groups ?
 
-        // First chain contents, then groups (to be sure to delete empty groups only)
-        List<Object> items = new ArrayList<>();
-        items.addAll(contents);
-        items.addAll(groups);
-
+        // First remove contents, then groups (to be sure to delete empty groups only)
         compositeDisposable.add(
-                Observable.fromIterable(items)
-                        .observeOn(Schedulers.io())
-                        .map(this::doDeleteItem)
+                ContentHelper.removeContents(getApplication(), dao, contents)
+                        .subscribeOn(Schedulers.io())
+                        .cast(Object.class)
+                        .concatWith(Observable.fromIterable(groups).observeOn(Schedulers.io()).map(this::doDeleteGroup))
                         .doOnComplete(() -> {
                             if (!groups.isEmpty()) {
                                 isCustomGroupingAvailable.postValue(dao.countGroupsFor(Grouping.CUSTOM) > 0);
-                                GroupHelper.updateGroupsJson(getApplication(), dao);
+                                GroupHelper.updateGroupsJson(getApplication());
                             }
                         })
                         .observeOn(AndroidSchedulers.mainThread())
@@ -356,47 +357,12 @@ public class LibraryViewModel extends AndroidViewModel {
         );
     }
 
-    private Object doDeleteItem(@NonNull final Object item) throws Exception {
-        if (item instanceof Content) return doDeleteContent((Content) item);
-        else if (item instanceof Group) return doDeleteGroup((Group) item);
-        else return null;
-    }
-
-    /**
-     * Delete the given content
-     *
-     * @param content Content to be deleted
-     * @return Content that has been deleted
-     * @throws ContentNotRemovedException When any issue occurs during removal
-     */
-    private Content doDeleteContent(@NonNull final Content content) throws ContentNotRemovedException {
-        Helper.assertNonUiThread();
-        try {
-            // Check if given content still exists in DB
-            Content theContent = dao.selectContent(content.getId());
-
-            if (theContent != null) {
-                ContentHelper.removeContent(getApplication(), dao, theContent);
-                Timber.d("Removed item: %s from db and file system.", theContent.getTitle());
-                return theContent;
-            }
-            throw new ContentNotRemovedException(content, "Error when trying to delete : invalid ContentId " + content.getId());
-        } catch (ContentNotRemovedException cnre) {
-            Timber.e(cnre, "Error when trying to delete %s", content.getId());
-            throw cnre;
-        } catch (Exception e) {
-            Timber.e(e, "Error when trying to delete %s", content.getId());
-            throw new ContentNotRemovedException(content, "Error when trying to delete " + content.getId() + " : " + e.getMessage(), e);
-        }
-    }
-
     public void archiveContents(@NonNull final List<Content> contentList, Consumer<Content> onProgress, Runnable onSuccess, Consumer<Throwable> onError) {
         Timber.d("Building file list for %s books", contentList.size());
 
         compositeDisposable.add(
                 Observable.fromIterable(contentList)
-                        .observeOn(Schedulers.io())
-                        .map(this::doArchiveContent)
+                        .flatMapMaybe(c -> Maybe.fromCallable(() -> doArchiveContent(c)).subscribeOn(Schedulers.io()), false, ARCHIVE_CONCURRENCY)
                         .observeOn(AndroidSchedulers.mainThread())
                         .subscribe(
                                 onProgress::accept,
@@ -410,6 +376,7 @@ public class LibraryViewModel extends AndroidViewModel {
      * Archive the given Content into a ZIP file located into the device's 'Download' folder
      *
      * @param content Content to be archived
+     * @return Archived Content; null if it has nothing to archive
      */
     public Content doArchiveContent(@NonNull final Content content) throws IOException {
         Helper.assertNonUiThread();
@@ -421,9 +388,16 @@ public class LibraryViewModel extends AndroidViewModel {
         if (!files.isEmpty()) {
             // Build destination file
             String destName = ContentHelper.formatBookFolderName(content) + ".zip";
-            OutputStream destFile = FileHelper.openNewDownloadOutputStream(getApplication(), destName, ArchiveHelper.ZIP_MIME_TYPE);
+            Uri destUri = FileHelper.createNewDownloadFile(getApplication(), destName, ArchiveHelper.ZIP_MIME_TYPE);
             Timber.d("Destination file: %s", destName);
-            ArchiveHelper.zipFiles(getApplication(), files, destFile);
+            boolean isSuccess = false;
+            try (OutputStream destFile = FileHelper.openDownloadOutputStream(getApplication(), destUri)) {
+                ArchiveHelper.zipFiles(getApplication(), files, destFile);
+                isSuccess = true;
+            } finally {
+                // Don't leave truncated archives behind when archiving fails or is interrupted
+                if (!isSuccess) FileHelper.removeDownloadFile(getApplication(), destUri);
+            }
             return content;
         }
         return null;
@@ -431,7 +405,10 @@ public class LibraryViewModel extends AndroidViewModel {
 
     public void setGroupCover(long groupId, ImageFile cover) {
         Group localGroup = dao.selectGroup(groupId);
-        if (localGroup != null) localGroup.picture.setAndPutTarget(cover);
+        if (localGroup != null) {
+            localGroup.setCover(cover);
+            dao.insertGroup(localGroup);
+        }
     }
 
     public void saveContentPositions(@NonNull final List<Content> orderedContent, @NonNull final Runnable onSuccess) {
@@ -439,7 +416,7 @@ public class LibraryViewModel extends AndroidViewModel {
                 Completable.fromRunnable(() -> doSaveContentPositions(orderedContent))
                         .subscribeOn(Schedulers.io())
                         .observeOn(Schedulers.io())
-                        .doOnComplete(() -> GroupHelper.updateGroupsJson(getApplication(), dao))
+                        .doOnComplete(() -> GroupHelper.updateGroupsJson(getApplication()))
                         .observeOn(AndroidSchedulers.mainThread())
                         .subscribe(
                                 onSuccess::run,
@@ -471,7 +448,7 @@ public class LibraryViewModel extends AndroidViewModel {
                 Completable.fromRunnable(() -> doSaveGroupPositions(orderedGroups))
                         .subscribeOn(Schedulers.io())
                         .observeOn(Schedulers.io())
-                        .doOnComplete(() -> GroupHelper.updateGroupsJson(getApplication(), dao))
+                        .doOnComplete(() -> GroupHelper.updateGroupsJson(getApplication()))
                         .observeOn(AndroidSchedulers.mainThread())
                         .subscribe(
                                 () -> { // Update is done through LiveData
@@ -504,7 +481,7 @@ public class LibraryViewModel extends AndroidViewModel {
                             .observeOn(Schedulers.io())
                             .doOnComplete(() -> {
                                 isCustomGroupingAvailable.postValue(dao.countGroupsFor(Grouping.CUSTOM) > 0);
-                                GroupHelper.updateGroupsJson(getApplication(), dao);
+                                GroupHelper.updateGroupsJson(getApplication());
                             })
                             .observeOn(AndroidSchedulers.mainThread())
                             .subscribe(
@@ -532,7 +509,7 @@ public class LibraryViewModel extends AndroidViewModel {
                             .observeOn(Schedulers.io())
                             .doOnComplete(() -> {
                                 isCustomGroupingAvailable.postValue(dao.countGroupsFor(Grouping.CUSTOM) > 0);
-                                GroupHelper.updateGroupsJson(getApplication(), dao);
+                                GroupHelper.updateGroupsJson(getApplication());
                             })
                             .observeOn(AndroidSchedulers.mainThread())
                             .subscribe(
@@ -592,7 +569,7 @@ public class LibraryViewModel extends AndroidViewModel {
                         .doOnNext(c -> ContentHelper.updateContentJson(getApplication(), c))
                         .doOnComplete(() -> {
                             isCustomGroupingAvailable.postValue(dao.countGroupsFor(Grouping.CUSTOM) > 0);
-                            GroupHelper.updateGroupsJson(getApplication(), dao);
+                            GroupHelper.updateGroupsJson(getApplication());
                         })
                         .observeOn(AndroidSchedulers.mainThread())
                         .subscribe(
@@ -611,17 +588,10 @@ public class LibraryViewModel extends AndroidViewModel {
             dao.deleteGroupItems(Stream.of(groupItems).map(gi -> gi.id).toList());
 
         // Create the new links from the given content to the target group
-        if (group != null) {
-            GroupItem newGroupItem = new GroupItem(content, group, -1);
-            // Use this syntax because content will be persisted on JSON right after that
-            content.groupItems.add(newGroupItem);
-            // Commit new link to the DB
-            content.groupItems.applyChangesToDb();
-
-            // Add a picture to the target group if it didn't have one
-            if (group.picture.isNull())
-                group.picture.setAndPutTarget(content.getCover());
-        }
+        // NB : The target group gets a picture from the DB if it didn't have one
+        if (group != null) dao.insertGroupItem(new GroupItem(content, group, -1));
+        // Reload the links of the content, as it will be persisted on JSON right after that
+        content.groupItems.reset();
         // updateContentOrder(); TODO is that necessary when moving when inside custom group ?
 
         return content;
@@ -103,24 +103,8 @@ public class QueueViewModel extends AndroidViewModel {
         if (oldPosition.equals(newPosition)) return;
         Timber.d(">> move %s to %s", oldPosition, newPosition);
 
-        // Get unpaged data to be sure we have everything in one collection
-        List<QueueRecord> localQueue = dao.selectQueue();
-        if (oldPosition < 0 || oldPosition >= localQueue.size()) return;
-
-        // Move the item
-        QueueRecord fromValue = localQueue.get(oldPosition);
-        int delta = oldPosition < newPosition ? 1 : -1;
-        for (int i = oldPosition; i != newPosition; i += delta) {
-            localQueue.set(i, localQueue.get(i + delta));
-        }
-        localQueue.set(newPosition, fromValue);
-
-        // Renumber everything
-        int index = 1;
-        for (QueueRecord qr : localQueue) qr.setRank(index++);
-
-        // Update queue in DB
-        dao.updateQueue(localQueue);
+        // Update the moved item's rank in DB
+        if (!dao.moveQueue(oldPosition, newPosition)) return;
 
         // If the 1st item is involved, signal it being skipped
         if (0 == newPosition || 0 == oldPosition)
@@ -128,18 +112,8 @@ public class QueueViewModel extends AndroidViewModel {
     }
 
     public void invertQueue() {
-        // Get unpaged data to be sure we have everything in one collection
-        List<QueueRecord> localQueue = dao.selectQueue();
-        if (localQueue.size() < 2) return;
-
-        // Renumber everything in reverse order
-        int index = 1;
-        for (int i = localQueue.size() - 1; i >= 0; i--) {
-            localQueue.get(i).setRank(index++);
-        }
-
         // Update queue and signal skipping the 1st item
-        dao.updateQueue(localQueue);
+        if (!dao.invertQueue()) return;
         EventBus.getDefault().post(new DownloadEvent(DownloadEvent.EV_SKIP));
     }
 
@@ -217,9 +191,7 @@ public class QueueViewModel extends AndroidViewModel {
     }
 
     private void saveQueue() {
-        if (ContentHelper.updateQueueJson(getApplication().getApplicationContext(), dao))
-            Timber.i("Queue JSON successfully saved");
-        else Timber.w("Queue JSON saving failed");
+        ContentHelper.updateQueueJson(getApplication().getApplicationContext());
     }
 
     /**
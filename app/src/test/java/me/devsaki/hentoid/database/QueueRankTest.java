@@ -0,0 +1,166 @@
+package me.devsaki.hentoid.database;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import me.devsaki.hentoid.database.domains.QueueRecord;
+import me.devsaki.hentoid.mocks.AbstractObjectBoxTest;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricTestRunner.class)
+public class QueueRankTest extends AbstractObjectBoxTest {
+
+    private CollectionDAO dao;
+
+    @Before
+    public void prepareQueue() {
+        store.boxFor(QueueRecord.class).removeAll();
+        dao = new ObjectBoxDAO(store);
+    }
+
+    @Test
+    public void insertAtBottom() {
+        dao.insertQueueAtBottom(Arrays.asList(1L, 2L, 3L));
+        dao.insertQueueAtBottom(Arrays.asList(4L, 5L));
+
+        assertQueue(1, 2, 3, 4, 5);
+        List<QueueRecord> queue = dao.selectQueue();
+        int gap = queue.get(1).getRank() - queue.get(0).getRank();
+        assertTrue(gap > 1);
+        for (int i = 1; i < queue.size(); i++)
+            assertEquals(gap, queue.get(i).getRank() - queue.get(i - 1).getRank());
+    }
+
+    @Test
+    public void moveUp() {
+        dao.insertQueueAtBottom(Arrays.asList(1L, 2L, 3L, 4L));
+        List<Integer> ranksBefore = getRanks();
+
+        assertTrue(dao.moveQueue(3, 1));
+
+        assertQueue(1, 4, 2, 3);
+        // Only the moved record has been updated
+        List<QueueRecord> queue = dao.selectQueue();
+        assertEquals((int) ranksBefore.get(0), queue.get(0).getRank());
+        assertEquals((int) ranksBefore.get(1), queue.get(2).getRank());
+        assertEquals((int) ranksBefore.get(2), queue.get(3).getRank());
+    }
+
+    @Test
+    public void moveToTop() {
+        dao.insertQueueAtBottom(Arrays.asList(1L, 2L, 3L));
+
+        assertTrue(dao.moveQueue(2, 0));
+
+        assertQueue(3, 1, 2);
+    }
+
+    @Test
+    public void moveDown() {
+        dao.insertQueueAtBottom(Arrays.asList(1L, 2L, 3L, 4L));
+
+        assertTrue(dao.moveQueue(0, 2));
+        assertQueue(2, 3, 1, 4);
+
+        assertTrue(dao.moveQueue(1, 3));
+        assertQueue(2, 1, 4, 3);
+    }
+
+    @Test
+    public void moveOutOfBounds() {
+        dao.insertQueueAtBottom(Arrays.asList(1L, 2L));
+
+        assertFalse(dao.moveQueue(5, 0));
+        assertFalse(dao.moveQueue(0, -1));
+        assertQueue(1, 2);
+    }
+
+    @Test
+    public void moveWithExhaustedGap() {
+        // Consecutive ranks : no free rank left between records
+        setRanks(new long[]{1, 2, 3}, new int[]{10, 11, 12});
+
+        assertTrue(dao.moveQueue(2, 1));
+
+        assertQueue(1, 3, 2);
+        // The queue has been renumbered, leaving free ranks between records
+        List<Integer> ranks = getRanks();
+        assertTrue(ranks.get(1) - ranks.get(0) > 1);
+        assertTrue(ranks.get(2) - ranks.get(1) > 1);
+    }
+
+    @Test
+    public void moveToBottomWithOverflow() {
+        setRanks(new long[]{1, 2, 3}, new int[]{1, 2, Integer.MAX_VALUE});
+
+        assertTrue(dao.moveQueue(0, 2));
+
+        assertQueue(2, 3, 1);
+        assertIncreasingRanks();
+    }
+
+    @Test
+    public void moveToTopWithOverflow() {
+        setRanks(new long[]{1, 2, 3}, new int[]{Integer.MIN_VALUE, 2, 3});
+
+        assertTrue(dao.moveQueue(2, 0));
+
+        assertQueue(3, 1, 2);
+        assertIncreasingRanks();
+    }
+
+    @Test
+    public void insertAtBottomWithOverflow() {
+        setRanks(new long[]{1, 2}, new int[]{1, Integer.MAX_VALUE - 1});
+
+        dao.insertQueueAtBottom(Arrays.asList(3L, 4L));
+
+        assertQueue(1, 2, 3, 4);
+        assertIncreasingRanks();
+    }
+
+    @Test
+    public void invert() {
+        dao.insertQueueAtBottom(Arrays.asList(1L, 2L, 3L));
+
+        assertTrue(dao.invertQueue());
+
+        assertQueue(3, 2, 1);
+        assertIncreasingRanks();
+    }
+
+    private void setRanks(long[] contentIds, int[] ranks) {
+        List<QueueRecord> queue = new ArrayList<>();
+        for (int i = 0; i < contentIds.length; i++)
+            queue.add(new QueueRecord(contentIds[i], ranks[i]));
+        dao.updateQueue(queue);
+    }
+
+    private List<Integer> getRanks() {
+        List<Integer> result = new ArrayList<>();
+        for (QueueRecord qr : dao.selectQueue()) result.add(qr.getRank());
+        return result;
+    }
+
+    private void assertQueue(long... expectedContentIds) {
+        List<QueueRecord> queue = dao.selectQueue();
+        assertEquals(expectedContentIds.length, queue.size());
+        for (int i = 0; i < expectedContentIds.length; i++)
+            assertEquals(expectedContentIds[i], queue.get(i).getContent().getTargetId());
+    }
+
+    private void assertIncreasingRanks() {
+        List<Integer> ranks = getRanks();
+        for (int i = 1; i < ranks.size(); i++)
+            assertTrue(ranks.get(i) > ranks.get(i - 1));
+    }
+}
@@ -0,0 +1,155 @@
+package me.devsaki.hentoid.json;
+
+import android.content.Context;
+
+import androidx.documentfile.provider.DocumentFile;
+import androidx.test.core.app.ApplicationProvider;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import me.devsaki.hentoid.database.domains.Content;
+import me.devsaki.hentoid.database.domains.SiteBookmark;
+import me.devsaki.hentoid.enums.Site;
+import me.devsaki.hentoid.enums.StatusContent;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricTestRunner.class)
+public class JsonContentCollectionTest {
+
+    @Rule
+    public final TemporaryFolder tempFolder = new TemporaryFolder();
+
+    private Context context;
+    private File file;
+
+    @Before
+    public void prepareFile() throws IOException {
+        context = ApplicationProvider.getApplicationContext();
+        file = tempFolder.newFile("collection.json");
+    }
+
+    @Test
+    public void roundTrip() throws IOException {
+        List<Content> library = Arrays.asList(
+                newContent(Site.NHENTAI, "/1234/", "Book 1", StatusContent.DOWNLOADED).setFavourite(true),
+                newContent(Site.HITOMI, "/5678.html", "Book 2", StatusContent.DOWNLOADED).setReads(3)
+        );
+        List<Content> queue = Arrays.asList(
+                newContent(Site.NHENTAI, "/9999/", "Queued book", StatusContent.PAUSED)
+        );
+        List<SiteBookmark> bookmarks = Arrays.asList(
+                new SiteBookmark(Site.NHENTAI, "Bookmark", "https://nhentai.net/tag/test")
+        );
+
+        try (JsonContentCollectionWriter writer = new JsonContentCollectionWriter(new FileOutputStream(file))) {
+            writer.beginLibrary();
+            for (Content c : library) writer.writeContent(c);
+            writer.endList();
+            writer.beginQueue();
+            for (Content c : queue) writer.writeContent(c);
+            writer.endList();
+            writer.writeBookmarks(bookmarks);
+            writer.finish();
+        }
+
+        List<Content> readLibrary = new ArrayList<>();
+        List<Content> readQueue = new ArrayList<>();
+        List<SiteBookmark> readBookmarks = new ArrayList<>();
+        try (JsonContentCollectionReader reader = new JsonContentCollectionReader(context, DocumentFile.fromFile(file))) {
+            String list;
+            while ((list = reader.nextList()) != null) {
+                while (reader.hasNext()) {
+                    if (JsonContentCollection.LIBRARY.equals(list)) readLibrary.add(reader.nextContent(null));
+                    else if (JsonContentCollection.QUEUE.equals(list)) readQueue.add(reader.nextContent(null));
+                    else if (JsonContentCollection.BOOKMARKS.equals(list)) readBookmarks.add(reader.nextBookmark());
+                    else reader.skip();
+                }
+            }
+        }
+
+        assertContents(library, readLibrary);
+        assertContents(queue, readQueue);
+        assertEquals(1, readBookmarks.size());
+        assertEquals(Site.NHENTAI, readBookmarks.get(0).getSite());
+        assertEquals("Bookmark", readBookmarks.get(0).getTitle());
+        assertEquals("https://nhentai.net/tag/test", readBookmarks.get(0).getUrl());
+    }
+
+    @Test
+    public void skipRemainingItems() throws IOException {
+        try (JsonContentCollectionWriter writer = new JsonContentCollectionWriter(new FileOutputStream(file))) {
+            writer.beginLibrary();
+            writer.writeContent(newContent(Site.NHENTAI, "/1/", "Book 1", StatusContent.DOWNLOADED));
+            writer.writeContent(newContent(Site.NHENTAI, "/2/", "Book 2", StatusContent.DOWNLOADED));
+            writer.endList();
+            writer.beginQueue();
+            writer.writeContent(newContent(Site.NHENTAI, "/3/", "Book 3", StatusContent.PAUSED));
+            writer.endList();
+            writer.finish();
+        }
+
+        try (JsonContentCollectionReader reader = new JsonContentCollectionReader(context, DocumentFile.fromFile(file))) {
+            assertEquals(JsonContentCollection.LIBRARY, reader.nextList());
+            Content c = reader.nextContent(null);
+            assertNotNull(c);
+            assertEquals("Book 1", c.getTitle());
+
+            // Second book of the library is skipped
+            assertEquals(JsonContentCollection.QUEUE, reader.nextList());
+            c = reader.nextContent(null);
+            assertNotNull(c);
+            assertEquals("Book 3", c.getTitle());
+            assertFalse(reader.hasNext());
+
+            assertNull(reader.nextList());
+        }
+    }
+
+    @Test
+    public void closeUnfinished() throws IOException {
+        // Cancelled export : the writer is closed in the middle of a list
+        try (JsonContentCollectionWriter writer = new JsonContentCollectionWriter(new FileOutputStream(file))) {
+            writer.beginLibrary();
+            writer.writeContent(newContent(Site.NHENTAI, "/1/", "Book 1", StatusContent.DOWNLOADED));
+        }
+
+        assertTrue(file.length() > 0);
+    }
+
+    private static Content newContent(Site site, String url, String title, StatusContent status) {
+        return new Content().setSite(site).setUrl(url).setTitle(title).setStatus(status);
+    }
+
+    private static void assertContents(List<Content> expected, List<Content> actual) {
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            Content e = expected.get(i);
+            Content a = actual.get(i);
+            assertNotNull(a);
+            assertEquals(e.getSite(), a.getSite());
+            assertEquals(e.getUrl(), a.getUrl());
+            assertEquals(e.getUniqueSiteId(), a.getUniqueSiteId());
+            assertEquals(e.getTitle(), a.getTitle());
+            assertEquals(e.getStatus(), a.getStatus());
+            assertEquals(e.isFavourite(), a.isFavourite());
+            assertEquals(e.getReads(), a.getReads());
+        }
+    }
+}
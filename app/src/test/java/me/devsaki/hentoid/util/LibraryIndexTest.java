@@ -0,0 +1,124 @@
+package me.devsaki.hentoid.util;
+
+import android.content.Context;
+import android.net.Uri;
+import android.provider.DocumentsContract;
+
+import androidx.documentfile.provider.DocumentFile;
+import androidx.test.core.app.ApplicationProvider;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+
+import me.devsaki.hentoid.json.JsonLibraryIndexEntry;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+@RunWith(RobolectricTestRunner.class)
+public class LibraryIndexTest {
+
+    private static final String AUTHORITY = "com.android.externalstorage.documents";
+
+    @Rule
+    public final TemporaryFolder tempFolder = new TemporaryFolder();
+
+    private Context context;
+    private File file;
+
+    @Before
+    public void prepareFile() throws IOException {
+        context = ApplicationProvider.getApplicationContext();
+        file = tempFolder.newFile("library_index.json");
+    }
+
+    @Test
+    public void getRelativePath() {
+        Uri root = DocumentsContract.buildTreeDocumentUri(AUTHORITY, "primary:Hentoid");
+
+        assertEquals("/nhentai/book", LibraryIndex.getRelativePath(root, DocumentsContract.buildDocumentUriUsingTree(root, "primary:Hentoid/nhentai/book")));
+        // Root folder itself
+        assertNull(LibraryIndex.getRelativePath(root, DocumentsContract.buildDocumentUriUsingTree(root, "primary:Hentoid")));
+        // Sibling folder whose name starts with the name of the root folder
+        assertNull(LibraryIndex.getRelativePath(root, DocumentsContract.buildDocumentUriUsingTree(root, "primary:Hentoid2/book")));
+        // Folder of another tree
+        Uri otherRoot = DocumentsContract.buildTreeDocumentUri(AUTHORITY, "primary:Other");
+        assertNull(LibraryIndex.getRelativePath(root, DocumentsContract.buildDocumentUriUsingTree(otherRoot, "primary:Other/book")));
+    }
+
+    @Test
+    public void getRelativePathFromVolumeRoot() {
+        Uri root = DocumentsContract.buildTreeDocumentUri(AUTHORITY, "primary:");
+
+        assertEquals("Hentoid/book", LibraryIndex.getRelativePath(root, DocumentsContract.buildDocumentUriUsingTree(root, "primary:Hentoid/book")));
+    }
+
+    @Test
+    public void readSupersededEntries() throws IOException {
+        writeIndex(entry("/a", "1") + "\n" + entry("/b", "1") + "\n" + entry("/a", "2") + "\n");
+
+        try (LibraryIndex.Reader reader = LibraryIndex.Reader.open(context, DocumentFile.fromFile(file))) {
+            assertNotNull(reader);
+            // Last entry of a folder supersedes the previous ones
+            assertEquals(2, reader.getOrdinal("/a"));
+            assertEquals(1, reader.getOrdinal("/b"));
+            assertEquals(-1, reader.getOrdinal("/c"));
+
+            JsonLibraryIndexEntry entry = reader.read("/b");
+            assertNotNull(entry);
+            assertEquals("/b", entry.getFolder());
+            entry = reader.read("/a");
+            assertNotNull(entry);
+            assertEquals("2", entry.getFingerprint());
+            // Entries can only be read in the order they appear
+            assertNull(reader.read("/b"));
+        }
+    }
+
+    @Test
+    public void readTruncatedTail() throws IOException {
+        // Last entry has been interrupted while being appended
+        writeIndex(entry("/a", "1") + "\n" + entry("/b", "1") + "\n" + "{\"folder\":\"/c\",\"fingerprint\":\"1\",\"content\":{\"ti");
+
+        try (LibraryIndex.Reader reader = LibraryIndex.Reader.open(context, DocumentFile.fromFile(file))) {
+            assertNotNull(reader);
+            assertEquals(0, reader.getOrdinal("/a"));
+            assertEquals(1, reader.getOrdinal("/b"));
+            assertEquals(-1, reader.getOrdinal("/c"));
+
+            JsonLibraryIndexEntry entry = reader.read("/a");
+            assertNotNull(entry);
+            assertEquals("/a", entry.getFolder());
+            entry = reader.read("/b");
+            assertNotNull(entry);
+            assertEquals("/b", entry.getFolder());
+        }
+    }
+
+    @Test
+    public void readTruncatedFirstEntry() throws IOException {
+        writeIndex("{\"folder\":\"/a\",\"finger");
+
+        assertNull(LibraryIndex.Reader.open(context, DocumentFile.fromFile(file)));
+    }
+
+    private static String entry(String folder, String fingerprint) {
+        return "{\"folder\":\"" + folder + "\",\"fingerprint\":\"" + fingerprint + "\",\"content\":{\"title\":\"" + folder + "\"}}";
+    }
+
+    private void writeIndex(String data) throws IOException {
+        try (Writer writer = new FileWriter(file)) {
+            writer.write(data);
+        }
+    }
+}